@@ -21,7 +21,8 @@ import java.time.LocalDateTime;
 public class AuditLog {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "audit_log_id_seq")
+    @SequenceGenerator(name = "audit_log_id_seq", sequenceName = "audit_logs_audit_log_id_seq", allocationSize = 50)
     @Column(name = "audit_log_id")
     private Long id;
     
@@ -46,6 +47,19 @@ public class AuditLog {
     @Column(name = "new_data", columnDefinition = "jsonb")
     private String newData;
     
+    /**
+     * JSON Patch from old to new data, stored instead of both snapshots for updates
+     */
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "data_patch", columnDefinition = "jsonb")
+    private String dataPatch;
+    
+    /**
+     * SHA-256 fingerprint of the old data the patch was computed against, see JsonPatchDiff.fingerprint
+     */
+    @Column(name = "base_hash", length = 64)
+    private String baseHash;
+    
     @Column(name = "change_summary", columnDefinition = "TEXT")
     private String changeSummary;
     
@@ -60,7 +74,9 @@ public class AuditLog {
     
     @PrePersist
     protected void onCreate() {
-        createdAt = LocalDateTime.now();
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
     }
     
     /**
@@ -21,7 +21,8 @@ import java.time.LocalDateTime;
 public class InvoiceHistory {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "invoice_history_id_seq")
+    @SequenceGenerator(name = "invoice_history_id_seq", sequenceName = "invoice_history_history_id_seq", allocationSize = 50)
     @Column(name = "history_id")
     private Long id;
     
@@ -37,10 +38,20 @@ public class InvoiceHistory {
     @Column(name = "invoice_number", nullable = false, length = 100)
     private String invoiceNumber;
     
+    /**
+     * Full invoice snapshot, only present on keyframe versions
+     */
     @JdbcTypeCode(SqlTypes.JSON)
-    @Column(name = "invoice_data", nullable = false, columnDefinition = "jsonb")
+    @Column(name = "invoice_data", columnDefinition = "jsonb")
     private String invoiceData;
     
+    /**
+     * JSON Patch from the previous version, present when invoiceData is not
+     */
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "data_patch", columnDefinition = "jsonb")
+    private String dataPatch;
+    
     @Column(name = "created_by", nullable = false)
     private Long createdBy;
     
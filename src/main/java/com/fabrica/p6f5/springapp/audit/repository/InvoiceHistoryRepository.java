@@ -1,9 +1,11 @@
 package com.fabrica.p6f5.springapp.audit.repository;
 
 import com.fabrica.p6f5.springapp.audit.model.InvoiceHistory;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -39,6 +41,25 @@ public interface InvoiceHistoryRepository extends JpaRepository<InvoiceHistory,
      */
     Optional<InvoiceHistory> findFirstByInvoiceIdOrderByVersionDesc(Long invoiceId);
     
+    /**
+     * Find the most recent versions up to a given version, newest first.
+     * Used to rebuild a delta-encoded version from its nearest keyframe.
+     * 
+     * @param invoiceId the invoice ID
+     * @param version the highest version to include
+     * @param pageable how many versions to load
+     * @return versions ordered by version number descending
+     */
+    List<InvoiceHistory> findByInvoiceIdAndVersionLessThanEqualOrderByVersionDesc(Long invoiceId, Integer version, Pageable pageable);
+    
+    /**
+     * Find all versions of several invoices in one query.
+     * 
+     * @param invoiceIds the invoice IDs
+     * @return versions grouped by invoice, newest first within each invoice
+     */
+    List<InvoiceHistory> findByInvoiceIdInOrderByInvoiceIdAscVersionDesc(Collection<Long> invoiceIds);
+    
     /**
      * Count versions for an invoice.
      * 
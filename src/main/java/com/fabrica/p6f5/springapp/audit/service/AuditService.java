@@ -4,16 +4,30 @@ import com.fabrica.p6f5.springapp.audit.model.AuditLog;
 import com.fabrica.p6f5.springapp.audit.model.InvoiceHistory;
 import com.fabrica.p6f5.springapp.audit.repository.AuditLogRepository;
 import com.fabrica.p6f5.springapp.audit.repository.InvoiceHistoryRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -33,39 +47,50 @@ public class AuditService {
     
     @Autowired
     private ObjectMapper objectMapper;
-
+    
+    private final AuditWriteBehindQueue writeBehindQueue;
+    private final TransactionTemplate requiresNewTransaction;
+    
+    @Value("${audit.delta.enabled:true}")
+    private boolean deltaEnabled;
+    
+    @Value("${audit.delta.keyframe-interval:10}")
+    private int keyframeInterval;
+    
     // Constructor explícito
     public AuditService(
             InvoiceHistoryRepository invoiceHistoryRepository,
             AuditLogRepository auditLogRepository,
-            @Qualifier("auditObjectMapper") ObjectMapper objectMapper) {
+            @Qualifier("auditObjectMapper") ObjectMapper objectMapper,
+            AuditWriteBehindQueue writeBehindQueue,
+            PlatformTransactionManager transactionManager) {
         this.invoiceHistoryRepository = invoiceHistoryRepository;
         this.auditLogRepository = auditLogRepository;
         this.objectMapper = objectMapper;
+        this.writeBehindQueue = writeBehindQueue;
+        this.requiresNewTransaction = new TransactionTemplate(transactionManager);
+        this.requiresNewTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
     }
     
     /**
-     * Log an audit event
+     * Log an audit event.
+     * Payloads are serialized on the caller's thread; the row is then handed to the
+     * write-behind queue, or saved in its own transaction when audit.async.enabled is false.
+     * With the queue enabled the returned log has no id yet.
+     * In delta mode an event with both old and new data stores only the JSON Patch between them,
+     * or the new data alone when the patch is empty.
      */
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
     public AuditLog logEvent(String entityType, Long entityId, AuditLog.AuditAction action, 
                             Long changedBy, Object oldData, Object newData, String changeSummary) {
         try {
-            AuditLog auditLog = new AuditLog();
-            auditLog.setEntityType(entityType);
-            auditLog.setEntityId(entityId);
-            auditLog.setAction(action);
-            auditLog.setChangedBy(changedBy);
-            auditLog.setChangeSummary(changeSummary);
+            AuditLog auditLog = buildAuditLog(new AuditEvent(entityType, entityId, action, changedBy,
+                    oldData, newData, changeSummary));
             
-            if (oldData != null) {
-                auditLog.setOldData(objectMapper.writeValueAsString(oldData));
+            if (writeBehindQueue.isEnabled()) {
+                writeBehindQueue.enqueue(auditLog);
+                return auditLog;
             }
-            if (newData != null) {
-                auditLog.setNewData(objectMapper.writeValueAsString(newData));
-            }
-            
-            return auditLogRepository.save(auditLog);
+            return requiresNewTransaction.execute(status -> auditLogRepository.save(auditLog));
         } catch (Exception e) {
             logger.error("Error logging audit event: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to log audit event", e);
@@ -73,7 +98,55 @@ public class AuditService {
     }
     
     /**
-     * Save invoice history version
+     * Log several audit events at once.
+     * Without the write-behind queue all rows are inserted in one transaction as a JDBC batch.
+     */
+    public void logEvents(List<AuditEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        try {
+            List<AuditLog> auditLogs = new ArrayList<>(events.size());
+            for (AuditEvent event : events) {
+                auditLogs.add(buildAuditLog(event));
+            }
+            
+            if (writeBehindQueue.isEnabled()) {
+                auditLogs.forEach(writeBehindQueue::enqueue);
+                return;
+            }
+            requiresNewTransaction.executeWithoutResult(status -> auditLogRepository.saveAll(auditLogs));
+        } catch (Exception e) {
+            logger.error("Error logging {} audit events: {}", events.size(), e.getMessage(), e);
+            throw new RuntimeException("Failed to log audit events", e);
+        }
+    }
+    
+    /**
+     * Save several audit events in the caller's transaction as one JDBC batch.
+     * The write-behind queue is bypassed so the rows commit or roll back with the caller's changes.
+     */
+    @Transactional
+    public List<AuditLog> saveEvents(List<AuditEvent> events) {
+        if (events.isEmpty()) {
+            return List.of();
+        }
+        try {
+            List<AuditLog> auditLogs = new ArrayList<>(events.size());
+            for (AuditEvent event : events) {
+                auditLogs.add(buildAuditLog(event));
+            }
+            return auditLogRepository.saveAll(auditLogs);
+        } catch (JsonProcessingException e) {
+            logger.error("Error saving {} audit events: {}", events.size(), e.getMessage(), e);
+            throw new RuntimeException("Failed to save audit events", e);
+        }
+    }
+    
+    /**
+     * Save invoice history version.
+     * In delta mode a full snapshot is stored every keyframe-interval versions and a
+     * JSON Patch against the previous version otherwise.
      */
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public InvoiceHistory saveInvoiceHistory(Long invoiceId, Integer version, String fiscalFolio,
@@ -84,9 +157,16 @@ public class AuditService {
             history.setVersion(version);
             history.setFiscalFolio(fiscalFolio);
             history.setInvoiceNumber(invoiceNumber);
-            history.setInvoiceData(objectMapper.writeValueAsString(invoiceData));
             history.setCreatedBy(createdBy);
             
+            JsonNode current = objectMapper.valueToTree(invoiceData);
+            JsonNode previous = deltaEnabled ? previousVersionForDelta(invoiceId, version) : null;
+            if (previous != null) {
+                history.setDataPatch(objectMapper.writeValueAsString(JsonPatchDiff.diff(previous, current)));
+            } else {
+                history.setInvoiceData(objectMapper.writeValueAsString(current));
+            }
+            
             return invoiceHistoryRepository.save(history);
         } catch (Exception e) {
             logger.error("Error saving invoice history: {}", e.getMessage(), e);
@@ -95,10 +175,85 @@ public class AuditService {
     }
     
     /**
-     * Get audit logs for an entity
+     * Save one new history version for each of several invoices in the caller's transaction.
+     * Previous versions needed for delta encoding are loaded with a single query.
+     */
+    @Transactional
+    public List<InvoiceHistory> saveInvoiceHistories(List<InvoiceSnapshot> snapshots, Long createdBy) {
+        try {
+            Map<Long, List<InvoiceHistory>> previousVersions = new HashMap<>();
+            if (deltaEnabled && keyframeInterval > 1 && !snapshots.isEmpty()) {
+                List<Long> invoiceIds = snapshots.stream().map(InvoiceSnapshot::invoiceId).toList();
+                for (InvoiceHistory version : invoiceHistoryRepository.findByInvoiceIdInOrderByInvoiceIdAscVersionDesc(invoiceIds)) {
+                    previousVersions.computeIfAbsent(version.getInvoiceId(), id -> new ArrayList<>()).add(version);
+                }
+            }
+            
+            List<InvoiceHistory> histories = new ArrayList<>(snapshots.size());
+            for (InvoiceSnapshot snapshot : snapshots) {
+                InvoiceHistory history = new InvoiceHistory();
+                history.setInvoiceId(snapshot.invoiceId());
+                history.setVersion(snapshot.version());
+                history.setFiscalFolio(snapshot.fiscalFolio());
+                history.setInvoiceNumber(snapshot.invoiceNumber());
+                history.setCreatedBy(createdBy);
+                
+                JsonNode current = objectMapper.valueToTree(snapshot.invoiceData());
+                List<InvoiceHistory> window = previousVersions.getOrDefault(snapshot.invoiceId(), List.of()).stream()
+                        .filter(version -> snapshot.version() != null && version.getVersion() < snapshot.version())
+                        .limit(keyframeInterval - 1)
+                        .toList();
+                JsonNode previous = rebuildLatest(window);
+                if (previous != null) {
+                    history.setDataPatch(objectMapper.writeValueAsString(JsonPatchDiff.diff(previous, current)));
+                } else {
+                    history.setInvoiceData(objectMapper.writeValueAsString(current));
+                }
+                histories.add(history);
+            }
+            
+            return invoiceHistoryRepository.saveAll(histories);
+        } catch (Exception e) {
+            logger.error("Error saving {} invoice history versions: {}", snapshots.size(), e.getMessage(), e);
+            throw new RuntimeException("Failed to save invoice history", e);
+        }
+    }
+    
+    /**
+     * Get audit logs for an entity.
+     * Delta rows are returned with old and new data rebuilt by replaying the entity's
+     * events from the closest preceding full snapshot. A patch is only replayed over a state
+     * matching the fingerprint of its recorded base: when a change was made without an audit row,
+     * or the patch does not apply, the row is returned with the patch alone until the next full snapshot.
      */
     public List<AuditLog> getAuditLogs(String entityType, Long entityId) {
-        return auditLogRepository.findByEntityTypeAndEntityIdOrderByCreatedAtDesc(entityType, entityId);
+        List<AuditLog> logs = auditLogRepository.findByEntityTypeAndEntityIdOrderByCreatedAtDesc(entityType, entityId);
+        if (logs.stream().noneMatch(log -> log.getDataPatch() != null)) {
+            return logs;
+        }
+        
+        List<AuditLog> chronological = new ArrayList<>(logs);
+        chronological.sort(Comparator.comparing(AuditLog::getCreatedAt)
+                .thenComparing(AuditLog::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+        Map<AuditLog, AuditLog> rebuilt = new IdentityHashMap<>();
+        JsonNode state = null;
+        for (AuditLog log : chronological) {
+            if (log.getDataPatch() == null) {
+                if (log.getNewData() != null) {
+                    state = readJson(log.getNewData());
+                }
+                continue;
+            }
+            AuditLog copy = copyAuditLog(log);
+            JsonNode next = replay(state, log);
+            if (next != null) {
+                copy.setOldData(state.toString());
+                copy.setNewData(next.toString());
+            }
+            state = next;
+            rebuilt.put(log, copy);
+        }
+        return logs.stream().map(log -> rebuilt.getOrDefault(log, log)).toList();
     }
     
     /**
@@ -115,6 +270,46 @@ public class AuditService {
         return invoiceHistoryRepository.findByInvoiceIdAndVersion(invoiceId, version);
     }
     
+    /**
+     * Get the full invoice data of a history version, applying patches from its keyframe when needed
+     */
+    public String getInvoiceVersionData(InvoiceHistory history) {
+        if (history.getInvoiceData() != null) {
+            return history.getInvoiceData();
+        }
+        List<InvoiceHistory> window = invoiceHistoryRepository.findByInvoiceIdAndVersionLessThanEqualOrderByVersionDesc(
+                history.getInvoiceId(), history.getVersion(), PageRequest.of(0, keyframeInterval));
+        if (window.stream().noneMatch(version -> version.getInvoiceData() != null)) {
+            // Keyframe interval was lowered since this chain was written
+            window = invoiceHistoryRepository.findByInvoiceIdAndVersionLessThanEqualOrderByVersionDesc(
+                    history.getInvoiceId(), history.getVersion(), Pageable.unpaged());
+        }
+        JsonNode data = rebuildLatest(window);
+        return data != null ? data.toString() : null;
+    }
+    
+    /**
+     * Get the full invoice data of several versions of one invoice, keyed by history id.
+     * The list must contain every version back to the oldest requested version's keyframe,
+     * as returned by {@link #getInvoiceHistory}.
+     */
+    public Map<Long, String> getInvoiceVersionData(List<InvoiceHistory> history) {
+        List<InvoiceHistory> chronological = new ArrayList<>(history);
+        chronological.sort(Comparator.comparing(InvoiceHistory::getVersion));
+        Map<Long, String> data = new HashMap<>();
+        JsonNode state = null;
+        for (InvoiceHistory version : chronological) {
+            if (version.getInvoiceData() != null) {
+                state = readJson(version.getInvoiceData());
+                data.put(version.getId(), version.getInvoiceData());
+            } else if (state != null) {
+                state = JsonPatchDiff.apply(state, readJson(version.getDataPatch()));
+                data.put(version.getId(), state.toString());
+            }
+        }
+        return data;
+    }
+    
     /**
      * Get latest version of invoice
      */
@@ -128,5 +323,114 @@ public class AuditService {
     public long getInvoiceVersionCount(Long invoiceId) {
         return invoiceHistoryRepository.countByInvoiceId(invoiceId);
     }
-}
-
+    
+    /**
+     * Rebuild the version the new one should be diffed against, or null when the new
+     * version has to be a keyframe (no previous version, or the chain is already
+     * keyframe-interval versions long)
+     */
+    private JsonNode previousVersionForDelta(Long invoiceId, Integer version) {
+        if (version == null || keyframeInterval <= 1) {
+            return null;
+        }
+        List<InvoiceHistory> window = invoiceHistoryRepository.findByInvoiceIdAndVersionLessThanEqualOrderByVersionDesc(
+                invoiceId, version - 1, PageRequest.of(0, keyframeInterval - 1));
+        return rebuildLatest(window);
+    }
+    
+    /**
+     * Rebuild the newest version of a newest-first window, or null when the window holds no keyframe
+     */
+    private JsonNode rebuildLatest(List<InvoiceHistory> newestFirst) {
+        int keyframe = -1;
+        for (int i = 0; i < newestFirst.size(); i++) {
+            if (newestFirst.get(i).getInvoiceData() != null) {
+                keyframe = i;
+                break;
+            }
+        }
+        if (keyframe < 0) {
+            return null;
+        }
+        JsonNode state = readJson(newestFirst.get(keyframe).getInvoiceData());
+        for (int i = keyframe - 1; i >= 0; i--) {
+            state = JsonPatchDiff.apply(state, readJson(newestFirst.get(i).getDataPatch()));
+        }
+        return state;
+    }
+    
+    /**
+     * Apply a delta row to the state before it, or null when the state is unknown, does not
+     * match the row's base fingerprint, or the patch does not apply
+     */
+    private JsonNode replay(JsonNode state, AuditLog log) {
+        if (state == null || log.getBaseHash() == null || !log.getBaseHash().equals(JsonPatchDiff.fingerprint(state))) {
+            return null;
+        }
+        try {
+            return JsonPatchDiff.apply(state, readJson(log.getDataPatch()));
+        } catch (RuntimeException e) {
+            logger.warn("Audit log {} patch could not be replayed: {}", log.getId(), e.getMessage());
+            return null;
+        }
+    }
+    
+    private AuditLog buildAuditLog(AuditEvent event) throws JsonProcessingException {
+        AuditLog auditLog = new AuditLog();
+        auditLog.setEntityType(event.entityType());
+        auditLog.setEntityId(event.entityId());
+        auditLog.setAction(event.action());
+        auditLog.setChangedBy(event.changedBy());
+        auditLog.setChangeSummary(event.changeSummary());
+        auditLog.setCreatedAt(LocalDateTime.now());
+        
+        if (deltaEnabled && event.oldData() != null && event.newData() != null) {
+            JsonNode oldData = objectMapper.valueToTree(event.oldData());
+            JsonNode newData = objectMapper.valueToTree(event.newData());
+            JsonNode patch = JsonPatchDiff.diff(oldData, newData);
+            if (patch.isEmpty()) {
+                // Nothing to diff against (e.g. old and new are the same instance), keep the full state
+                auditLog.setNewData(objectMapper.writeValueAsString(newData));
+            } else {
+                auditLog.setDataPatch(objectMapper.writeValueAsString(patch));
+                auditLog.setBaseHash(JsonPatchDiff.fingerprint(oldData));
+            }
+        } else {
+            if (event.oldData() != null) {
+                auditLog.setOldData(objectMapper.writeValueAsString(event.oldData()));
+            }
+            if (event.newData() != null) {
+                auditLog.setNewData(objectMapper.writeValueAsString(event.newData()));
+            }
+        }
+        return auditLog;
+    }
+    
+    private JsonNode readJson(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception e) {
+            throw new IllegalStateException("Stored audit JSON could not be parsed", e);
+        }
+    }
+    
+    private AuditLog copyAuditLog(AuditLog log) {
+        return new AuditLog(log.getId(), log.getEntityType(), log.getEntityId(), log.getAction(), log.getChangedBy(),
+                log.getOldData(), log.getNewData(), log.getDataPatch(), log.getBaseHash(), log.getChangeSummary(), log.getIpAddress(),
+                log.getUserAgent(), log.getCreatedAt());
+    }
+    
+    /**
+     * An audit event to log, see {@link #logEvent}
+     */
+    public record AuditEvent(String entityType, Long entityId, AuditLog.AuditAction action, Long changedBy,
+                             Object oldData, Object newData, String changeSummary) {
+    }
+    
+    /**
+     * The state of an invoice to record as a history version, see {@link #saveInvoiceHistory}
+     */
+    public record InvoiceSnapshot(Long invoiceId, Integer version, String fiscalFolio, String invoiceNumber,
+                                  Object invoiceData) {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,449 @@
+package com.fabrica.p6f5.springapp.audit.service;
+
+import com.fabrica.p6f5.springapp.audit.model.AuditLog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind pipeline for audit events.
+ * Callers enqueue fully serialized {@link AuditLog} rows into a bounded queue and return
+ * immediately; a single dedicated writer thread inserts them into audit_logs with JDBC
+ * batches of up to {@code batch-size} rows, or whatever arrived within {@code flush-interval-ms}.
+ *
+ * <p>Ordering: rows are inserted in enqueue order by one thread. Spilled rows are the only
+ * exception; they are inserted when the spill file is replayed, with their original timestamp.
+ *
+ * <p>Durability: events are accepted when they are logged, independently of the outcome of the
+ * caller's transaction (as with the former REQUIRES_NEW write). Queued events are flushed on
+ * graceful shutdown; events still in memory are lost if the JVM dies. When the database is
+ * unavailable, events are appended to the spill file and replayed on the next start. A batch
+ * the database rejects is retried row by row, and only the rows rejected again are written to
+ * the dead-letter file, which is never replayed automatically.
+ */
+@Component
+public class AuditWriteBehindQueue implements SmartLifecycle {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AuditWriteBehindQueue.class);
+    
+    private static final String INSERT_SQL =
+            "INSERT INTO audit_logs (audit_log_id, entity_type, entity_id, action, changed_by, old_data, new_data, " +
+            "data_patch, base_hash, change_summary, ip_address, user_agent, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, CAST(? AS jsonb), CAST(? AS jsonb), CAST(? AS jsonb), ?, ?, ?, ?, ?)";
+    
+    private static final String NEXT_ID_SQL = "SELECT nextval('audit_logs_audit_log_id_seq')";
+    
+    /**
+     * Must match the allocationSize of AuditLog so ids drawn here never overlap Hibernate's blocks
+     */
+    private static final int ID_BLOCK_SIZE = 50;
+    
+    /**
+     * What to do with an event when the queue is full
+     */
+    public enum OverflowPolicy {
+        /** Wait until the writer frees a slot */
+        BLOCK,
+        /** Append the event to the spill file, it is inserted on the next start */
+        SPILL,
+        /** Reject the event with an exception */
+        FAIL
+    }
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final OverflowPolicy overflowPolicy;
+    private final Path spillFile;
+    private final Path deadLetterFile;
+    private final BlockingQueue<AuditLog> queue;
+    private final ObjectMapper spillMapper = new ObjectMapper().findAndRegisterModules();
+    
+    /** Locks instead of synchronized so virtual threads are not pinned during JDBC and file I/O */
+    private final ReentrantLock idLock = new ReentrantLock();
+    private final ReentrantLock spillLock = new ReentrantLock();
+    
+    /**
+     * Enqueuers hold the read lock from the running check until their row is in the queue;
+     * start and stop flip running under the write lock, so no row is queued after stop drains
+     */
+    private final ReentrantReadWriteLock lifecycleLock = new ReentrantReadWriteLock();
+    
+    private volatile boolean running;
+    private Thread writer;
+    private long nextId;
+    private long maxId = -1;
+    
+    public AuditWriteBehindQueue(
+            JdbcTemplate jdbcTemplate,
+            @Value("${audit.async.enabled:true}") boolean enabled,
+            @Value("${audit.async.capacity:10000}") int capacity,
+            @Value("${audit.async.batch-size:200}") int batchSize,
+            @Value("${audit.async.flush-interval-ms:500}") long flushIntervalMillis,
+            @Value("${audit.async.overflow-policy:BLOCK}") OverflowPolicy overflowPolicy,
+            @Value("${audit.async.spill-file:./data/audit-spill.ndjson}") String spillFile,
+            @Value("${audit.async.dead-letter-file:./data/audit-dead-letter.ndjson}") String deadLetterFile) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.overflowPolicy = overflowPolicy;
+        this.spillFile = Paths.get(spillFile);
+        this.deadLetterFile = Paths.get(deadLetterFile);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+    
+    /**
+     * Whether audit events go through this queue instead of being written synchronously
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Hand an audit row to the writer, applying the overflow policy when the queue is full.
+     * Before start and after shutdown the row is written synchronously.
+     * 
+     * @param auditLog the audit row, with its JSON payloads already serialized
+     */
+    public void enqueue(AuditLog auditLog) {
+        lifecycleLock.readLock().lock();
+        try {
+            if (running) {
+                offer(auditLog);
+                return;
+            }
+        } finally {
+            lifecycleLock.readLock().unlock();
+        }
+        writeBatch(List.of(auditLog));
+    }
+    
+    private void offer(AuditLog auditLog) {
+        if (queue.offer(auditLog)) {
+            return;
+        }
+        switch (overflowPolicy) {
+            case BLOCK -> {
+                try {
+                    queue.put(auditLog);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the audit queue", e);
+                }
+            }
+            case SPILL -> spill(List.of(auditLog));
+            case FAIL -> throw new IllegalStateException("Audit queue is full (" + queue.size() + " pending events)");
+        }
+    }
+    
+    /**
+     * Number of events waiting to be written
+     */
+    public int pendingEvents() {
+        return queue.size();
+    }
+    
+    @Override
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        replaySpillFile();
+        lifecycleLock.writeLock().lock();
+        try {
+            running = true;
+            writer = new Thread(this::runWriter, "audit-writer");
+            writer.setDaemon(true);
+            writer.start();
+        } finally {
+            lifecycleLock.writeLock().unlock();
+        }
+        logger.info("Audit write-behind queue started (capacity {}, batch size {}, overflow policy {})",
+                queue.remainingCapacity(), batchSize, overflowPolicy);
+    }
+    
+    @Override
+    public void stop() {
+        // Waits for enqueuers that saw running == true; later ones write synchronously
+        lifecycleLock.writeLock().lock();
+        try {
+            if (!running) {
+                return;
+            }
+            running = false;
+        } finally {
+            lifecycleLock.writeLock().unlock();
+        }
+        try {
+            writer.join(Math.max(flushIntervalMillis * 10, 10_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Whatever the writer could not flush in time is written from the shutdown thread
+        List<AuditLog> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            writeBatch(remaining);
+        }
+        logger.info("Audit write-behind queue stopped");
+    }
+    
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+    
+    /**
+     * Stop after the web server has stopped accepting requests, before the DataSource is closed
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 2048;
+    }
+    
+    /**
+     * Writer loop: a batch is flushed when it is full or when flush-interval-ms have passed
+     * since its first event. Keeps draining after shutdown is requested until the queue is empty.
+     */
+    private void runWriter() {
+        List<AuditLog> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                AuditLog first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    AuditLog next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (!batch.isEmpty()) {
+                    writeBatch(batch);
+                }
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+    
+    /**
+     * Insert a batch with one JDBC round trip.
+     * When the database is unavailable the batch goes to the spill file; when it rejects the
+     * batch, the rows are retried one by one and those rejected again go to the dead-letter file.
+     */
+    private void writeBatch(List<AuditLog> batch) {
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, toRows(batch));
+        } catch (Exception e) {
+            if (isUnavailable(e)) {
+                logger.error("Could not write {} audit events, spilling them to {}: {}", batch.size(), spillFile, e.getMessage());
+                spill(batch);
+            } else if (batch.size() == 1) {
+                deadLetter(batch.get(0), e);
+            } else {
+                logger.warn("Batch of {} audit events rejected, retrying row by row: {}", batch.size(), e.getMessage());
+                writeRowByRow(batch);
+            }
+        }
+    }
+    
+    private void writeRowByRow(List<AuditLog> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            AuditLog auditLog = batch.get(i);
+            try {
+                jdbcTemplate.batchUpdate(INSERT_SQL, toRows(List.of(auditLog)));
+            } catch (Exception e) {
+                if (isUnavailable(e)) {
+                    List<AuditLog> rest = batch.subList(i, batch.size());
+                    logger.error("Could not write {} audit events, spilling them to {}: {}", rest.size(), spillFile, e.getMessage());
+                    spill(rest);
+                    return;
+                }
+                deadLetter(auditLog, e);
+            }
+        }
+    }
+    
+    /**
+     * Whether a failure means the database could not be reached, rather than that it rejected the rows
+     */
+    private boolean isUnavailable(Exception e) {
+        return e instanceof DataAccessResourceFailureException
+                || e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException;
+    }
+    
+    private List<Object[]> toRows(List<AuditLog> batch) {
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        for (AuditLog auditLog : batch) {
+            if (auditLog.getId() == null) {
+                auditLog.setId(nextId());
+            }
+            rows.add(new Object[] {
+                auditLog.getId(),
+                auditLog.getEntityType(),
+                auditLog.getEntityId(),
+                auditLog.getAction().name(),
+                auditLog.getChangedBy(),
+                auditLog.getOldData(),
+                auditLog.getNewData(),
+                auditLog.getDataPatch(),
+                auditLog.getBaseHash(),
+                auditLog.getChangeSummary(),
+                auditLog.getIpAddress(),
+                auditLog.getUserAgent(),
+                auditLog.getCreatedAt()
+            });
+        }
+        return rows;
+    }
+    
+    /**
+     * Draw ids from the audit_logs sequence in blocks, following Hibernate's pooled optimizer:
+     * a sequence value is the highest id of a block of ID_BLOCK_SIZE ids.
+     */
+    private long nextId() {
+        idLock.lock();
+        try {
+            if (nextId > maxId) {
+                long high = jdbcTemplate.queryForObject(NEXT_ID_SQL, Long.class);
+                if (high < ID_BLOCK_SIZE) {
+                    // Fresh sequence: its first value is not the end of a full block
+                    high = jdbcTemplate.queryForObject(NEXT_ID_SQL, Long.class);
+                }
+                nextId = high - ID_BLOCK_SIZE + 1;
+                maxId = high;
+            }
+            return nextId++;
+        } finally {
+            idLock.unlock();
+        }
+    }
+    
+    /**
+     * Append events to the spill file as one JSON document per line
+     */
+    private void spill(List<AuditLog> events) {
+        spillLock.lock();
+        try {
+            Path parent = spillFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (BufferedWriter out = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (AuditLog event : events) {
+                    out.write(spillMapper.writeValueAsString(event));
+                    out.newLine();
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Could not spill {} audit events, they are lost: {}", events.size(), e.getMessage(), e);
+        } finally {
+            spillLock.unlock();
+        }
+    }
+    
+    /**
+     * Append a row the database rejected to the dead-letter file, with the error, for manual inspection
+     */
+    private void deadLetter(AuditLog event, Exception error) {
+        logger.error("Audit event for {} {} rejected, writing it to {}: {}", event.getEntityType(), event.getEntityId(),
+                deadLetterFile, error.getMessage());
+        spillLock.lock();
+        try {
+            Path parent = deadLetterFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            ObjectNode line = spillMapper.createObjectNode();
+            line.put("error", String.valueOf(error.getMessage()));
+            line.set("event", spillMapper.valueToTree(event));
+            Files.writeString(deadLetterFile, spillMapper.writeValueAsString(line) + System.lineSeparator(),
+                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.error("Could not dead-letter audit event, it is lost: {}", e.getMessage(), e);
+        } finally {
+            spillLock.unlock();
+        }
+    }
+    
+    /**
+     * Insert events spilled by a previous run. The file is renamed first so events that fail
+     * again are spilled to a fresh file instead of being read twice.
+     */
+    private void replaySpillFile() {
+        if (!Files.exists(spillFile)) {
+            return;
+        }
+        Path replayFile = spillFile.resolveSibling(spillFile.getFileName() + ".replay");
+        try {
+            Files.move(spillFile, replayFile, StandardCopyOption.REPLACE_EXISTING);
+            int replayed = 0;
+            List<AuditLog> batch = new ArrayList<>(batchSize);
+            try (BufferedReader in = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    batch.add(spillMapper.readValue(line, AuditLog.class));
+                    if (batch.size() == batchSize) {
+                        writeBatch(batch);
+                        replayed += batch.size();
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                replayed += batch.size();
+            }
+            Files.delete(replayFile);
+            logger.info("Replayed {} spilled audit events", replayed);
+        } catch (IOException e) {
+            logger.error("Could not replay audit spill file {}: {}", replayFile, e.getMessage(), e);
+        }
+    }
+}
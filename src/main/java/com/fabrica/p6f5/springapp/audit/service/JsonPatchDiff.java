@@ -0,0 +1,195 @@
+package com.fabrica.p6f5.springapp.audit.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Minimal RFC 6902 JSON Patch support for audit deltas.
+ * Only produces add, remove and replace operations: objects are diffed field by field,
+ * arrays of the same length element by element, and arrays whose length changed are replaced whole.
+ */
+public final class JsonPatchDiff {
+    
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+    
+    private JsonPatchDiff() {
+    }
+    
+    /**
+     * Compute the patch that turns {@code source} into {@code target}
+     * 
+     * @param source the previous document
+     * @param target the new document
+     * @return array of patch operations, empty when both documents are equal
+     */
+    public static ArrayNode diff(JsonNode source, JsonNode target) {
+        ArrayNode patch = NODES.arrayNode();
+        diff(source, target, "", patch);
+        return patch;
+    }
+    
+    /**
+     * Apply a patch produced by {@link #diff} to a copy of {@code document}
+     * 
+     * @param document the document to patch, left untouched
+     * @param patch array of add, remove and replace operations
+     * @return the patched document
+     */
+    public static JsonNode apply(JsonNode document, JsonNode patch) {
+        JsonNode result = document.deepCopy();
+        for (JsonNode operation : patch) {
+            String op = operation.path("op").asText();
+            List<String> tokens = parsePointer(operation.path("path").asText());
+            JsonNode value = operation.get("value");
+            if (tokens.isEmpty()) {
+                // Whole-document replacement
+                result = "remove".equals(op) ? NODES.nullNode() : value.deepCopy();
+                continue;
+            }
+            JsonNode parent = navigate(result, tokens.subList(0, tokens.size() - 1));
+            String last = tokens.get(tokens.size() - 1);
+            if (parent instanceof ObjectNode object) {
+                switch (op) {
+                    case "add", "replace" -> object.set(last, value.deepCopy());
+                    case "remove" -> object.remove(last);
+                    default -> throw new IllegalArgumentException("Unsupported patch operation: " + op);
+                }
+            } else if (parent instanceof ArrayNode array) {
+                switch (op) {
+                    case "add" -> {
+                        if ("-".equals(last)) {
+                            array.add(value.deepCopy());
+                        } else {
+                            array.insert(Integer.parseInt(last), value.deepCopy());
+                        }
+                    }
+                    case "replace" -> array.set(Integer.parseInt(last), value.deepCopy());
+                    case "remove" -> array.remove(Integer.parseInt(last));
+                    default -> throw new IllegalArgumentException("Unsupported patch operation: " + op);
+                }
+            } else {
+                throw new IllegalArgumentException("Patch path does not exist: " + operation.path("path").asText());
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Fingerprint a document independently of field order and number formatting, so a document
+     * rebuilt by {@link #apply} or read back from JSONB matches the one it was serialized from
+     * 
+     * @param document the document
+     * @return hex SHA-256 of the canonical form
+     */
+    public static String fingerprint(JsonNode document) {
+        StringBuilder canonical = new StringBuilder();
+        canonicalize(document, canonical);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    private static void canonicalize(JsonNode node, StringBuilder out) {
+        if (node.isObject()) {
+            Map<String, JsonNode> fields = new TreeMap<>();
+            node.fields().forEachRemaining(field -> fields.put(field.getKey(), field.getValue()));
+            out.append('{');
+            fields.forEach((key, value) -> {
+                out.append(NODES.textNode(key)).append(':');
+                canonicalize(value, out);
+                out.append(',');
+            });
+            out.append('}');
+        } else if (node.isArray()) {
+            out.append('[');
+            for (JsonNode element : node) {
+                canonicalize(element, out);
+                out.append(',');
+            }
+            out.append(']');
+        } else if (node.isNumber()) {
+            // 100.00, 100.0 and 100 are the same amount
+            out.append(node.decimalValue().stripTrailingZeros().toPlainString());
+        } else {
+            out.append(node);
+        }
+    }
+    
+    private static void diff(JsonNode source, JsonNode target, String path, ArrayNode patch) {
+        if (source.equals(target)) {
+            return;
+        }
+        if (source.isObject() && target.isObject()) {
+            Iterator<Map.Entry<String, JsonNode>> fields = source.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                String fieldPath = path + "/" + escape(field.getKey());
+                JsonNode targetValue = target.get(field.getKey());
+                if (targetValue == null) {
+                    patch.addObject().put("op", "remove").put("path", fieldPath);
+                } else {
+                    diff(field.getValue(), targetValue, fieldPath, patch);
+                }
+            }
+            Iterator<Map.Entry<String, JsonNode>> targetFields = target.fields();
+            while (targetFields.hasNext()) {
+                Map.Entry<String, JsonNode> field = targetFields.next();
+                if (!source.has(field.getKey())) {
+                    ObjectNode operation = patch.addObject().put("op", "add").put("path", path + "/" + escape(field.getKey()));
+                    operation.set("value", field.getValue());
+                }
+            }
+            return;
+        }
+        if (source.isArray() && target.isArray() && source.size() == target.size()) {
+            for (int i = 0; i < source.size(); i++) {
+                diff(source.get(i), target.get(i), path + "/" + i, patch);
+            }
+            return;
+        }
+        ObjectNode operation = patch.addObject().put("op", "replace").put("path", path);
+        operation.set("value", target);
+    }
+    
+    private static JsonNode navigate(JsonNode document, List<String> tokens) {
+        JsonNode current = document;
+        for (String token : tokens) {
+            current = current.isArray() ? current.get(Integer.parseInt(token)) : current.get(token);
+            if (current == null) {
+                return null;
+            }
+        }
+        return current;
+    }
+    
+    private static List<String> parsePointer(String pointer) {
+        List<String> tokens = new ArrayList<>();
+        if (pointer.isEmpty()) {
+            return tokens;
+        }
+        for (String token : pointer.substring(1).split("/", -1)) {
+            tokens.add(token.replace("~1", "/").replace("~0", "~"));
+        }
+        return tokens;
+    }
+    
+    private static String escape(String key) {
+        return key.replace("~", "~0").replace("/", "~1");
+    }
+}
@@ -0,0 +1,59 @@
+package com.fabrica.p6f5.springapp.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Factory for the executors of background pipelines (PDF rendering, exports, batch jobs).
+ * Follows spring.threads.virtual.enabled like Tomcat and @Async do: in virtual-thread mode
+ * tasks run on virtual threads, otherwise on named platform threads. Either way the
+ * executor is bounded in concurrency and queue length, so background work can never
+ * open more database connections than it is given and overload is rejected instead of queued forever.
+ */
+@Component
+public class BackgroundExecutors {
+    
+    private final boolean virtualThreads;
+    
+    public BackgroundExecutors(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+    
+    /**
+     * Whether background tasks run on virtual threads
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+    
+    /**
+     * Create a bounded executor; tasks beyond the queue capacity are rejected with
+     * {@link java.util.concurrent.RejectedExecutionException}.
+     * 
+     * @param name thread name prefix
+     * @param concurrency maximum number of tasks running at once
+     * @param queueCapacity maximum number of waiting tasks
+     * @return a new executor, to be shut down by its owner
+     */
+    public ThreadPoolExecutor newBoundedExecutor(String name, int concurrency, int queueCapacity) {
+        return new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), newThreadFactory(name));
+    }
+    
+    /**
+     * Thread factory for a pipeline, virtual or platform depending on the configured mode.
+     * 
+     * @param name thread name prefix
+     * @return the thread factory
+     */
+    public ThreadFactory newThreadFactory(String name) {
+        return virtualThreads
+                ? Thread.ofVirtual().name(name + "-", 0).factory()
+                : Thread.ofPlatform().name(name + "-", 0).daemon(true).factory();
+    }
+}
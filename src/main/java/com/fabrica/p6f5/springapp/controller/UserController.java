@@ -75,6 +75,7 @@ public class UserController {
             Optional<User> existingUser = userService.findById(id);
             if (existingUser.isPresent()) {
                 User updatedUser = userService.save(user);
+                userService.invalidateCachedPrincipal(id);
                 return ResponseEntity.ok(ApiResponse.success("User updated successfully", updatedUser));
             } else {
                 return ResponseEntity.notFound().build();
@@ -0,0 +1,50 @@
+package com.fabrica.p6f5.springapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Generic DTO for keyset (cursor) paginated responses.
+ * The next cursor is an opaque token that must be sent back as-is to fetch the following page.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+
+    private List<T> items;
+    private String nextCursor;
+    private boolean hasMore;
+    private int size;
+
+    /**
+     * Build a page from rows fetched with a limit of {@code pageSize + 1}.
+     * The extra row only signals that another page exists and is dropped.
+     *
+     * @param rows the fetched rows
+     * @param pageSize the requested page size
+     * @param cursorOf extracts the keyset position of a row
+     * @return the page
+     */
+    public static <T> CursorPage<T> fromRows(List<T> rows, int pageSize, Function<T, KeysetCursor> cursorOf) {
+        boolean hasMore = rows.size() > pageSize;
+        List<T> items = hasMore ? rows.subList(0, pageSize) : rows;
+        String nextCursor = hasMore ? cursorOf.apply(items.get(items.size() - 1)).encode() : null;
+        return new CursorPage<>(items, nextCursor, hasMore, pageSize);
+    }
+
+    /**
+     * Convert the items of this page keeping the pagination metadata.
+     *
+     * @param mapper the item converter
+     * @return the converted page
+     */
+    public <R> CursorPage<R> map(Function<T, R> mapper) {
+        return new CursorPage<>(items.stream().map(mapper).collect(Collectors.toList()), nextCursor, hasMore, size);
+    }
+}
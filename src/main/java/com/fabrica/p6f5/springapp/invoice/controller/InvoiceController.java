@@ -1,24 +1,50 @@
 package com.fabrica.p6f5.springapp.invoice.controller;
 
 import com.fabrica.p6f5.springapp.dto.ApiResponse;
+import com.fabrica.p6f5.springapp.dto.CursorPage;
+import com.fabrica.p6f5.springapp.exception.BusinessException;
 import com.fabrica.p6f5.springapp.entity.User;
+import com.fabrica.p6f5.springapp.invoice.dto.BatchInvoiceResult;
 import com.fabrica.p6f5.springapp.invoice.dto.CreateInvoiceRequest;
 import com.fabrica.p6f5.springapp.invoice.dto.InvoiceResponse;
+import com.fabrica.p6f5.springapp.invoice.dto.InvoiceSummaryResponse;
 import com.fabrica.p6f5.springapp.invoice.dto.UpdateInvoiceRequest;
 import com.fabrica.p6f5.springapp.invoice.model.Invoice;
+import com.fabrica.p6f5.springapp.invoice.service.InvoiceExportService;
 import com.fabrica.p6f5.springapp.invoice.service.InvoiceService;
+import com.fabrica.p6f5.springapp.pdf.dto.PdfJobResponse;
+import com.fabrica.p6f5.springapp.pdf.service.PdfDownloadService;
+import com.fabrica.p6f5.springapp.pdf.service.PdfExportService;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -32,12 +58,29 @@ public class InvoiceController {
     
     private static final Logger logger = LoggerFactory.getLogger(InvoiceController.class);
     
+    private static final String NDJSON = "application/x-ndjson";
+    
     @Autowired
     private InvoiceService invoiceService;
     
     @Autowired
     private com.fabrica.p6f5.springapp.pdf.service.PdfService pdfService;
     
+    @Autowired
+    private PdfDownloadService pdfDownloadService;
+    
+    @Autowired
+    private PdfExportService pdfExportService;
+    
+    @Autowired
+    private InvoiceExportService invoiceExportService;
+    
+    @Autowired
+    private MappingJackson2HttpMessageConverter jsonConverter;
+    
+    @Value("${invoice.batch.max-size:1000}")
+    private int maxBatchSize;
+    
     /**
      * Create a draft invoice
      */
@@ -56,6 +99,35 @@ public class InvoiceController {
         return ResponseEntity.status(HttpStatus.CREATED).body(apiResponse);
     }
     
+    /**
+     * Create several draft invoices from a JSON array
+     */
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Create draft invoices in batch", description = "Creates up to invoice.batch.max-size invoices " +
+            "in one request and returns one result per invoice. Invalid invoices do not block the others. " +
+            "The array is rejected once it exceeds invoice.batch.max-size elements.")
+    public ResponseEntity<ApiResponse<List<BatchInvoiceResult>>> createDraftInvoices(
+            HttpServletRequest request,
+            @AuthenticationPrincipal User user) throws IOException {
+        List<CreateInvoiceRequest> requests = readJsonArray(request);
+        logger.info("Creating {} draft invoices by user: {}", requests.size(), user.getUsername());
+        return batchResponse(invoiceService.createDraftInvoices(requests, user.getId()));
+    }
+    
+    /**
+     * Create several draft invoices from an NDJSON stream, one invoice per line
+     */
+    @PostMapping(value = "/batch", consumes = NDJSON)
+    @Operation(summary = "Create draft invoices in batch (NDJSON)", description = "Same as the JSON array variant, " +
+            "with one invoice per line. The stream is rejected once it exceeds invoice.batch.max-size lines.")
+    public ResponseEntity<ApiResponse<List<BatchInvoiceResult>>> createDraftInvoicesNdjson(
+            HttpServletRequest request,
+            @AuthenticationPrincipal User user) throws IOException {
+        List<CreateInvoiceRequest> requests = readNdjson(request);
+        logger.info("Creating {} draft invoices by user: {}", requests.size(), user.getUsername());
+        return batchResponse(invoiceService.createDraftInvoices(requests, user.getId()));
+    }
+    
     /**
      * Update a draft invoice
      */
@@ -111,14 +183,17 @@ public class InvoiceController {
     }
     
     /**
-     * Get all invoices
+     * Get all invoices (keyset paginated)
      */
     @GetMapping
-    @Operation(summary = "Get all invoices", description = "Retrieves all invoices")
-    public ResponseEntity<ApiResponse<List<InvoiceResponse>>> getAllInvoices() {
-        logger.info("Getting all invoices");
-        List<InvoiceResponse> response = invoiceService.getAllInvoices();
-        ApiResponse<List<InvoiceResponse>> apiResponse = new ApiResponse<>(
+    @Operation(summary = "Get all invoices", description = "Retrieves invoices newest first using cursor pagination. " +
+            "Pass the returned nextCursor to fetch the following page.")
+    public ResponseEntity<ApiResponse<CursorPage<InvoiceResponse>>> getAllInvoices(
+            @Parameter(description = "Opaque cursor returned by the previous page") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Page size") @RequestParam(required = false) Integer size) {
+        logger.info("Getting invoices page, size: {}", size);
+        CursorPage<InvoiceResponse> response = invoiceService.getAllInvoices(cursor, size);
+        ApiResponse<CursorPage<InvoiceResponse>> apiResponse = new ApiResponse<>(
             true,
             "Invoices retrieved successfully",
             response
@@ -126,6 +201,46 @@ public class InvoiceController {
         return ResponseEntity.ok(apiResponse);
     }
     
+    /**
+     * Get invoice summaries (keyset paginated)
+     */
+    @GetMapping("/summary")
+    @Operation(summary = "Get invoice summaries", description = "Retrieves a lightweight, item-less view of invoices " +
+            "newest first using cursor pagination")
+    public ResponseEntity<ApiResponse<CursorPage<InvoiceSummaryResponse>>> getInvoiceSummaries(
+            @Parameter(description = "Opaque cursor returned by the previous page") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Page size") @RequestParam(required = false) Integer size) {
+        logger.info("Getting invoice summaries page, size: {}", size);
+        CursorPage<InvoiceSummaryResponse> response = invoiceService.getInvoiceSummaries(null, cursor, size);
+        ApiResponse<CursorPage<InvoiceSummaryResponse>> apiResponse = new ApiResponse<>(
+            true,
+            "Invoice summaries retrieved successfully",
+            response
+        );
+        return ResponseEntity.ok(apiResponse);
+    }
+    
+    /**
+     * Get invoice summaries by status (keyset paginated)
+     */
+    @GetMapping("/status/{status}/summary")
+    @Operation(summary = "Get invoice summaries by status", description = "Retrieves a lightweight, item-less view of " +
+            "invoices filtered by status using cursor pagination")
+    public ResponseEntity<ApiResponse<CursorPage<InvoiceSummaryResponse>>> getInvoiceSummariesByStatus(
+            @Parameter(description = "Invoice status") @PathVariable String status,
+            @Parameter(description = "Opaque cursor returned by the previous page") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Page size") @RequestParam(required = false) Integer size) {
+        logger.info("Getting invoice summaries with status: {}", status);
+        Invoice.InvoiceStatus invoiceStatus = Invoice.InvoiceStatus.valueOf(status.toUpperCase());
+        CursorPage<InvoiceSummaryResponse> response = invoiceService.getInvoiceSummaries(invoiceStatus, cursor, size);
+        ApiResponse<CursorPage<InvoiceSummaryResponse>> apiResponse = new ApiResponse<>(
+            true,
+            "Invoice summaries retrieved successfully",
+            response
+        );
+        return ResponseEntity.ok(apiResponse);
+    }
+    
     /**
      * Get invoices by status
      */
@@ -145,21 +260,151 @@ public class InvoiceController {
     }
     
     /**
-     * Generate PDF for an issued invoice
+     * Request PDF generation for an issued invoice
      */
     @PostMapping("/{invoiceId}/pdf")
-    @Operation(summary = "Generate PDF", description = "Generates a PDF for an issued invoice")
-    public ResponseEntity<ApiResponse<String>> generateInvoicePDF(
+    @Operation(summary = "Generate PDF", description = "Queues PDF generation for an issued invoice and returns the job")
+    public ResponseEntity<ApiResponse<PdfJobResponse>> generateInvoicePDF(
             @Parameter(description = "Invoice ID") @PathVariable Long invoiceId,
+            @Parameter(description = "PDF template (STANDARD, COMPACT)") @RequestParam(defaultValue = "STANDARD") String template,
             @AuthenticationPrincipal User user) {
-        logger.info("Generating PDF for invoice id: {} by user: {}", invoiceId, user.getUsername());
-        String pdfUrl = pdfService.generateInvoicePDF(invoiceId, user.getId());
-        ApiResponse<String> apiResponse = new ApiResponse<>(
+        logger.info("Requesting PDF for invoice id: {} by user: {}", invoiceId, user.getUsername());
+        PdfJobResponse job = pdfService.requestInvoicePdf(invoiceId, user.getId(), template);
+        ApiResponse<PdfJobResponse> apiResponse = new ApiResponse<>(
+            true,
+            "PDF generation queued",
+            job
+        );
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(apiResponse);
+    }
+    
+    /**
+     * Stream the invoice ledger as NDJSON or CSV
+     */
+    @GetMapping("/export")
+    @Operation(summary = "Export invoices", description = "Streams invoices with their items and shipment ids in id order " +
+            "as NDJSON (one invoice per line) or CSV, optionally filtered by status and invoice date range")
+    public ResponseEntity<StreamingResponseBody> exportInvoices(
+            @Parameter(description = "Output format (ndjson, csv)") @RequestParam(defaultValue = "ndjson") String format,
+            @Parameter(description = "Invoice status") @RequestParam(required = false) Invoice.InvoiceStatus status,
+            @Parameter(description = "First invoice date") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @Parameter(description = "Last invoice date") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        InvoiceExportService.Format exportFormat = invoiceExportService.validate(format, from, to);
+        StreamingResponseBody body = out -> invoiceExportService.export(exportFormat, status, from, to, out);
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(exportFormat.mediaType()))
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"invoices." + exportFormat.extension() + "\"")
+            .body(body);
+    }
+    
+    /**
+     * Export the PDFs of the issued invoices of a client and/or date range as a streamed ZIP
+     */
+    @GetMapping("/pdf-export")
+    @Operation(summary = "Export PDFs", description = "Streams a ZIP with the PDFs of the issued invoices matching a client and/or invoice date range")
+    public ResponseEntity<StreamingResponseBody> exportInvoicePDFs(
+            @Parameter(description = "Client name") @RequestParam(required = false) String clientName,
+            @Parameter(description = "First invoice date") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @Parameter(description = "Last invoice date") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @Parameter(description = "PDF template (STANDARD, COMPACT)") @RequestParam(defaultValue = "STANDARD") String template) {
+        pdfExportService.validate(clientName, from, to, template);
+        StreamingResponseBody body = out -> pdfExportService.exportZip(clientName, from, to, template, out);
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType("application/zip"))
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"invoices.zip\"")
+            .body(body);
+    }
+    
+    /**
+     * Download the PDF of an issued invoice
+     */
+    @GetMapping("/{invoiceId}/pdf")
+    @Operation(summary = "Download PDF", description = "Streams the PDF of an issued invoice, with ETag and Range support")
+    public void downloadInvoicePDF(
+            @Parameter(description = "Invoice ID") @PathVariable Long invoiceId,
+            @Parameter(description = "PDF template (STANDARD, COMPACT)") @RequestParam(defaultValue = "STANDARD") String template,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        pdfDownloadService.download(invoiceId, template, request, response);
+    }
+    
+    /**
+     * Get the state of a PDF generation job
+     */
+    @GetMapping("/{invoiceId}/pdf/jobs/{jobId}")
+    @Operation(summary = "Get PDF job", description = "Retrieves the status of a PDF generation job")
+    public ResponseEntity<ApiResponse<PdfJobResponse>> getPdfJob(
+            @Parameter(description = "Invoice ID") @PathVariable Long invoiceId,
+            @Parameter(description = "Job ID") @PathVariable Long jobId) {
+        PdfJobResponse job = pdfService.getJob(invoiceId, jobId);
+        ApiResponse<PdfJobResponse> apiResponse = new ApiResponse<>(
             true,
-            "PDF generated successfully",
-            pdfUrl
+            "PDF job retrieved successfully",
+            job
         );
         return ResponseEntity.ok(apiResponse);
     }
+    
+    private ResponseEntity<ApiResponse<List<BatchInvoiceResult>>> batchResponse(List<BatchInvoiceResult> results) {
+        long created = results.stream().filter(BatchInvoiceResult::isSuccess).count();
+        ApiResponse<List<BatchInvoiceResult>> apiResponse = new ApiResponse<>(
+            created == results.size(),
+            "Created " + created + " of " + results.size() + " draft invoices",
+            results
+        );
+        return ResponseEntity.ok(apiResponse);
+    }
+    
+    /**
+     * Parse a JSON array body element by element, so an oversized array is rejected without binding it whole
+     */
+    private List<CreateInvoiceRequest> readJsonArray(HttpServletRequest request) throws IOException {
+        ObjectMapper objectMapper = jsonConverter.getObjectMapper();
+        List<CreateInvoiceRequest> requests = new ArrayList<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(request.getInputStream())) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new BusinessException("The request body must be a JSON array of invoices");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new BusinessException("The JSON array of invoices is not closed");
+                }
+                if (requests.size() == maxBatchSize) {
+                    throw new BusinessException("A batch may contain at most " + maxBatchSize + " invoices");
+                }
+                requests.add(objectMapper.readValue(parser, CreateInvoiceRequest.class));
+            }
+        } catch (JsonProcessingException e) {
+            throw new BusinessException("Invalid invoice JSON at index " + requests.size() + ": " + e.getOriginalMessage());
+        }
+        return requests;
+    }
+    
+    /**
+     * Parse an NDJSON body line by line, so an oversized stream is rejected without buffering it whole
+     */
+    private List<CreateInvoiceRequest> readNdjson(HttpServletRequest request) throws IOException {
+        ObjectMapper objectMapper = jsonConverter.getObjectMapper();
+        List<CreateInvoiceRequest> requests = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (requests.size() == maxBatchSize) {
+                    throw new BusinessException("A batch may contain at most " + maxBatchSize + " invoices");
+                }
+                try {
+                    requests.add(objectMapper.readValue(line, CreateInvoiceRequest.class));
+                } catch (JsonProcessingException e) {
+                    throw new BusinessException("Invalid invoice JSON on line " + lineNumber + ": " + e.getOriginalMessage());
+                }
+            }
+        }
+        return requests;
+    }
 }
-
@@ -12,6 +12,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -35,8 +36,9 @@ public class InvoiceHistoryController {
     public ResponseEntity<ApiResponse<List<InvoiceHistoryResponse>>> getInvoiceHistory(
             @Parameter(description = "Invoice ID") @PathVariable Long invoiceId) {
         List<InvoiceHistory> history = auditService.getInvoiceHistory(invoiceId);
+        Map<Long, String> invoiceData = auditService.getInvoiceVersionData(history);
         List<InvoiceHistoryResponse> response = history.stream()
-            .map(this::convertToResponse)
+            .map(version -> convertToResponse(version, invoiceData.get(version.getId())))
             .collect(Collectors.toList());
         ApiResponse<List<InvoiceHistoryResponse>> apiResponse = new ApiResponse<>(
             true,
@@ -63,7 +65,8 @@ public class InvoiceHistoryController {
             );
             return ResponseEntity.ok(apiResponse);
         }
-        InvoiceHistoryResponse response = convertToResponse(history.get());
+        InvoiceHistoryResponse response = convertToResponse(history.get(),
+            auditService.getInvoiceVersionData(history.get()));
         ApiResponse<InvoiceHistoryResponse> apiResponse = new ApiResponse<>(
             true,
             "Invoice version retrieved successfully",
@@ -73,16 +76,16 @@ public class InvoiceHistoryController {
     }
     
     /**
-     * Convert InvoiceHistory to response DTO
+     * Convert InvoiceHistory to response DTO, with the full invoice data rebuilt from deltas
      */
-    private InvoiceHistoryResponse convertToResponse(InvoiceHistory history) {
+    private InvoiceHistoryResponse convertToResponse(InvoiceHistory history, String invoiceData) {
         InvoiceHistoryResponse response = new InvoiceHistoryResponse();
         response.setId(history.getId());
         response.setInvoiceId(history.getInvoiceId());
         response.setVersion(history.getVersion());
         response.setFiscalFolio(history.getFiscalFolio());
         response.setInvoiceNumber(history.getInvoiceNumber());
-        response.setInvoiceData(history.getInvoiceData());
+        response.setInvoiceData(invoiceData);
         response.setCreatedBy(history.getCreatedBy());
         response.setCreatedAt(history.getCreatedAt());
         response.setIsReverted(history.getIsReverted());
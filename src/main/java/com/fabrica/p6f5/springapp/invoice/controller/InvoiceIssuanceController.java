@@ -0,0 +1,104 @@
+package com.fabrica.p6f5.springapp.invoice.controller;
+
+import com.fabrica.p6f5.springapp.dto.ApiResponse;
+import com.fabrica.p6f5.springapp.entity.User;
+import com.fabrica.p6f5.springapp.invoice.dto.CreateIssuanceJobRequest;
+import com.fabrica.p6f5.springapp.invoice.dto.IssuanceJobResponse;
+import com.fabrica.p6f5.springapp.invoice.service.InvoiceIssuanceService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Invoice Issuance Controller following Single Responsibility Principle.
+ * Handles bulk issuance job HTTP requests.
+ */
+@RestController
+@RequestMapping("/api/v1/invoices/issuance-jobs")
+@Tag(name = "Invoice Issuance API", description = "API for issuing draft invoices in bulk")
+public class InvoiceIssuanceController {
+    
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceIssuanceController.class);
+    
+    @Autowired
+    private InvoiceIssuanceService issuanceService;
+    
+    /**
+     * Start a bulk issuance job
+     */
+    @PostMapping
+    @Operation(summary = "Start a bulk issuance job", description = "Issues every draft ready for issuance that matches " +
+            "the optional client and invoice date filter, in the background. Poll the returned job for progress.")
+    public ResponseEntity<ApiResponse<IssuanceJobResponse>> startJob(
+            @Valid @RequestBody CreateIssuanceJobRequest request,
+            @AuthenticationPrincipal User user) {
+        logger.info("Starting issuance job by user: {}", user.getUsername());
+        IssuanceJobResponse response = issuanceService.startJob(request, user.getId());
+        ApiResponse<IssuanceJobResponse> apiResponse = new ApiResponse<>(
+            true,
+            "Issuance job started",
+            response
+        );
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(apiResponse);
+    }
+    
+    /**
+     * Get an issuance job and its progress
+     */
+    @GetMapping("/{jobId}")
+    @Operation(summary = "Get issuance job", description = "Retrieves the status and progress of a bulk issuance job")
+    public ResponseEntity<ApiResponse<IssuanceJobResponse>> getJob(
+            @Parameter(description = "Job ID") @PathVariable Long jobId) {
+        IssuanceJobResponse response = issuanceService.getJob(jobId);
+        ApiResponse<IssuanceJobResponse> apiResponse = new ApiResponse<>(
+            true,
+            "Issuance job retrieved successfully",
+            response
+        );
+        return ResponseEntity.ok(apiResponse);
+    }
+    
+    /**
+     * Cancel a running issuance job
+     */
+    @PostMapping("/{jobId}/cancel")
+    @Operation(summary = "Cancel issuance job", description = "Stops a running job after its current chunk")
+    public ResponseEntity<ApiResponse<IssuanceJobResponse>> cancelJob(
+            @Parameter(description = "Job ID") @PathVariable Long jobId,
+            @AuthenticationPrincipal User user) {
+        logger.info("Cancelling issuance job {} by user: {}", jobId, user.getUsername());
+        IssuanceJobResponse response = issuanceService.cancelJob(jobId);
+        ApiResponse<IssuanceJobResponse> apiResponse = new ApiResponse<>(
+            true,
+            "Issuance job cancelled",
+            response
+        );
+        return ResponseEntity.ok(apiResponse);
+    }
+    
+    /**
+     * Resume a failed or cancelled issuance job
+     */
+    @PostMapping("/{jobId}/resume")
+    @Operation(summary = "Resume issuance job", description = "Continues a failed or cancelled job from its last processed invoice")
+    public ResponseEntity<ApiResponse<IssuanceJobResponse>> resumeJob(
+            @Parameter(description = "Job ID") @PathVariable Long jobId,
+            @AuthenticationPrincipal User user) {
+        logger.info("Resuming issuance job {} by user: {}", jobId, user.getUsername());
+        IssuanceJobResponse response = issuanceService.resumeJob(jobId);
+        ApiResponse<IssuanceJobResponse> apiResponse = new ApiResponse<>(
+            true,
+            "Issuance job resumed",
+            response
+        );
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(apiResponse);
+    }
+}
@@ -0,0 +1,37 @@
+package com.fabrica.p6f5.springapp.invoice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO for the outcome of one invoice of a batch create.
+ * The index is the position of the invoice in the request.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchInvoiceResult {
+    
+    private int index;
+    private boolean success;
+    private Long invoiceId;
+    private String invoiceNumber;
+    private List<String> errors;
+    
+    /**
+     * Result of an invoice that was created
+     */
+    public static BatchInvoiceResult created(int index, Long invoiceId, String invoiceNumber) {
+        return new BatchInvoiceResult(index, true, invoiceId, invoiceNumber, List.of());
+    }
+    
+    /**
+     * Result of an invoice that was rejected
+     */
+    public static BatchInvoiceResult failed(int index, List<String> errors) {
+        return new BatchInvoiceResult(index, false, null, null, errors);
+    }
+}
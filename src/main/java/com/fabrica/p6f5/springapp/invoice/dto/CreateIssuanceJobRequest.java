@@ -0,0 +1,27 @@
+package com.fabrica.p6f5.springapp.invoice.dto;
+
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * DTO for starting a bulk issuance job. Every filter field is optional;
+ * an empty request issues all drafts that are ready for issuance.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CreateIssuanceJobRequest {
+
+    private String clientName;
+
+    private LocalDate invoiceDateFrom;
+
+    private LocalDate invoiceDateTo;
+
+    @Positive(message = "Chunk size must be positive")
+    private Integer chunkSize;
+}
@@ -0,0 +1,47 @@
+package com.fabrica.p6f5.springapp.invoice.dto;
+
+import com.fabrica.p6f5.springapp.invoice.model.Invoice;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Lightweight read model for invoice list screens.
+ * Built directly by JPQL constructor expressions, so no entity is hydrated or tracked.
+ */
+@Data
+@NoArgsConstructor
+public class InvoiceSummaryResponse {
+
+    private Long id;
+    private String invoiceNumber;
+    private String fiscalFolio;
+    private String clientName;
+    private LocalDate invoiceDate;
+    private LocalDate dueDate;
+    private BigDecimal totalAmount;
+    private String currency;
+    private String status;
+    private LocalDateTime createdAt;
+
+    /**
+     * Constructor used by the projection queries in InvoiceRepository
+     */
+    public InvoiceSummaryResponse(Long id, String invoiceNumber, String fiscalFolio, String clientName,
+                                  LocalDate invoiceDate, LocalDate dueDate, BigDecimal totalAmount,
+                                  String currency, Invoice.InvoiceStatus status, LocalDateTime createdAt) {
+        this.id = id;
+        this.invoiceNumber = invoiceNumber;
+        this.fiscalFolio = fiscalFolio;
+        this.clientName = clientName;
+        this.invoiceDate = invoiceDate;
+        this.dueDate = dueDate;
+        this.totalAmount = totalAmount;
+        this.currency = currency;
+        this.status = status.toString();
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,53 @@
+package com.fabrica.p6f5.springapp.invoice.dto;
+
+import com.fabrica.p6f5.springapp.invoice.model.InvoiceIssuanceJob;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * DTO for bulk issuance jobs and their progress.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IssuanceJobResponse {
+    
+    private Long jobId;
+    private String status;
+    private String clientName;
+    private LocalDate invoiceDateFrom;
+    private LocalDate invoiceDateTo;
+    private Integer chunkSize;
+    private Long lastInvoiceId;
+    private Long issuedCount;
+    private Long skippedCount;
+    private String errorMessage;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime finishedAt;
+    
+    /**
+     * Convert InvoiceIssuanceJob entity to IssuanceJobResponse DTO
+     */
+    public static IssuanceJobResponse fromEntity(InvoiceIssuanceJob job) {
+        IssuanceJobResponse response = new IssuanceJobResponse();
+        response.setJobId(job.getId());
+        response.setStatus(job.getStatus().toString());
+        response.setClientName(job.getClientName());
+        response.setInvoiceDateFrom(job.getInvoiceDateFrom());
+        response.setInvoiceDateTo(job.getInvoiceDateTo());
+        response.setChunkSize(job.getChunkSize());
+        response.setLastInvoiceId(job.getLastInvoiceId());
+        response.setIssuedCount(job.getIssuedCount());
+        response.setSkippedCount(job.getSkippedCount());
+        response.setErrorMessage(job.getErrorMessage());
+        response.setCreatedAt(job.getCreatedAt());
+        response.setUpdatedAt(job.getUpdatedAt());
+        response.setFinishedAt(job.getFinishedAt());
+        return response;
+    }
+}
@@ -62,6 +62,12 @@ public class UpdateInvoiceRequest {
     @AllArgsConstructor
     public static class InvoiceItemRequest {
 
+        /**
+         * ID of an existing line to update; null for a new line.
+         * Existing lines omitted from the request are removed.
+         */
+        private Long id;
+
         private Long shipmentId;
 
         @NotBlank(message = "Description is required")
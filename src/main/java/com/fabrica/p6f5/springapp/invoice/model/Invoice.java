@@ -26,7 +26,8 @@ import java.util.List;
 public class Invoice {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "invoice_id_seq")
+    @SequenceGenerator(name = "invoice_id_seq", sequenceName = "invoices_invoice_id_seq", allocationSize = 50)
     @Column(name = "invoice_id")
     private Long id;
 
@@ -129,6 +130,22 @@ public class Invoice {
         CANCELLED
     }
 
+    /**
+     * Add a line item keeping both sides of the association in sync
+     */
+    public void addItem(InvoiceItem item) {
+        items.add(item);
+        item.setInvoice(this);
+    }
+
+    /**
+     * Link a shipment keeping both sides of the association in sync
+     */
+    public void addShipment(InvoiceShipment invoiceShipment) {
+        shipments.add(invoiceShipment);
+        invoiceShipment.setInvoice(this);
+    }
+
     /**
      * Check if invoice can be edited
      */
@@ -0,0 +1,88 @@
+package com.fabrica.p6f5.springapp.invoice.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * InvoiceIssuanceJob entity following Single Responsibility Principle.
+ * Tracks a bulk draft issuance: its filter, its keyset cursor and its progress.
+ */
+@Entity
+@Table(name = "invoice_issuance_jobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoiceIssuanceJob {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "invoice_issuance_job_id_seq")
+    @SequenceGenerator(name = "invoice_issuance_job_id_seq", sequenceName = "invoice_issuance_jobs_job_id_seq", allocationSize = 50)
+    @Column(name = "job_id")
+    private Long id;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "job_status", nullable = false, length = 50)
+    private JobStatus status;
+    
+    @Column(name = "client_name")
+    private String clientName;
+    
+    @Column(name = "invoice_date_from")
+    private LocalDate invoiceDateFrom;
+    
+    @Column(name = "invoice_date_to")
+    private LocalDate invoiceDateTo;
+    
+    @Column(name = "chunk_size", nullable = false)
+    private Integer chunkSize;
+    
+    @Column(name = "last_invoice_id", nullable = false)
+    private Long lastInvoiceId = 0L;
+    
+    @Column(name = "issued_count", nullable = false)
+    private Long issuedCount = 0L;
+    
+    @Column(name = "skipped_count", nullable = false)
+    private Long skippedCount = 0L;
+    
+    @Column(name = "error_message", columnDefinition = "TEXT")
+    private String errorMessage;
+    
+    @Column(name = "requested_by")
+    private Long requestedBy;
+    
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+    
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+    
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+    }
+    
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+    
+    /**
+     * Issuance job status enum
+     */
+    public enum JobStatus {
+        RUNNING,
+        COMPLETED,
+        FAILED,
+        CANCELLED
+    }
+}
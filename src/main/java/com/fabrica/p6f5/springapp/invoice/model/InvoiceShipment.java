@@ -1,6 +1,10 @@
 package com.fabrica.p6f5.springapp.invoice.model;
 
 import com.fabrica.p6f5.springapp.shipment.model.Shipment;
+import com.fasterxml.jackson.annotation.JsonIdentityInfo;
+import com.fasterxml.jackson.annotation.JsonIdentityReference;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
 import lombok.Data;
@@ -21,18 +25,22 @@ import java.time.LocalDateTime;
 public class InvoiceShipment {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "invoice_shipment_id_seq")
+    @SequenceGenerator(name = "invoice_shipment_id_seq", sequenceName = "invoice_shipments_invoice_shipment_id_seq", allocationSize = 50)
     @Column(name = "invoice_shipment_id")
     private Long id;
     
     @NotNull(message = "Invoice is required")
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "invoice_id", nullable = false)
+    @JsonIgnore
     private Invoice invoice;
     
     @NotNull(message = "Shipment is required")
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "shipment_id", nullable = false)
+    @JsonIdentityInfo(generator = ObjectIdGenerators.PropertyGenerator.class, property = "id")
+    @JsonIdentityReference(alwaysAsId = true)
     private Shipment shipment;
     
     @Column(name = "created_at", nullable = false, updatable = false)
@@ -0,0 +1,39 @@
+package com.fabrica.p6f5.springapp.invoice.repository;
+
+import com.fabrica.p6f5.springapp.invoice.model.InvoiceIssuanceJob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Invoice Issuance Job Repository interface.
+ * Defines data access operations for bulk issuance jobs.
+ */
+@Repository
+public interface InvoiceIssuanceJobRepository extends JpaRepository<InvoiceIssuanceJob, Long> {
+    
+    /**
+     * Find all jobs with a given status.
+     * 
+     * @param status the job status
+     * @return list of jobs ordered by id
+     */
+    List<InvoiceIssuanceJob> findByStatusOrderByIdAsc(InvoiceIssuanceJob.JobStatus status);
+    
+    /**
+     * Find a job and lock its row until the end of the transaction.
+     * Chunks of the same job are serialized on this lock, also across application instances.
+     * 
+     * @param id the job ID
+     * @return Optional containing the locked job
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT j FROM InvoiceIssuanceJob j WHERE j.id = :id")
+    Optional<InvoiceIssuanceJob> findForUpdateById(@Param("id") Long id);
+}
@@ -0,0 +1,60 @@
+package com.fabrica.p6f5.springapp.invoice.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Invoice Number Series Repository.
+ * Reserves ranges of numbers from the invoice_number_series counter rows.
+ */
+@Repository
+public class InvoiceNumberSeriesRepository {
+    
+    private static final String RESERVE_SQL =
+            "INSERT INTO invoice_number_series (series, series_year, next_value) VALUES (?, ?, ? + 1) " +
+            "ON CONFLICT (series, series_year) DO UPDATE " +
+            "SET next_value = invoice_number_series.next_value + EXCLUDED.next_value - 1, updated_at = CURRENT_TIMESTAMP " +
+            "RETURNING next_value";
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    public InvoiceNumberSeriesRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+    
+    /**
+     * Reserve a range of numbers in its own transaction so the counter row lock
+     * is released immediately, whatever the caller does afterwards.
+     * 
+     * @param series the series key
+     * @param year the series year
+     * @param count how many numbers to reserve
+     * @return the first number of the reserved range
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public long reserveRange(String series, int year, int count) {
+        return reserve(series, year, count);
+    }
+    
+    /**
+     * Reserve a range of numbers inside the caller's transaction.
+     * The counter row stays locked until the caller commits, and a rollback gives the
+     * numbers back, which keeps the series gap-free at the cost of serializing callers.
+     * 
+     * @param series the series key
+     * @param year the series year
+     * @param count how many numbers to reserve
+     * @return the first number of the reserved range
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public long reserveRangeInCurrentTransaction(String series, int year, int count) {
+        return reserve(series, year, count);
+    }
+    
+    private long reserve(String series, int year, int count) {
+        Long nextValue = jdbcTemplate.queryForObject(RESERVE_SQL, Long.class, series, year, count);
+        return nextValue - count;
+    }
+}
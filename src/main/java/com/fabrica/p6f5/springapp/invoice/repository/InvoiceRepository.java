@@ -1,11 +1,17 @@
 package com.fabrica.p6f5.springapp.invoice.repository;
 
+import com.fabrica.p6f5.springapp.invoice.dto.InvoiceSummaryResponse;
 import com.fabrica.p6f5.springapp.invoice.model.Invoice;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,6 +22,10 @@ import java.util.Optional;
 @Repository
 public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
     
+    String SUMMARY_PROJECTION = "SELECT new com.fabrica.p6f5.springapp.invoice.dto.InvoiceSummaryResponse(" +
+            "i.id, i.invoiceNumber, i.fiscalFolio, i.clientName, i.invoiceDate, i.dueDate, " +
+            "i.totalAmount, i.currency, i.status, i.createdAt) FROM Invoice i ";
+    
     /**
      * Find an invoice by fiscal folio.
      * 
@@ -90,6 +100,133 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
            "i.subtotal > 0 AND SIZE(i.items) > 0 AND i.clientName IS NOT NULL")
     List<Invoice> findDraftsReadyForIssuance();
     
+    /**
+     * Find the ids of the next drafts that can be issued, in id order after a keyset position.
+     * Same predicate as {@link #findDraftsReadyForIssuance()}, narrowed by an optional filter.
+     *
+     * @param afterId the last id already processed (0 to start)
+     * @param clientName only drafts of this client, or null for any
+     * @param from only drafts dated on or after this day, or null
+     * @param to only drafts dated on or before this day, or null
+     * @param pageable page size holder, the page number must be 0
+     * @return ids of the next drafts ready for issuance
+     */
+    @Query("SELECT i.id FROM Invoice i WHERE i.status = 'DRAFT' AND " +
+           "i.subtotal > 0 AND SIZE(i.items) > 0 AND i.clientName IS NOT NULL AND i.id > :afterId " +
+           "AND (:clientName IS NULL OR i.clientName = :clientName) " +
+           "AND (:from IS NULL OR i.invoiceDate >= :from) AND (:to IS NULL OR i.invoiceDate <= :to) " +
+           "ORDER BY i.id")
+    List<Long> findDraftIdsReadyForIssuanceAfter(@Param("afterId") Long afterId, @Param("clientName") String clientName,
+                                                 @Param("from") LocalDate from, @Param("to") LocalDate to,
+                                                 Pageable pageable);
+    
+    /**
+     * Find the next issued invoices in id order after a keyset position, for PDF exports.
+     * Rows inserted while an export runs never shift the positions already read.
+     *
+     * @param afterId the last id already exported (0 to start)
+     * @param clientName only invoices of this client, or null for any
+     * @param from only invoices dated on or after this day, or null
+     * @param to only invoices dated on or before this day, or null
+     * @param pageable page size holder, the page number must be 0
+     * @return the next issued invoices
+     */
+    @Query("SELECT i FROM Invoice i WHERE i.status = 'ISSUED' AND i.id > :afterId " +
+           "AND (:clientName IS NULL OR i.clientName = :clientName) " +
+           "AND (:from IS NULL OR i.invoiceDate >= :from) AND (:to IS NULL OR i.invoiceDate <= :to) " +
+           "ORDER BY i.id")
+    List<Invoice> findIssuedForExportAfter(@Param("afterId") Long afterId, @Param("clientName") String clientName,
+                                           @Param("from") LocalDate from, @Param("to") LocalDate to,
+                                           Pageable pageable);
+    
+    /**
+     * Find the first page of invoices ordered by creation date (newest first).
+     * 
+     * @param pageable page size holder, the page number must be 0
+     * @return list of invoices for the first page
+     */
+    List<Invoice> findAllByOrderByCreatedAtDescIdDesc(Pageable pageable);
+    
+    /**
+     * Find the invoices that come after a keyset position ordered by (created_at, invoice_id) descending.
+     * Uses a row-value comparison so the index on (created_at, invoice_id) serves any page depth.
+     * 
+     * @param createdAt creation date of the last invoice of the previous page
+     * @param id id of the last invoice of the previous page
+     * @param pageable page size holder, the page number must be 0
+     * @return list of invoices for the next page
+     */
+    @Query("SELECT i FROM Invoice i WHERE (i.createdAt, i.id) < (:createdAt, :id) " +
+           "ORDER BY i.createdAt DESC, i.id DESC")
+    List<Invoice> findPageAfter(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+    
+    /**
+     * Find the first page of invoice summaries ordered by creation date (newest first).
+     * 
+     * @param pageable page size holder, the page number must be 0
+     * @return list of invoice summaries
+     */
+    @Query(SUMMARY_PROJECTION + "ORDER BY i.createdAt DESC, i.id DESC")
+    List<InvoiceSummaryResponse> findSummaries(Pageable pageable);
+    
+    /**
+     * Find invoice summaries after a keyset position.
+     * 
+     * @param createdAt creation date of the last invoice of the previous page
+     * @param id id of the last invoice of the previous page
+     * @param pageable page size holder, the page number must be 0
+     * @return list of invoice summaries
+     */
+    @Query(SUMMARY_PROJECTION + "WHERE (i.createdAt, i.id) < (:createdAt, :id) " +
+           "ORDER BY i.createdAt DESC, i.id DESC")
+    List<InvoiceSummaryResponse> findSummariesAfter(@Param("createdAt") LocalDateTime createdAt,
+                                                    @Param("id") Long id, Pageable pageable);
+    
+    /**
+     * Find the first page of invoice summaries with a given status.
+     * 
+     * @param status the invoice status
+     * @param pageable page size holder, the page number must be 0
+     * @return list of invoice summaries
+     */
+    @Query(SUMMARY_PROJECTION + "WHERE i.status = :status ORDER BY i.createdAt DESC, i.id DESC")
+    List<InvoiceSummaryResponse> findSummariesByStatus(@Param("status") Invoice.InvoiceStatus status, Pageable pageable);
+    
+    /**
+     * Find invoice summaries with a given status after a keyset position.
+     * 
+     * @param status the invoice status
+     * @param createdAt creation date of the last invoice of the previous page
+     * @param id id of the last invoice of the previous page
+     * @param pageable page size holder, the page number must be 0
+     * @return list of invoice summaries
+     */
+    @Query(SUMMARY_PROJECTION + "WHERE i.status = :status AND (i.createdAt, i.id) < (:createdAt, :id) " +
+           "ORDER BY i.createdAt DESC, i.id DESC")
+    List<InvoiceSummaryResponse> findSummariesByStatusAfter(@Param("status") Invoice.InvoiceStatus status,
+                                                            @Param("createdAt") LocalDateTime createdAt,
+                                                            @Param("id") Long id, Pageable pageable);
+    
+    /**
+     * Initialize the items collection of the given invoices in a single round trip.
+     * Shipment ids are read from the foreign key so the shipments themselves stay unloaded.
+     * 
+     * @param ids the invoice IDs
+     * @return the invoices with their items fetched
+     */
+    @Query("SELECT DISTINCT i FROM Invoice i LEFT JOIN FETCH i.items WHERE i.id IN :ids")
+    List<Invoice> fetchItemsByIdIn(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * Initialize the shipment links of the given invoices in a single round trip.
+     * Fetched separately from items to avoid a cartesian product between both collections.
+     * 
+     * @param ids the invoice IDs
+     * @return the invoices with their shipment links fetched
+     */
+    @Query("SELECT DISTINCT i FROM Invoice i LEFT JOIN FETCH i.shipments WHERE i.id IN :ids")
+    List<Invoice> fetchShipmentsByIdIn(@Param("ids") Collection<Long> ids);
+    
     /**
      * Count invoices by status.
      * 
@@ -97,5 +234,16 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
      * @return count of invoices with the specified status
      */
     long countByStatus(Invoice.InvoiceStatus status);
+    
+    /**
+     * Record the PDF location of an invoice without incrementing its version,
+     * so the PDF store key (which includes the version) stays stable.
+     * 
+     * @param id the invoice ID
+     * @param pdfUrl the PDF location
+     * @return number of updated rows
+     */
+    @Modifying
+    @Query("UPDATE Invoice i SET i.pdfUrl = :pdfUrl WHERE i.id = :id")
+    int updatePdfUrl(@Param("id") Long id, @Param("pdfUrl") String pdfUrl);
 }
-
@@ -2,8 +2,11 @@ package com.fabrica.p6f5.springapp.invoice.repository;
 
 import com.fabrica.p6f5.springapp.invoice.model.InvoiceShipment;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -39,6 +42,15 @@ public interface InvoiceShipmentRepository extends JpaRepository<InvoiceShipment
      */
     boolean existsByShipmentId(Long shipmentId);
     
+    /**
+     * Find which of the given shipments are already linked to an invoice.
+     * 
+     * @param shipmentIds the shipment IDs to check
+     * @return the subset of shipment IDs that are linked
+     */
+    @Query("SELECT DISTINCT is.shipment.id FROM InvoiceShipment is WHERE is.shipment.id IN :shipmentIds")
+    List<Long> findLinkedShipmentIds(@Param("shipmentIds") Collection<Long> shipmentIds);
+    
     /**
      * Delete all relationships for an invoice.
      * 
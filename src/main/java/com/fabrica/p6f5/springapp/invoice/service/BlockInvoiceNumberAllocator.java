@@ -0,0 +1,147 @@
+package com.fabrica.p6f5.springapp.invoice.service;
+
+import com.fabrica.p6f5.springapp.invoice.repository.InvoiceNumberSeriesRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Invoice number allocator backed by per-series counter rows.
+ * Each instance reserves a block of numbers with one database round trip and hands
+ * them out from memory with a single atomic increment. Numbers are monotonic within
+ * an instance and grouped by series prefix and year, e.g. {@code INV-A-2024-00000042}.
+ * Unused numbers of a block are lost on shutdown, so invoice numbers may have gaps.
+ * Fiscal folios can be made gap-free, in which case each folio is reserved inside the
+ * issuing transaction and concurrent issuances are serialized by the counter row lock.
+ */
+@Component
+public class BlockInvoiceNumberAllocator implements InvoiceNumberAllocator {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BlockInvoiceNumberAllocator.class);
+    
+    private static final String INVOICE_PREFIX = "INV";
+    private static final String FISCAL_PREFIX = "FISCAL";
+    
+    private final InvoiceNumberSeriesRepository seriesRepository;
+    private final String series;
+    private final int blockSize;
+    private final boolean fiscalGapFree;
+    private final Clock clock;
+    
+    private final Map<String, NumberBlock> blocks = new ConcurrentHashMap<>();
+    private final ReentrantLock refillLock = new ReentrantLock();
+    
+    @Autowired
+    public BlockInvoiceNumberAllocator(
+            InvoiceNumberSeriesRepository seriesRepository,
+            @Value("${invoice.numbering.series:A}") String series,
+            @Value("${invoice.numbering.block-size:100}") int blockSize,
+            @Value("${invoice.numbering.fiscal-gap-free:false}") boolean fiscalGapFree) {
+        this(seriesRepository, series, blockSize, fiscalGapFree, Clock.systemDefaultZone());
+    }
+    
+    BlockInvoiceNumberAllocator(InvoiceNumberSeriesRepository seriesRepository, String series,
+                                int blockSize, boolean fiscalGapFree, Clock clock) {
+        this.seriesRepository = seriesRepository;
+        this.series = series;
+        this.blockSize = blockSize;
+        this.fiscalGapFree = fiscalGapFree;
+        this.clock = clock;
+    }
+    
+    @Override
+    public String nextInvoiceNumber() {
+        int year = Year.now(clock).getValue();
+        return format(INVOICE_PREFIX, year, nextFromBlock(INVOICE_PREFIX, year));
+    }
+    
+    @Override
+    public String nextFiscalFolio() {
+        int year = Year.now(clock).getValue();
+        long value = fiscalGapFree
+            ? seriesRepository.reserveRangeInCurrentTransaction(seriesKey(FISCAL_PREFIX), year, 1)
+            : nextFromBlock(FISCAL_PREFIX, year);
+        return format(FISCAL_PREFIX, year, value);
+    }
+    
+    /**
+     * Reserve the whole range with one round trip instead of drawing from the shared block.
+     * In gap-free mode the range is reserved inside the caller's transaction like single folios.
+     */
+    @Override
+    public List<String> nextFiscalFolios(int count) {
+        if (count <= 0) {
+            return List.of();
+        }
+        int year = Year.now(clock).getValue();
+        long first = fiscalGapFree
+            ? seriesRepository.reserveRangeInCurrentTransaction(seriesKey(FISCAL_PREFIX), year, count)
+            : seriesRepository.reserveRange(seriesKey(FISCAL_PREFIX), year, count);
+        List<String> folios = new ArrayList<>(count);
+        for (long value = first; value < first + count; value++) {
+            folios.add(format(FISCAL_PREFIX, year, value));
+        }
+        return folios;
+    }
+    
+    /**
+     * Take the next number of the in-memory block, reserving a new block when it runs out.
+     * The fast path is lock-free; only the thread that exhausts a block pays for the round trip.
+     */
+    private long nextFromBlock(String prefix, int year) {
+        String key = seriesKey(prefix) + ":" + year;
+        while (true) {
+            NumberBlock block = blocks.get(key);
+            if (block != null) {
+                long value = block.next.getAndIncrement();
+                if (value < block.end) {
+                    return value;
+                }
+            }
+            refillLock.lock();
+            try {
+                // Another thread may have refilled while we were waiting for the lock
+                if (blocks.get(key) == block) {
+                    long first = seriesRepository.reserveRange(seriesKey(prefix), year, blockSize);
+                    blocks.put(key, new NumberBlock(first, first + blockSize));
+                    logger.debug("Reserved numbers {} to {} for series {}", first, first + blockSize - 1, key);
+                }
+            } finally {
+                refillLock.unlock();
+            }
+        }
+    }
+    
+    private String seriesKey(String prefix) {
+        return prefix + "-" + series;
+    }
+    
+    private String format(String prefix, int year, long value) {
+        return String.format("%s-%s-%d-%08d", prefix, series, year, value);
+    }
+    
+    /**
+     * Half-open range [next, end) of reserved numbers
+     */
+    private static final class NumberBlock {
+        
+        private final AtomicLong next;
+        private final long end;
+        
+        private NumberBlock(long first, long end) {
+            this.next = new AtomicLong(first);
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package com.fabrica.p6f5.springapp.invoice.service;
+
+import com.fabrica.p6f5.springapp.exception.BusinessException;
+import com.fabrica.p6f5.springapp.invoice.model.Invoice;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Invoice Export Service following Single Responsibility Principle.
+ * Streams the invoice ledger as NDJSON or CSV. Invoices are read through a forward-only
+ * JDBC cursor (a fixed fetch size inside a read-only transaction, which PostgreSQL needs to
+ * stream instead of materializing the result), with items and shipment ids aggregated per
+ * invoice by the database. Each row is written to the response as it arrives, so heap use
+ * does not depend on the number of invoices and the first row is flushed immediately.
+ */
+@Service
+public class InvoiceExportService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceExportService.class);
+    
+    private static final String SELECT_SQL =
+            "SELECT i.invoice_id, i.invoice_number, i.fiscal_folio, i.client_name, i.client_nit, i.client_email, " +
+            "i.invoice_date, i.due_date, i.payment_method, i.subtotal, i.tax_amount, i.total_amount, i.currency, " +
+            "i.invoice_status, i.created_by, i.created_at, i.updated_at, i.version, " +
+            "(SELECT json_agg(json_build_object('id', it.item_id, 'shipmentId', it.shipment_id, " +
+            "'description', it.description, 'quantity', it.quantity, 'unitPrice', it.unit_price, " +
+            "'totalPrice', it.total_price) ORDER BY it.item_id) " +
+            "FROM invoice_items it WHERE it.invoice_id = i.invoice_id) AS items, " +
+            "(SELECT string_agg(s.shipment_id::text, ';' ORDER BY s.shipment_id) " +
+            "FROM invoice_shipments s WHERE s.invoice_id = i.invoice_id) AS shipment_ids " +
+            "FROM invoices i";
+    
+    private static final String[] CSV_HEADER = {
+        "invoiceId", "invoiceNumber", "fiscalFolio", "clientName", "clientNit", "clientEmail",
+        "invoiceDate", "dueDate", "paymentMethod", "subtotal", "taxAmount", "totalAmount", "currency",
+        "status", "createdBy", "createdAt", "updatedAt", "version", "items", "shipmentIds"
+    };
+    
+    /**
+     * Supported export formats
+     */
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+        
+        private final String mediaType;
+        private final String extension;
+        
+        Format(String mediaType, String extension) {
+            this.mediaType = mediaType;
+            this.extension = extension;
+        }
+        
+        public String mediaType() {
+            return mediaType;
+        }
+        
+        public String extension() {
+            return extension;
+        }
+    }
+    
+    @Autowired
+    private DataSource dataSource;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Value("${invoice.export.fetch-size:500}")
+    private int fetchSize;
+    
+    // The response stream belongs to the container, finishing an export must not close it
+    private final JsonFactory jsonFactory = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    
+    private JdbcTemplate cursorJdbcTemplate;
+    
+    private TransactionTemplate readOnlyTransaction;
+    
+    @PostConstruct
+    void init() {
+        cursorJdbcTemplate = new JdbcTemplate(dataSource);
+        cursorJdbcTemplate.setFetchSize(fetchSize);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+    
+    /**
+     * Parse and check the export parameters before the response is committed
+     *
+     * @param format the requested format name
+     * @param from first invoice date, or null
+     * @param to last invoice date, or null
+     * @return the export format
+     */
+    public Format validate(String format, LocalDate from, LocalDate to) {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new BusinessException("from must not be after to");
+        }
+        try {
+            return Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException("Unsupported export format: " + format + ". Use ndjson or csv");
+        }
+    }
+    
+    /**
+     * Write the invoices matching the filter to the output, ordered by id
+     *
+     * @param format the output format
+     * @param status only invoices with this status, or null for all
+     * @param from only invoices dated on or after this day, or null
+     * @param to only invoices dated on or before this day, or null
+     * @param out the response stream
+     */
+    public void export(Format format, Invoice.InvoiceStatus status, LocalDate from, LocalDate to,
+                       OutputStream out) throws IOException {
+        StringBuilder sql = new StringBuilder(SELECT_SQL);
+        List<Object> args = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+        if (status != null) {
+            conditions.add("i.invoice_status = ?");
+            args.add(status.name());
+        }
+        if (from != null) {
+            conditions.add("i.invoice_date >= ?");
+            args.add(from);
+        }
+        if (to != null) {
+            conditions.add("i.invoice_date <= ?");
+            args.add(to);
+        }
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        sql.append(" ORDER BY i.invoice_id");
+        
+        long start = System.nanoTime();
+        RowWriter writer = format == Format.CSV ? new CsvRowWriter(out) : new NdjsonRowWriter(out);
+        try {
+            readOnlyTransaction.executeWithoutResult(tx ->
+                    cursorJdbcTemplate.query(sql.toString(), writer, args.toArray()));
+            writer.finish();
+        } catch (UncheckedIOException e) {
+            // Typically the client went away; the cursor is closed with the transaction
+            throw e.getCause();
+        }
+        logger.info("Exported {} invoices as {} in {} ms", writer.rows, format,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+    
+    /**
+     * Writes each row of the cursor as soon as it is read
+     */
+    private abstract static class RowWriter implements RowCallbackHandler {
+        
+        protected long rows;
+        
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            try {
+                write(rs);
+                rows++;
+                if (rows == 1) {
+                    // Send the first row right away instead of waiting for a full buffer
+                    flush();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        
+        protected abstract void write(ResultSet rs) throws SQLException, IOException;
+        
+        protected abstract void flush() throws IOException;
+        
+        protected abstract void finish() throws IOException;
+    }
+    
+    private final class NdjsonRowWriter extends RowWriter {
+        
+        private final JsonGenerator generator;
+        
+        private NdjsonRowWriter(OutputStream out) throws IOException {
+            generator = jsonFactory.createGenerator(out);
+            generator.setRootValueSeparator(null);
+        }
+        
+        @Override
+        protected void write(ResultSet rs) throws SQLException, IOException {
+            generator.writeStartObject();
+            generator.writeNumberField("invoiceId", rs.getLong("invoice_id"));
+            generator.writeStringField("invoiceNumber", rs.getString("invoice_number"));
+            generator.writeStringField("fiscalFolio", rs.getString("fiscal_folio"));
+            generator.writeStringField("clientName", rs.getString("client_name"));
+            generator.writeStringField("clientNit", rs.getString("client_nit"));
+            generator.writeStringField("clientEmail", rs.getString("client_email"));
+            generator.writeStringField("invoiceDate", text(rs.getObject("invoice_date", LocalDate.class)));
+            generator.writeStringField("dueDate", text(rs.getObject("due_date", LocalDate.class)));
+            generator.writeStringField("paymentMethod", rs.getString("payment_method"));
+            writeDecimal("subtotal", rs.getBigDecimal("subtotal"));
+            writeDecimal("taxAmount", rs.getBigDecimal("tax_amount"));
+            writeDecimal("totalAmount", rs.getBigDecimal("total_amount"));
+            generator.writeStringField("currency", rs.getString("currency"));
+            generator.writeStringField("status", rs.getString("invoice_status"));
+            generator.writeNumberField("createdBy", rs.getLong("created_by"));
+            generator.writeStringField("createdAt", text(rs.getTimestamp("created_at")));
+            generator.writeStringField("updatedAt", text(rs.getTimestamp("updated_at")));
+            generator.writeNumberField("version", rs.getInt("version"));
+            
+            // Already JSON, built by json_agg
+            String items = rs.getString("items");
+            generator.writeFieldName("items");
+            generator.writeRawValue(items != null ? items : "[]");
+            
+            generator.writeArrayFieldStart("shipmentIds");
+            String shipmentIds = rs.getString("shipment_ids");
+            if (shipmentIds != null) {
+                for (String id : shipmentIds.split(";")) {
+                    generator.writeNumber(Long.parseLong(id));
+                }
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+        
+        private void writeDecimal(String field, BigDecimal value) throws IOException {
+            if (value != null) {
+                generator.writeNumberField(field, value);
+            } else {
+                generator.writeNullField(field);
+            }
+        }
+        
+        @Override
+        protected void flush() throws IOException {
+            generator.flush();
+        }
+        
+        @Override
+        protected void finish() throws IOException {
+            generator.close();
+        }
+    }
+    
+    private static final class CsvRowWriter extends RowWriter {
+        
+        private final Writer writer;
+        
+        private CsvRowWriter(OutputStream out) throws IOException {
+            writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+            writeLine(CSV_HEADER);
+        }
+        
+        @Override
+        protected void write(ResultSet rs) throws SQLException, IOException {
+            String items = rs.getString("items");
+            writeLine(new String[] {
+                rs.getString("invoice_id"),
+                rs.getString("invoice_number"),
+                rs.getString("fiscal_folio"),
+                rs.getString("client_name"),
+                rs.getString("client_nit"),
+                rs.getString("client_email"),
+                text(rs.getObject("invoice_date", LocalDate.class)),
+                text(rs.getObject("due_date", LocalDate.class)),
+                rs.getString("payment_method"),
+                text(rs.getBigDecimal("subtotal")),
+                text(rs.getBigDecimal("tax_amount")),
+                text(rs.getBigDecimal("total_amount")),
+                rs.getString("currency"),
+                rs.getString("invoice_status"),
+                rs.getString("created_by"),
+                text(rs.getTimestamp("created_at")),
+                text(rs.getTimestamp("updated_at")),
+                rs.getString("version"),
+                items != null ? items : "[]",
+                rs.getString("shipment_ids")
+            });
+        }
+        
+        private void writeLine(String[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeField(values[i]);
+            }
+            writer.write("\r\n");
+        }
+        
+        /**
+         * RFC 4180 quoting: fields with a separator, quote or line break are quoted and quotes doubled
+         */
+        private void writeField(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+        
+        @Override
+        protected void flush() throws IOException {
+            writer.flush();
+        }
+        
+        @Override
+        protected void finish() throws IOException {
+            writer.flush();
+        }
+    }
+    
+    private static String text(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime().toString();
+        }
+        if (value instanceof BigDecimal decimal) {
+            return decimal.toPlainString();
+        }
+        return value.toString();
+    }
+}
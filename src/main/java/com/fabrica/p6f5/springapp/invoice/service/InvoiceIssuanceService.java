@@ -0,0 +1,348 @@
+package com.fabrica.p6f5.springapp.invoice.service;
+
+import com.fabrica.p6f5.springapp.audit.model.AuditLog;
+import com.fabrica.p6f5.springapp.audit.service.AuditService;
+import com.fabrica.p6f5.springapp.config.BackgroundExecutors;
+import com.fabrica.p6f5.springapp.exception.BusinessException;
+import com.fabrica.p6f5.springapp.exception.ResourceNotFoundException;
+import com.fabrica.p6f5.springapp.invoice.dto.CreateIssuanceJobRequest;
+import com.fabrica.p6f5.springapp.invoice.dto.IssuanceJobResponse;
+import com.fabrica.p6f5.springapp.invoice.model.Invoice;
+import com.fabrica.p6f5.springapp.invoice.model.InvoiceIssuanceJob;
+import com.fabrica.p6f5.springapp.invoice.repository.InvoiceIssuanceJobRepository;
+import com.fabrica.p6f5.springapp.invoice.repository.InvoiceRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Invoice Issuance Service following Single Responsibility Principle.
+ * Issues drafts in bulk as background jobs. A job walks the drafts matching its filter
+ * in id order, one chunk per transaction: the chunk's fiscal folios are reserved with a
+ * single round trip, the invoices are updated and their history versions and audit rows
+ * inserted as JDBC batches, and the job's cursor is advanced in the same transaction. A job interrupted by
+ * a crash or a shutdown is left RUNNING and continues from its cursor on the next start.
+ */
+@Service
+public class InvoiceIssuanceService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceIssuanceService.class);
+    
+    private static final int MAX_CHUNK_ATTEMPTS = 3;
+    
+    @Autowired
+    private InvoiceIssuanceJobRepository jobRepository;
+    
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+    
+    @Autowired
+    private InvoiceNumberAllocator invoiceNumberAllocator;
+    
+    @Autowired
+    private AuditService auditService;
+    
+    @Autowired
+    private BackgroundExecutors backgroundExecutors;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Value("${invoice.issuance.chunk-size:500}")
+    private int defaultChunkSize;
+    
+    @Value("${invoice.issuance.max-chunk-size:2000}")
+    private int maxChunkSize;
+    
+    @Value("${invoice.issuance.concurrency:2}")
+    private int concurrency;
+    
+    @Value("${invoice.issuance.queue-capacity:100}")
+    private int queueCapacity;
+    
+    private ThreadPoolExecutor issuanceExecutor;
+    
+    private TransactionTemplate transactionTemplate;
+    
+    private final Set<Long> activeJobs = ConcurrentHashMap.newKeySet();
+    
+    private volatile boolean stopping;
+    
+    @PostConstruct
+    void init() {
+        issuanceExecutor = backgroundExecutors.newBoundedExecutor("invoice-issuance", concurrency, queueCapacity);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+    
+    /**
+     * Stop after the chunk in progress; jobs stay RUNNING and are resumed on the next start
+     */
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        stopping = true;
+        issuanceExecutor.getQueue().clear();
+        issuanceExecutor.shutdown();
+        issuanceExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        logger.info("Invoice issuance pool stopped");
+    }
+    
+    /**
+     * Start a bulk issuance job.
+     * The job is handed to the issuance pool once it is committed.
+     *
+     * @param request the draft filter and chunk size
+     * @param requestedBy the requesting user ID
+     * @return the RUNNING job
+     */
+    @Transactional
+    public IssuanceJobResponse startJob(CreateIssuanceJobRequest request, Long requestedBy) {
+        if (request.getInvoiceDateFrom() != null && request.getInvoiceDateTo() != null
+                && request.getInvoiceDateFrom().isAfter(request.getInvoiceDateTo())) {
+            throw new BusinessException("invoiceDateFrom must not be after invoiceDateTo");
+        }
+        int chunkSize = request.getChunkSize() != null ? request.getChunkSize() : defaultChunkSize;
+        if (chunkSize > maxChunkSize) {
+            throw new BusinessException("Chunk size must not exceed " + maxChunkSize);
+        }
+        if (issuanceExecutor.getQueue().remainingCapacity() == 0) {
+            throw new BusinessException("Issuance queue is full, please retry later");
+        }
+        
+        InvoiceIssuanceJob job = new InvoiceIssuanceJob();
+        job.setStatus(InvoiceIssuanceJob.JobStatus.RUNNING);
+        job.setClientName(request.getClientName());
+        job.setInvoiceDateFrom(request.getInvoiceDateFrom());
+        job.setInvoiceDateTo(request.getInvoiceDateTo());
+        job.setChunkSize(chunkSize);
+        job.setRequestedBy(requestedBy);
+        job = jobRepository.save(job);
+        
+        logger.info("Issuance job {} created by user {}", job.getId(), requestedBy);
+        submitAfterCommit(job.getId());
+        return IssuanceJobResponse.fromEntity(job);
+    }
+    
+    /**
+     * Get a job and its progress
+     */
+    @Transactional(readOnly = true)
+    public IssuanceJobResponse getJob(Long jobId) {
+        return IssuanceJobResponse.fromEntity(findJob(jobId));
+    }
+    
+    /**
+     * Cancel a running job. Takes effect at the next chunk boundary; issued chunks stay issued.
+     */
+    @Transactional
+    public IssuanceJobResponse cancelJob(Long jobId) {
+        InvoiceIssuanceJob job = jobRepository.findForUpdateById(jobId)
+            .orElseThrow(() -> new ResourceNotFoundException("Issuance job not found with id: " + jobId));
+        if (job.getStatus() != InvoiceIssuanceJob.JobStatus.RUNNING) {
+            throw new BusinessException("Only RUNNING jobs can be cancelled. Current status: " + job.getStatus());
+        }
+        job.setStatus(InvoiceIssuanceJob.JobStatus.CANCELLED);
+        job.setFinishedAt(LocalDateTime.now());
+        return IssuanceJobResponse.fromEntity(jobRepository.save(job));
+    }
+    
+    /**
+     * Resume a failed or cancelled job from its cursor
+     */
+    @Transactional
+    public IssuanceJobResponse resumeJob(Long jobId) {
+        InvoiceIssuanceJob job = jobRepository.findForUpdateById(jobId)
+            .orElseThrow(() -> new ResourceNotFoundException("Issuance job not found with id: " + jobId));
+        if (job.getStatus() != InvoiceIssuanceJob.JobStatus.FAILED
+                && job.getStatus() != InvoiceIssuanceJob.JobStatus.CANCELLED) {
+            throw new BusinessException("Only FAILED or CANCELLED jobs can be resumed. Current status: " + job.getStatus());
+        }
+        job.setStatus(InvoiceIssuanceJob.JobStatus.RUNNING);
+        job.setErrorMessage(null);
+        job.setFinishedAt(null);
+        job = jobRepository.save(job);
+        
+        submitAfterCommit(jobId);
+        return IssuanceJobResponse.fromEntity(job);
+    }
+    
+    /**
+     * Resubmit jobs left RUNNING by a previous run.
+     * Several instances may pick up the same job; its chunks are serialized on the job row lock.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeRunningJobs() {
+        List<InvoiceIssuanceJob> running = jobRepository.findByStatusOrderByIdAsc(InvoiceIssuanceJob.JobStatus.RUNNING);
+        if (!running.isEmpty()) {
+            logger.info("Resuming {} issuance jobs", running.size());
+            running.forEach(job -> submit(job.getId()));
+        }
+    }
+    
+    private InvoiceIssuanceJob findJob(Long jobId) {
+        return jobRepository.findById(jobId)
+            .orElseThrow(() -> new ResourceNotFoundException("Issuance job not found with id: " + jobId));
+    }
+    
+    private void submitAfterCommit(Long jobId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(jobId);
+                }
+            });
+        } else {
+            submit(jobId);
+        }
+    }
+    
+    private void submit(Long jobId) {
+        if (!activeJobs.add(jobId)) {
+            return;
+        }
+        try {
+            issuanceExecutor.execute(() -> run(jobId));
+        } catch (RejectedExecutionException e) {
+            activeJobs.remove(jobId);
+            logger.warn("Issuance job {} rejected by the issuance pool", jobId);
+            markFailed(jobId, "Issuance queue is full");
+        }
+    }
+    
+    /**
+     * Worker: issue chunks until the job runs out of drafts, is cancelled or the application stops
+     */
+    private void run(Long jobId) {
+        try {
+            while (!stopping) {
+                if (issueChunkWithRetry(jobId)) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Issuance job {} failed", jobId, e);
+            markFailed(jobId, e.getMessage());
+        } finally {
+            activeJobs.remove(jobId);
+        }
+    }
+    
+    /**
+     * Retry a chunk that lost an optimistic lock race against a single-invoice edit or issuance
+     */
+    private boolean issueChunkWithRetry(Long jobId) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return Boolean.TRUE.equals(transactionTemplate.execute(status -> issueChunk(jobId)));
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= MAX_CHUNK_ATTEMPTS) {
+                    throw e;
+                }
+                logger.debug("Issuance job {} chunk conflicted, retrying (attempt {})", jobId, attempt);
+            }
+        }
+    }
+    
+    /**
+     * Issue the next chunk of a job. Runs in one transaction holding the job row lock;
+     * the invoices, their history versions and audit rows commit together.
+     *
+     * @return whether the job is finished
+     */
+    private boolean issueChunk(Long jobId) {
+        InvoiceIssuanceJob job = jobRepository.findForUpdateById(jobId).orElse(null);
+        if (job == null || job.getStatus() != InvoiceIssuanceJob.JobStatus.RUNNING) {
+            return true;
+        }
+        
+        List<Long> ids = invoiceRepository.findDraftIdsReadyForIssuanceAfter(job.getLastInvoiceId(),
+                job.getClientName(), job.getInvoiceDateFrom(), job.getInvoiceDateTo(), PageRequest.of(0, job.getChunkSize()));
+        if (ids.isEmpty()) {
+            job.setStatus(InvoiceIssuanceJob.JobStatus.COMPLETED);
+            job.setFinishedAt(LocalDateTime.now());
+            jobRepository.save(job);
+            logger.info("Issuance job {} completed: {} issued, {} skipped", jobId, job.getIssuedCount(), job.getSkippedCount());
+            return true;
+        }
+        
+        List<Invoice> invoices = new ArrayList<>(invoiceRepository.fetchItemsByIdIn(ids));
+        // Links too, so the draft snapshots do not load them one invoice at a time
+        invoiceRepository.fetchShipmentsByIdIn(ids);
+        invoices.sort(Comparator.comparing(Invoice::getId));
+        // Drafts edited or issued one by one since the id scan are skipped
+        List<Invoice> issuable = invoices.stream().filter(Invoice::canBeIssued).toList();
+        // Snapshot the drafts for the audit rows before they are changed
+        Map<Long, Invoice> drafts = issuable.stream()
+                .collect(Collectors.toMap(Invoice::getId, InvoiceService::copyInvoice));
+        
+        int missingFolios = (int) issuable.stream().filter(invoice -> invoice.getFiscalFolio() == null).count();
+        Iterator<String> folios = invoiceNumberAllocator.nextFiscalFolios(missingFolios).iterator();
+        for (Invoice invoice : issuable) {
+            if (invoice.getFiscalFolio() == null) {
+                invoice.setFiscalFolio(folios.next());
+            }
+            invoice.setStatus(Invoice.InvoiceStatus.ISSUED);
+        }
+        // Batched UPDATEs; the new versions are assigned on flush
+        invoiceRepository.flush();
+        
+        Long issuedBy = job.getRequestedBy();
+        auditService.saveInvoiceHistories(issuable.stream()
+                .map(invoice -> new AuditService.InvoiceSnapshot(invoice.getId(), invoice.getVersion(),
+                        invoice.getFiscalFolio(), invoice.getInvoiceNumber(), invoice))
+                .toList(), issuedBy);
+        auditService.saveEvents(issuable.stream()
+                .map(invoice -> new AuditService.AuditEvent("Invoice", invoice.getId(), AuditLog.AuditAction.ISSUE,
+                        issuedBy, drafts.get(invoice.getId()), invoice, "Issued invoice (issuance job " + jobId + ")"))
+                .toList());
+        
+        job.setLastInvoiceId(ids.get(ids.size() - 1));
+        job.setIssuedCount(job.getIssuedCount() + issuable.size());
+        job.setSkippedCount(job.getSkippedCount() + (ids.size() - issuable.size()));
+        jobRepository.save(job);
+        
+        logger.debug("Issuance job {} issued {} invoices up to id {}", jobId, issuable.size(), job.getLastInvoiceId());
+        return false;
+    }
+    
+    private void markFailed(Long jobId, String errorMessage) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> jobRepository.findForUpdateById(jobId).ifPresent(job -> {
+                if (job.getStatus() == InvoiceIssuanceJob.JobStatus.RUNNING) {
+                    job.setStatus(InvoiceIssuanceJob.JobStatus.FAILED);
+                    job.setErrorMessage(errorMessage);
+                    job.setFinishedAt(LocalDateTime.now());
+                    jobRepository.save(job);
+                }
+            }));
+        } catch (Exception e) {
+            logger.error("Could not mark issuance job {} as failed: {}", jobId, e.getMessage());
+        }
+    }
+}
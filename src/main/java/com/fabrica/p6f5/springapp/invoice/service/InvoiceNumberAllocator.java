@@ -0,0 +1,40 @@
+package com.fabrica.p6f5.springapp.invoice.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Allocates invoice numbers and fiscal folios.
+ * Implementations must be thread-safe and never hand out the same number twice,
+ * including across application instances sharing the database.
+ */
+public interface InvoiceNumberAllocator {
+    
+    /**
+     * Allocate the next invoice number.
+     * 
+     * @return a unique invoice number
+     */
+    String nextInvoiceNumber();
+    
+    /**
+     * Allocate the next fiscal folio.
+     * 
+     * @return a unique fiscal folio
+     */
+    String nextFiscalFolio();
+    
+    /**
+     * Allocate several fiscal folios at once, in increasing order.
+     *
+     * @param count how many folios to allocate
+     * @return the allocated folios
+     */
+    default List<String> nextFiscalFolios(int count) {
+        List<String> folios = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            folios.add(nextFiscalFolio());
+        }
+        return folios;
+    }
+}
@@ -2,31 +2,44 @@ package com.fabrica.p6f5.springapp.invoice.service;
 
 import com.fabrica.p6f5.springapp.audit.model.AuditLog;
 import com.fabrica.p6f5.springapp.audit.service.AuditService;
+import com.fabrica.p6f5.springapp.dto.CursorPage;
+import com.fabrica.p6f5.springapp.dto.KeysetCursor;
 import com.fabrica.p6f5.springapp.exception.BusinessException;
 import com.fabrica.p6f5.springapp.exception.ResourceNotFoundException;
+import com.fabrica.p6f5.springapp.invoice.dto.BatchInvoiceResult;
 import com.fabrica.p6f5.springapp.invoice.dto.CreateInvoiceRequest;
 import com.fabrica.p6f5.springapp.invoice.dto.InvoiceResponse;
+import com.fabrica.p6f5.springapp.invoice.dto.InvoiceSummaryResponse;
 import com.fabrica.p6f5.springapp.invoice.dto.UpdateInvoiceRequest;
 import com.fabrica.p6f5.springapp.invoice.model.Invoice;
 import com.fabrica.p6f5.springapp.invoice.model.InvoiceItem;
 import com.fabrica.p6f5.springapp.invoice.model.InvoiceShipment;
-import com.fabrica.p6f5.springapp.invoice.repository.InvoiceItemRepository;
 import com.fabrica.p6f5.springapp.invoice.repository.InvoiceRepository;
 import com.fabrica.p6f5.springapp.invoice.repository.InvoiceShipmentRepository;
 import com.fabrica.p6f5.springapp.shipment.model.Shipment;
 import com.fabrica.p6f5.springapp.shipment.repository.ShipmentRepository;
-import jakarta.transaction.Transactional;
+import jakarta.validation.Validator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Invoice Service following Single Responsibility Principle.
@@ -40,9 +53,6 @@ public class InvoiceService {
     @Autowired
     private InvoiceRepository invoiceRepository;
     
-    @Autowired
-    private InvoiceItemRepository invoiceItemRepository;
-    
     @Autowired
     private InvoiceShipmentRepository invoiceShipmentRepository;
     
@@ -52,6 +62,21 @@ public class InvoiceService {
     @Autowired
     private AuditService auditService;
     
+    @Autowired
+    private InvoiceNumberAllocator invoiceNumberAllocator;
+    
+    @Value("${invoice.pagination.default-size:20}")
+    private int defaultPageSize;
+    
+    @Value("${invoice.pagination.max-size:100}")
+    private int maxPageSize;
+    
+    @Value("${invoice.batch.max-size:1000}")
+    private int maxBatchSize;
+    
+    @Autowired
+    private Validator validator;
+    
     /**
      * Create a draft invoice
      */
@@ -59,80 +84,152 @@ public class InvoiceService {
     public InvoiceResponse createDraftInvoice(CreateInvoiceRequest request, Long createdBy) {
         logger.info("Creating draft invoice for client: {}", request.getClientName());
         
-        // Generate unique invoice number
-        String invoiceNumber = generateInvoiceNumber();
-        
-        // Create invoice
-        Invoice invoice = new Invoice();
-        invoice.setInvoiceNumber(invoiceNumber);
-        invoice.setClientName(request.getClientName());
-        invoice.setClientNit(request.getClientNit());
-        invoice.setClientAddress(request.getClientAddress());
-        invoice.setClientEmail(request.getClientEmail());
-        invoice.setPaymentMethod(request.getPaymentMethod());
-        invoice.setObservations(request.getObservations());
-        invoice.setInvoiceDate(request.getInvoiceDate());
-        invoice.setDueDate(request.getDueDate());
-        invoice.setStatus(Invoice.InvoiceStatus.DRAFT);
-        invoice.setCurrency(request.getCurrency());
-        invoice.setCreatedBy(createdBy);
+        // Resolve every referenced shipment with one query and one link check
+        Map<Long, Shipment> shipmentsById = resolveShipments(collectShipmentIds(
+            request.getItems().stream().map(CreateInvoiceRequest.InvoiceItemRequest::getShipmentId),
+            request.getShipmentIds()));
+        List<Long> repeated = repeatedIds(request.getShipmentIds());
+        if (!repeated.isEmpty()) {
+            throw new BusinessException("Shipments listed more than once: " + repeated);
+        }
+        ensureNotLinked(request.getShipmentIds());
         
-        // Calculate amounts
-        BigDecimal subtotal = calculateSubtotal(request.getItems());
-        invoice.setSubtotal(subtotal);
-        invoice.setTaxAmount(request.getTaxAmount());
-        invoice.setTotalAmount(subtotal.add(request.getTaxAmount()));
+        Invoice invoice = buildDraftInvoice(request, createdBy, shipmentsById);
         
-        // Save invoice
+        // Save invoice, items and links are cascaded from the aggregate
         Invoice savedInvoice = invoiceRepository.save(invoice);
+        markInvoiced(savedInvoice.getShipments());
         
-        // Add items
-        List<InvoiceItem> items = new ArrayList<>();
-        for (CreateInvoiceRequest.InvoiceItemRequest itemRequest : request.getItems()) {
-            InvoiceItem item = new InvoiceItem();
-            item.setInvoice(savedInvoice);
-            item.setDescription(itemRequest.getDescription());
-            item.setQuantity(itemRequest.getQuantity());
-            item.setUnitPrice(itemRequest.getUnitPrice());
-            item.calculateTotal();
-            items.add(item);
-            
-            // Link to shipment if provided
-            if (itemRequest.getShipmentId() != null) {
-                Shipment shipment = shipmentRepository.findById(itemRequest.getShipmentId())
-                    .orElseThrow(() -> new ResourceNotFoundException("Shipment not found with id: " + itemRequest.getShipmentId()));
-                item.setShipment(shipment);
+        // Log audit event
+        auditService.logEvent("Invoice", savedInvoice.getId(), AuditLog.AuditAction.CREATE,
+            createdBy, null, savedInvoice, "Created draft invoice");
+        
+        logger.info("Draft invoice created with id: {}", savedInvoice.getId());
+        
+        return InvoiceResponse.fromEntity(savedInvoice);
+    }
+    
+    /**
+     * Create several draft invoices in one transaction.
+     * Every request is validated up front and all referenced shipments are resolved with one
+     * query; invoices, items and shipment links of the valid requests are then inserted as
+     * JDBC batches. Invalid requests are reported in their result and do not block the others.
+     * 
+     * @param requests the invoices to create
+     * @param createdBy the creating user ID
+     * @return one result per request, in request order
+     */
+    @Transactional
+    public List<BatchInvoiceResult> createDraftInvoices(List<CreateInvoiceRequest> requests, Long createdBy) {
+        if (requests.isEmpty()) {
+            throw new BusinessException("At least one invoice is required");
+        }
+        if (requests.size() > maxBatchSize) {
+            throw new BusinessException("A batch may contain at most " + maxBatchSize + " invoices");
+        }
+        logger.info("Creating {} draft invoices in batch", requests.size());
+        
+        List<List<String>> errors = new ArrayList<>(requests.size());
+        for (CreateInvoiceRequest request : requests) {
+            errors.add(request == null ? List.of("Invoice request is required") : violations(request));
+        }
+        
+        // Resolve the shipments of every valid request with one query and one link check
+        Set<Long> referencedIds = new HashSet<>();
+        Set<Long> linkIds = new HashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (errors.get(i).isEmpty()) {
+                CreateInvoiceRequest request = requests.get(i);
+                referencedIds.addAll(collectShipmentIds(
+                    request.getItems().stream().map(CreateInvoiceRequest.InvoiceItemRequest::getShipmentId),
+                    request.getShipmentIds()));
+                if (request.getShipmentIds() != null) {
+                    linkIds.addAll(request.getShipmentIds());
+                }
             }
         }
-        invoiceItemRepository.saveAll(items);
+        Map<Long, Shipment> shipmentsById = referencedIds.isEmpty() ? Map.of()
+            : shipmentRepository.findAllById(referencedIds).stream()
+                .collect(Collectors.toMap(Shipment::getId, Function.identity()));
+        Set<Long> alreadyLinked = linkIds.isEmpty() ? Set.of()
+            : new HashSet<>(invoiceShipmentRepository.findLinkedShipmentIds(linkIds));
         
-        // Link shipments
-        if (request.getShipmentIds() != null && !request.getShipmentIds().isEmpty()) {
-            List<InvoiceShipment> invoiceShipments = new ArrayList<>();
-            for (Long shipmentId : request.getShipmentIds()) {
-                Shipment shipment = shipmentRepository.findById(shipmentId)
-                    .orElseThrow(() -> new ResourceNotFoundException("Shipment not found with id: " + shipmentId));
-                
-                // Check if shipment is already linked to an invoice
-                if (invoiceShipmentRepository.existsByShipmentId(shipmentId)) {
-                    throw new BusinessException("Shipment " + shipmentId + " is already linked to an invoice");
+        Set<Long> claimedInBatch = new HashSet<>();
+        List<Invoice> invoices = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            if (!errors.get(i).isEmpty()) {
+                invoices.add(null);
+                continue;
+            }
+            CreateInvoiceRequest request = requests.get(i);
+            List<String> itemErrors = new ArrayList<>();
+            List<Long> shipmentIds = request.getShipmentIds() != null ? request.getShipmentIds() : List.of();
+            
+            List<Long> missing = collectShipmentIds(
+                    request.getItems().stream().map(CreateInvoiceRequest.InvoiceItemRequest::getShipmentId), shipmentIds)
+                .stream()
+                .filter(id -> !shipmentsById.containsKey(id))
+                .collect(Collectors.toList());
+            if (!missing.isEmpty()) {
+                itemErrors.add("Shipments not found with ids: " + missing);
+            }
+            // Two links to one shipment would violate uk_invoice_shipment at flush and fail the whole batch
+            List<Long> repeated = repeatedIds(shipmentIds);
+            if (!repeated.isEmpty()) {
+                itemErrors.add("Shipments listed more than once: " + repeated);
+            }
+            List<Long> linked = shipmentIds.stream().filter(alreadyLinked::contains).collect(Collectors.toList());
+            if (!linked.isEmpty()) {
+                itemErrors.add("Shipments already linked to an invoice: " + linked);
+            }
+            List<Long> claimed = shipmentIds.stream().filter(claimedInBatch::contains).collect(Collectors.toList());
+            if (!claimed.isEmpty()) {
+                itemErrors.add("Shipments linked by an earlier invoice of the batch: " + claimed);
+            }
+            
+            Invoice invoice = null;
+            if (itemErrors.isEmpty()) {
+                invoice = buildDraftInvoice(request, createdBy, shipmentsById);
+                // Entity constraints are checked here so that flushing cannot reject the whole batch
+                itemErrors.addAll(violations(invoice));
+                for (InvoiceItem item : invoice.getItems()) {
+                    itemErrors.addAll(violations(item));
                 }
-                
-                InvoiceShipment invoiceShipment = new InvoiceShipment();
-                invoiceShipment.setInvoice(savedInvoice);
-                invoiceShipment.setShipment(shipment);
-                invoiceShipments.add(invoiceShipment);
             }
-            invoiceShipmentRepository.saveAll(invoiceShipments);
+            if (itemErrors.isEmpty()) {
+                claimedInBatch.addAll(shipmentIds);
+                invoices.add(invoice);
+            } else {
+                errors.set(i, itemErrors);
+                invoices.add(null);
+            }
         }
         
-        // Log audit event
-        auditService.logEvent("Invoice", savedInvoice.getId(), AuditLog.AuditAction.CREATE,
-            createdBy, null, savedInvoice, "Created draft invoice");
+        // Items and links are cascaded; pooled ids let Hibernate batch every insert
+        List<Invoice> valid = invoices.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        // The preset version makes save merge into managed copies; ids are read from those
+        valid = invoiceRepository.saveAll(valid);
+        invoiceRepository.flush();
+        markInvoiced(valid.stream()
+            .flatMap(invoice -> invoice.getShipments().stream())
+            .collect(Collectors.toList()));
+        Iterator<Invoice> saved = valid.iterator();
+        invoices.replaceAll(invoice -> invoice != null ? saved.next() : null);
         
-        logger.info("Draft invoice created with id: {}", savedInvoice.getId());
+        auditService.logEvents(valid.stream()
+            .map(invoice -> new AuditService.AuditEvent("Invoice", invoice.getId(), AuditLog.AuditAction.CREATE,
+                createdBy, null, invoice, "Created draft invoice (batch)"))
+            .collect(Collectors.toList()));
         
-        return InvoiceResponse.fromEntity(invoiceRepository.findById(savedInvoice.getId()).get());
+        List<BatchInvoiceResult> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            Invoice invoice = invoices.get(i);
+            results.add(invoice != null
+                ? BatchInvoiceResult.created(i, invoice.getId(), invoice.getInvoiceNumber())
+                : BatchInvoiceResult.failed(i, errors.get(i)));
+        }
+        logger.info("Batch created {} of {} draft invoices", valid.size(), requests.size());
+        return results;
     }
     
     /**
@@ -154,19 +251,19 @@ public class InvoiceService {
         if (request.getVersion() != null && !request.getVersion().equals(invoice.getVersion())) {
             throw new BusinessException("Invoice has been modified by another user. Please refresh and try again.");
         }
-
+        
+        // Snapshot the current state for history and audit before it is changed
+        Invoice oldInvoice = copyInvoice(invoice);
+        
         // Save history before updating (don't fail if history can't be saved)
         try {
             auditService.saveInvoiceHistory(invoice.getId(), invoice.getVersion(),
-                    invoice.getFiscalFolio(), invoice.getInvoiceNumber(), invoice, invoice.getCreatedBy());
+                    invoice.getFiscalFolio(), invoice.getInvoiceNumber(), oldInvoice, invoice.getCreatedBy());
         } catch (Exception e) {
             logger.warn("Could not save invoice history: {}", e.getMessage());
             // Continue without throwing exception - history is optional
         }
         
-        // Save old data for audit
-        Invoice oldInvoice = copyInvoice(invoice);
-        
         // Update invoice fields
         invoice.setClientName(request.getClientName());
         invoice.setClientNit(request.getClientNit());
@@ -183,64 +280,23 @@ public class InvoiceService {
         BigDecimal subtotal = calculateSubtotal(request.getItems());
         invoice.setSubtotal(subtotal);
         invoice.setTotalAmount(subtotal.add(request.getTaxAmount()));
-
-        // Delete old items manually
-        List<InvoiceItem> oldItems = invoiceItemRepository.findByInvoiceId(invoiceId);
-        invoiceItemRepository.deleteAll(oldItems);
-
-        List<InvoiceShipment> oldShipments = invoiceShipmentRepository.findByInvoiceId(invoiceId);
-        invoiceShipmentRepository.deleteAll(oldShipments);
-
-        // Force flush to ensure deletion happens before insert
-        invoiceItemRepository.flush();
-        invoiceShipmentRepository.flush();
         
-        // Add new items
-        List<InvoiceItem> items = new ArrayList<>();
-        for (UpdateInvoiceRequest.InvoiceItemRequest itemRequest : request.getItems()) {
-            InvoiceItem item = new InvoiceItem();
-            item.setInvoice(invoice);
-            item.setDescription(itemRequest.getDescription());
-            item.setQuantity(itemRequest.getQuantity());
-            item.setUnitPrice(itemRequest.getUnitPrice());
-            item.calculateTotal();
-            items.add(item);
-            
-            // Link to shipment if provided
-            if (itemRequest.getShipmentId() != null) {
-                Shipment shipment = shipmentRepository.findById(itemRequest.getShipmentId())
-                    .orElseThrow(() -> new ResourceNotFoundException("Shipment not found with id: " + itemRequest.getShipmentId()));
-                item.setShipment(shipment);
-            }
-        }
-        invoiceItemRepository.saveAll(items);
+        // Resolve every referenced shipment with one query
+        Map<Long, Shipment> shipmentsById = resolveShipments(collectShipmentIds(
+            request.getItems().stream().map(UpdateInvoiceRequest.InvoiceItemRequest::getShipmentId),
+            request.getShipmentIds()));
         
-        // Link shipments
-        if (request.getShipmentIds() != null && !request.getShipmentIds().isEmpty()) {
-            List<InvoiceShipment> invoiceShipments = new ArrayList<>();
-            for (Long shipmentId : request.getShipmentIds()) {
-                Shipment shipment = shipmentRepository.findById(shipmentId)
-                    .orElseThrow(() -> new ResourceNotFoundException("Shipment not found with id: " + shipmentId));
-                
-                // Check if shipment is already linked to another invoice
-//                if (invoiceShipmentRepository.existsByShipmentId(shipmentId)) {
-//                    Optional<InvoiceShipment> existing = invoiceShipmentRepository.findByInvoiceIdAndShipmentId(invoiceId, shipmentId);
-//                    if (!existing.isPresent()) {
-//                        throw new BusinessException("Shipment " + shipmentId + " is already linked to another invoice");
-//                    }
-//                }
-                
-                InvoiceShipment invoiceShipment = new InvoiceShipment();
-                invoiceShipment.setInvoice(invoice);
-                invoiceShipment.setShipment(shipment);
-                invoiceShipments.add(invoiceShipment);
-            }
-            invoiceShipmentRepository.saveAll(invoiceShipments);
+        // Merge line items and shipment links so only the edited rows are written
+        mergeItems(invoice, request.getItems(), shipmentsById);
+        Set<Long> unlinkedIds = mergeShipmentLinks(invoice, request.getShipmentIds(), shipmentsById);
+        
+        // Save updated invoice, flushing so the response carries the new version
+        Invoice updatedInvoice = invoiceRepository.saveAndFlush(invoice);
+        markInvoiced(updatedInvoice.getShipments());
+        if (!unlinkedIds.isEmpty()) {
+            shipmentRepository.clearInvoicedIfUnlinked(unlinkedIds);
         }
         
-        // Save updated invoice
-        Invoice updatedInvoice = invoiceRepository.save(invoice);
-
         // Log audit event (don't fail if audit can't be logged)
         try {
             auditService.logEvent("Invoice", updatedInvoice.getId(), AuditLog.AuditAction.UPDATE,
@@ -251,7 +307,7 @@ public class InvoiceService {
         
         logger.info("Draft invoice updated with id: {}", updatedInvoice.getId());
         
-        return InvoiceResponse.fromEntity(invoiceRepository.findById(updatedInvoice.getId()).get());
+        return InvoiceResponse.fromEntity(updatedInvoice);
     }
     
     /**
@@ -269,22 +325,25 @@ public class InvoiceService {
             throw new BusinessException("Invoice cannot be issued. Missing required data or invalid status.");
         }
         
+        // Save old data for audit
+        Invoice oldInvoice = copyInvoice(invoice);
+        
         // Generate fiscal folio if not exists
         if (invoice.getFiscalFolio() == null) {
-            String fiscalFolio = generateFiscalFolio();
+            String fiscalFolio = invoiceNumberAllocator.nextFiscalFolio();
             invoice.setFiscalFolio(fiscalFolio);
         }
         
         // Change status to ISSUED
         invoice.setStatus(Invoice.InvoiceStatus.ISSUED);
         
-        // Save invoice
-        Invoice issuedInvoice = invoiceRepository.save(invoice);
+        // Save invoice, flushing so the response carries the new version
+        Invoice issuedInvoice = invoiceRepository.saveAndFlush(invoice);
         
         // Log audit event
         auditService.logEvent("Invoice", issuedInvoice.getId(), AuditLog.AuditAction.ISSUE,
-            issuedBy, invoice, issuedInvoice, "Issued invoice");
-
+            issuedBy, oldInvoice, issuedInvoice, "Issued invoice");
+        
         // Save history (don't fail if history can't be saved)
         try {
             auditService.saveInvoiceHistory(issuedInvoice.getId(), issuedInvoice.getVersion(),
@@ -296,34 +355,302 @@ public class InvoiceService {
         
         logger.info("Invoice issued with fiscal folio: {}", issuedInvoice.getFiscalFolio());
         
-        return InvoiceResponse.fromEntity(invoiceRepository.findById(issuedInvoice.getId()).get());
+        return InvoiceResponse.fromEntity(issuedInvoice);
     }
     
     /**
      * Get invoice by ID
      */
+    @Transactional(readOnly = true)
     public InvoiceResponse getInvoiceById(Long invoiceId) {
         Invoice invoice = invoiceRepository.findById(invoiceId)
             .orElseThrow(() -> new ResourceNotFoundException("Invoice not found with id: " + invoiceId));
+        fetchAssociations(List.of(invoice));
         return InvoiceResponse.fromEntity(invoice);
     }
     
     /**
      * Get all invoices by status
      */
+    @Transactional(readOnly = true)
     public List<InvoiceResponse> getInvoicesByStatus(Invoice.InvoiceStatus status) {
-        return invoiceRepository.findByStatusOrderByCreatedAtDesc(status).stream()
+        List<Invoice> invoices = invoiceRepository.findByStatusOrderByCreatedAtDesc(status);
+        fetchAssociations(invoices);
+        return invoices.stream()
             .map(InvoiceResponse::fromEntity)
             .collect(Collectors.toList());
     }
     
     /**
-     * Get all invoices
+     * Get a page of invoices using keyset pagination on (created_at, invoice_id)
      */
-    public List<InvoiceResponse> getAllInvoices() {
-        return invoiceRepository.findAll().stream()
-            .map(InvoiceResponse::fromEntity)
+    @Transactional(readOnly = true)
+    public CursorPage<InvoiceResponse> getAllInvoices(String cursor, Integer size) {
+        int pageSize = resolvePageSize(size);
+        // Fetch one extra row to know whether another page exists without a count query
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+        List<Invoice> invoices;
+        if (cursor == null || cursor.isBlank()) {
+            invoices = invoiceRepository.findAllByOrderByCreatedAtDescIdDesc(limit);
+        } else {
+            KeysetCursor position = KeysetCursor.decode(cursor);
+            invoices = invoiceRepository.findPageAfter(position.createdAt(), position.id(), limit);
+        }
+        
+        CursorPage<Invoice> page = CursorPage.fromRows(invoices, pageSize,
+            invoice -> new KeysetCursor(invoice.getCreatedAt(), invoice.getId()));
+        fetchAssociations(page.getItems());
+        return page.map(InvoiceResponse::fromEntity);
+    }
+    
+    /**
+     * Get a page of invoice summaries, optionally filtered by status.
+     * Rows are projected straight into DTOs, so no entity enters the persistence context.
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<InvoiceSummaryResponse> getInvoiceSummaries(Invoice.InvoiceStatus status, String cursor, Integer size) {
+        int pageSize = resolvePageSize(size);
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+        KeysetCursor position = (cursor == null || cursor.isBlank()) ? null : KeysetCursor.decode(cursor);
+        
+        List<InvoiceSummaryResponse> rows;
+        if (status == null) {
+            rows = position == null
+                ? invoiceRepository.findSummaries(limit)
+                : invoiceRepository.findSummariesAfter(position.createdAt(), position.id(), limit);
+        } else {
+            rows = position == null
+                ? invoiceRepository.findSummariesByStatus(status, limit)
+                : invoiceRepository.findSummariesByStatusAfter(status, position.createdAt(), position.id(), limit);
+        }
+        return CursorPage.fromRows(rows, pageSize, row -> new KeysetCursor(row.getCreatedAt(), row.getId()));
+    }
+    
+    /**
+     * Apply the requested line items to the invoice: lines with a known ID are updated in place,
+     * lines without ID are inserted and existing lines missing from the request are removed.
+     * Unchanged lines produce no SQL thanks to dirty checking.
+     */
+    private void mergeItems(Invoice invoice, List<UpdateInvoiceRequest.InvoiceItemRequest> itemRequests,
+                            Map<Long, Shipment> shipmentsById) {
+        Map<Long, InvoiceItem> existingItems = invoice.getItems().stream()
+            .collect(Collectors.toMap(InvoiceItem::getId, Function.identity()));
+        Set<Long> keptItemIds = new HashSet<>();
+        List<InvoiceItem> newItems = new ArrayList<>();
+        
+        for (UpdateInvoiceRequest.InvoiceItemRequest itemRequest : itemRequests) {
+            InvoiceItem item;
+            if (itemRequest.getId() == null) {
+                item = new InvoiceItem();
+                newItems.add(item);
+            } else {
+                item = existingItems.get(itemRequest.getId());
+                if (item == null) {
+                    throw new BusinessException("Item " + itemRequest.getId() + " does not belong to invoice " + invoice.getId());
+                }
+                if (!keptItemIds.add(itemRequest.getId())) {
+                    throw new BusinessException("Item " + itemRequest.getId() + " appears more than once in the request");
+                }
+            }
+            item.setDescription(itemRequest.getDescription());
+            item.setQuantity(itemRequest.getQuantity());
+            item.setUnitPrice(itemRequest.getUnitPrice());
+            item.setShipment(itemRequest.getShipmentId() != null ? shipmentsById.get(itemRequest.getShipmentId()) : null);
+            item.calculateTotal();
+        }
+        
+        // Orphan removal deletes the dropped lines, cascade inserts the new ones
+        invoice.getItems().removeIf(item -> !keptItemIds.contains(item.getId()));
+        newItems.forEach(invoice::addItem);
+    }
+    
+    /**
+     * Apply the requested shipment links: only links that were added or dropped are written.
+     * 
+     * @return the IDs of the shipments whose link was dropped
+     */
+    private Set<Long> mergeShipmentLinks(Invoice invoice, List<Long> shipmentIds, Map<Long, Shipment> shipmentsById) {
+        Set<Long> requestedIds = shipmentIds != null ? new LinkedHashSet<>(shipmentIds) : Set.of();
+        Set<Long> unlinkedIds = new HashSet<>();
+        invoice.getShipments().removeIf(link -> {
+            Long shipmentId = link.getShipment().getId();
+            return !requestedIds.contains(shipmentId) && unlinkedIds.add(shipmentId);
+        });
+        
+        Set<Long> linkedIds = invoice.getShipments().stream()
+            .map(link -> link.getShipment().getId())
+            .collect(Collectors.toSet());
+        for (Long shipmentId : requestedIds) {
+            if (!linkedIds.contains(shipmentId)) {
+                InvoiceShipment invoiceShipment = new InvoiceShipment();
+                invoiceShipment.setShipment(shipmentsById.get(shipmentId));
+                invoice.addShipment(invoiceShipment);
+            }
+        }
+        return unlinkedIds;
+    }
+    
+    /**
+     * Flag the linked shipments as invoiced with a bulk UPDATE of that column. Setting the flag on the
+     * managed entities would write back their whole row and undo a concurrent status change.
+     */
+    private void markInvoiced(Collection<InvoiceShipment> links) {
+        Set<Long> shipmentIds = links.stream()
+            .map(link -> link.getShipment().getId())
+            .collect(Collectors.toSet());
+        if (!shipmentIds.isEmpty()) {
+            shipmentRepository.markInvoiced(shipmentIds);
+        }
+    }
+    
+    /**
+     * Collect the distinct shipment IDs referenced by line items and by the explicit shipment list
+     */
+    private Set<Long> collectShipmentIds(Stream<Long> itemShipmentIds, List<Long> shipmentIds) {
+        Set<Long> ids = itemShipmentIds
+            .filter(Objects::nonNull)
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (shipmentIds != null) {
+            ids.addAll(shipmentIds);
+        }
+        return ids;
+    }
+    
+    /**
+     * Build a draft invoice with its items and shipment links from a create request.
+     * All referenced shipments must be present in shipmentsById.
+     */
+    private Invoice buildDraftInvoice(CreateInvoiceRequest request, Long createdBy, Map<Long, Shipment> shipmentsById) {
+        // Generate unique invoice number
+        String invoiceNumber = invoiceNumberAllocator.nextInvoiceNumber();
+        
+        // Create invoice
+        Invoice invoice = new Invoice();
+        invoice.setInvoiceNumber(invoiceNumber);
+        invoice.setClientName(request.getClientName());
+        invoice.setClientNit(request.getClientNit());
+        invoice.setClientAddress(request.getClientAddress());
+        invoice.setClientEmail(request.getClientEmail());
+        invoice.setPaymentMethod(request.getPaymentMethod());
+        invoice.setObservations(request.getObservations());
+        invoice.setInvoiceDate(request.getInvoiceDate());
+        invoice.setDueDate(request.getDueDate());
+        invoice.setStatus(Invoice.InvoiceStatus.DRAFT);
+        invoice.setCurrency(request.getCurrency());
+        invoice.setCreatedBy(createdBy);
+        
+        // Calculate amounts
+        BigDecimal subtotal = calculateSubtotal(request.getItems());
+        invoice.setSubtotal(subtotal);
+        invoice.setTaxAmount(request.getTaxAmount());
+        invoice.setTotalAmount(subtotal.add(request.getTaxAmount()));
+        
+        // Add items
+        for (CreateInvoiceRequest.InvoiceItemRequest itemRequest : request.getItems()) {
+            InvoiceItem item = new InvoiceItem();
+            item.setDescription(itemRequest.getDescription());
+            item.setQuantity(itemRequest.getQuantity());
+            item.setUnitPrice(itemRequest.getUnitPrice());
+            item.calculateTotal();
+            if (itemRequest.getShipmentId() != null) {
+                item.setShipment(shipmentsById.get(itemRequest.getShipmentId()));
+            }
+            invoice.addItem(item);
+        }
+        
+        // Link shipments
+        if (request.getShipmentIds() != null) {
+            for (Long shipmentId : request.getShipmentIds()) {
+                InvoiceShipment invoiceShipment = new InvoiceShipment();
+                invoiceShipment.setShipment(shipmentsById.get(shipmentId));
+                invoice.addShipment(invoiceShipment);
+            }
+        }
+        return invoice;
+    }
+    
+    /**
+     * Bean validation messages of an object, as "property: message"
+     */
+    private List<String> violations(Object target) {
+        return validator.validate(target).stream()
+            .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+            .sorted()
+            .collect(Collectors.toList());
+    }
+    
+    /**
+     * Load all referenced shipments with a single query.
+     * Every missing ID is reported in the same error.
+     */
+    private Map<Long, Shipment> resolveShipments(Set<Long> shipmentIds) {
+        if (shipmentIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, Shipment> shipmentsById = shipmentRepository.findAllById(shipmentIds).stream()
+            .collect(Collectors.toMap(Shipment::getId, Function.identity()));
+        List<Long> missing = shipmentIds.stream()
+            .filter(id -> !shipmentsById.containsKey(id))
             .collect(Collectors.toList());
+        if (!missing.isEmpty()) {
+            throw new ResourceNotFoundException("Shipments not found with ids: " + missing);
+        }
+        return shipmentsById;
+    }
+    
+    /**
+     * The ids that appear more than once in a request's shipment list
+     */
+    private List<Long> repeatedIds(List<Long> shipmentIds) {
+        if (shipmentIds == null) {
+            return List.of();
+        }
+        Set<Long> seen = new HashSet<>();
+        return shipmentIds.stream()
+            .filter(id -> !seen.add(id))
+            .distinct()
+            .collect(Collectors.toList());
+    }
+    
+    /**
+     * Check with a single query that none of the shipments is already linked to an invoice
+     */
+    private void ensureNotLinked(List<Long> shipmentIds) {
+        if (shipmentIds == null || shipmentIds.isEmpty()) {
+            return;
+        }
+        List<Long> linked = invoiceShipmentRepository.findLinkedShipmentIds(shipmentIds);
+        if (!linked.isEmpty()) {
+            throw new BusinessException("Shipments already linked to an invoice: " + linked);
+        }
+    }
+    
+    /**
+     * Load items and shipment links for a list of managed invoices with two queries in total,
+     * so building responses does not trigger one lazy load per invoice.
+     */
+    private void fetchAssociations(List<Invoice> invoices) {
+        if (invoices.isEmpty()) {
+            return;
+        }
+        List<Long> ids = invoices.stream()
+            .map(Invoice::getId)
+            .collect(Collectors.toList());
+        invoiceRepository.fetchItemsByIdIn(ids);
+        invoiceRepository.fetchShipmentsByIdIn(ids);
+    }
+    
+    /**
+     * Clamp the requested page size to the configured bounds
+     */
+    private int resolvePageSize(Integer size) {
+        if (size == null) {
+            return defaultPageSize;
+        }
+        if (size < 1) {
+            throw new BusinessException("Page size must be at least 1");
+        }
+        return Math.min(size, maxPageSize);
     }
     
     /**
@@ -352,39 +679,40 @@ public class InvoiceService {
     }
     
     /**
-     * Generate unique invoice number
-     */
-    private String generateInvoiceNumber() {
-        return "INV-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase() + "-" + System.currentTimeMillis();
-    }
-    
-    /**
-     * Generate unique fiscal folio
-     */
-    private String generateFiscalFolio() {
-        return "FISCAL-" + UUID.randomUUID().toString().substring(0, 16).toUpperCase() + "-" + System.currentTimeMillis();
-    }
-    
-    /**
-     * Copy invoice for history
+     * Copy the full invoice state for history and audit.
+     * Items and shipment links are copied too; they keep their shipment references,
+     * which are serialized as ids so lazy shipments are never loaded.
      */
-    private Invoice copyInvoice(Invoice invoice) {
+    static Invoice copyInvoice(Invoice invoice) {
         Invoice copy = new Invoice();
         copy.setId(invoice.getId());
         copy.setFiscalFolio(invoice.getFiscalFolio());
         copy.setInvoiceNumber(invoice.getInvoiceNumber());
         copy.setClientName(invoice.getClientName());
+        copy.setClientNit(invoice.getClientNit());
+        copy.setClientAddress(invoice.getClientAddress());
+        copy.setClientEmail(invoice.getClientEmail());
         copy.setInvoiceDate(invoice.getInvoiceDate());
         copy.setDueDate(invoice.getDueDate());
+        copy.setPaymentMethod(invoice.getPaymentMethod());
         copy.setSubtotal(invoice.getSubtotal());
         copy.setTaxAmount(invoice.getTaxAmount());
         copy.setTotalAmount(invoice.getTotalAmount());
         copy.setCurrency(invoice.getCurrency());
         copy.setStatus(invoice.getStatus());
+        copy.setPdfUrl(invoice.getPdfUrl());
+        copy.setObservations(invoice.getObservations());
         copy.setCreatedBy(invoice.getCreatedBy());
         copy.setCreatedAt(invoice.getCreatedAt());
         copy.setUpdatedAt(invoice.getUpdatedAt());
         copy.setVersion(invoice.getVersion());
+        copy.setItems(invoice.getItems().stream()
+            .map(item -> new InvoiceItem(item.getId(), null, item.getShipment(), item.getDescription(),
+                item.getQuantity(), item.getUnitPrice(), item.getTotalPrice(), item.getCreatedAt()))
+            .collect(Collectors.toList()));
+        copy.setShipments(invoice.getShipments().stream()
+            .map(link -> new InvoiceShipment(link.getId(), null, link.getShipment(), link.getCreatedAt()))
+            .collect(Collectors.toList()));
         return copy;
     }
 }
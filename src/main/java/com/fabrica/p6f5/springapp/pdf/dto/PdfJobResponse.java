@@ -0,0 +1,40 @@
+package com.fabrica.p6f5.springapp.pdf.dto;
+
+import com.fabrica.p6f5.springapp.pdf.model.PdfLog;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO for PDF generation jobs. The job id is the id of its pdf_logs row.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PdfJobResponse {
+    
+    private Long jobId;
+    private Long invoiceId;
+    private String status;
+    private String pdfUrl;
+    private String errorMessage;
+    private String templateType;
+    private LocalDateTime generatedAt;
+    
+    /**
+     * Convert PdfLog entity to PdfJobResponse DTO
+     */
+    public static PdfJobResponse fromEntity(PdfLog pdfLog) {
+        PdfJobResponse response = new PdfJobResponse();
+        response.setJobId(pdfLog.getId());
+        response.setInvoiceId(pdfLog.getInvoiceId());
+        response.setStatus(pdfLog.getStatus().toString());
+        response.setPdfUrl(pdfLog.getPdfUrl());
+        response.setErrorMessage(pdfLog.getErrorMessage());
+        response.setTemplateType(pdfLog.getTemplateType());
+        response.setGeneratedAt(pdfLog.getGeneratedAt());
+        return response;
+    }
+}
@@ -19,7 +19,8 @@ import java.time.LocalDateTime;
 public class PdfLog {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "pdf_log_id_seq")
+    @SequenceGenerator(name = "pdf_log_id_seq", sequenceName = "pdf_logs_pdf_log_id_seq", allocationSize = 50)
     @Column(name = "pdf_log_id")
     private Long id;
     
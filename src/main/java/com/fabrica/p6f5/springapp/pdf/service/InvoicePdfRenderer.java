@@ -0,0 +1,133 @@
+package com.fabrica.p6f5.springapp.pdf.service;
+
+import com.fabrica.p6f5.springapp.invoice.dto.InvoiceResponse;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.Cell;
+import com.itextpdf.layout.element.Image;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Table;
+import com.itextpdf.layout.properties.TextAlignment;
+import com.itextpdf.layout.properties.UnitValue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Invoice PDF Renderer following Single Responsibility Principle.
+ * Lays out an invoice with iText 7 (kernel and layout modules) using a template from
+ * {@link PdfTemplateRegistry}. Works from the InvoiceResponse DTO so rendering never
+ * touches the persistence context.
+ */
+@Component
+public class InvoicePdfRenderer {
+    
+    /** Default template name recorded in pdf_logs.template_type */
+    public static final String TEMPLATE = PdfTemplateRegistry.STANDARD;
+    
+    private static final String[] ITEM_HEADERS = {"Description", "Qty", "Unit price", "Total"};
+    
+    @Autowired
+    private PdfTemplateRegistry templateRegistry;
+    
+    /**
+     * Render an invoice as PDF with the default template.
+     * 
+     * @param invoice the invoice with its items loaded
+     * @param out destination stream, closed when rendering completes
+     * @throws IOException if the document cannot be written
+     */
+    public void render(InvoiceResponse invoice, OutputStream out) throws IOException {
+        render(invoice, templateRegistry.get(TEMPLATE), out);
+    }
+    
+    /**
+     * Render an invoice as PDF.
+     * 
+     * @param invoice the invoice with its items loaded
+     * @param template the template, resolved once by the caller from {@link PdfTemplateRegistry}
+     * @param out destination stream, closed when rendering completes
+     * @throws IOException if the document cannot be written
+     */
+    public void render(InvoiceResponse invoice, PdfTemplate template, OutputStream out) throws IOException {
+        PdfDocument pdf = new PdfDocument(new PdfWriter(out));
+        // Fonts are bound to one document; the parsed font programs behind them are shared
+        PdfFont regular = template.regularFont();
+        PdfFont bold = template.boldFont();
+        
+        try (Document document = new Document(pdf, PageSize.A4)) {
+            document.setMargins(template.margin(), template.margin(), template.margin(), template.margin());
+            document.setFont(regular).setFontSize(template.fontSize());
+            
+            if (template.logo() != null) {
+                document.add(new Image(template.logo()).scaleToFit(120, 60));
+            }
+            document.add(new Paragraph("INVOICE").setFont(bold).setFontSize(template.titleFontSize()));
+            document.add(new Paragraph("Invoice number: " + invoice.getInvoiceNumber()));
+            if (invoice.getFiscalFolio() != null) {
+                document.add(new Paragraph("Fiscal folio: " + invoice.getFiscalFolio()));
+            }
+            document.add(new Paragraph("Invoice date: " + invoice.getInvoiceDate()
+                    + "    Due date: " + invoice.getDueDate()));
+            
+            document.add(new Paragraph("Bill to").setFont(bold).setMarginTop(template.fontSize()));
+            document.add(new Paragraph(invoice.getClientName()));
+            addIfPresent(document, "NIT: ", invoice.getClientNit());
+            if (template.showClientDetails()) {
+                addIfPresent(document, "", invoice.getClientAddress());
+                addIfPresent(document, "", invoice.getClientEmail());
+            }
+            
+            Table items = new Table(UnitValue.createPercentArray(new float[] {6, 1, 2, 2}))
+                    .useAllAvailableWidth()
+                    .setMarginTop(template.fontSize());
+            for (String header : ITEM_HEADERS) {
+                items.addHeaderCell(new Cell().add(new Paragraph(header).setFont(bold)));
+            }
+            if (invoice.getItems() != null) {
+                for (InvoiceResponse.InvoiceItemResponse item : invoice.getItems()) {
+                    items.addCell(item.getDescription());
+                    items.addCell(amountCell(String.valueOf(item.getQuantity())));
+                    items.addCell(amountCell(format(item.getUnitPrice())));
+                    items.addCell(amountCell(format(item.getTotalPrice())));
+                }
+            }
+            document.add(items);
+            
+            String currency = invoice.getCurrency() != null ? invoice.getCurrency() + " " : "";
+            document.add(totalLine("Subtotal: " + currency + format(invoice.getSubtotal()), regular));
+            document.add(totalLine("Tax: " + currency + format(invoice.getTaxAmount()), regular));
+            document.add(totalLine("Total: " + currency + format(invoice.getTotalAmount()), bold));
+            
+            addIfPresent(document, "Payment method: ", invoice.getPaymentMethod());
+            if (template.showClientDetails()) {
+                addIfPresent(document, "Observations: ", invoice.getObservations());
+            }
+        }
+    }
+    
+    private void addIfPresent(Document document, String label, String value) {
+        if (value != null && !value.isBlank()) {
+            document.add(new Paragraph(label + value));
+        }
+    }
+    
+    private Cell amountCell(String text) {
+        return new Cell().add(new Paragraph(text)).setTextAlignment(TextAlignment.RIGHT);
+    }
+    
+    private Paragraph totalLine(String text, PdfFont font) {
+        return new Paragraph(text).setFont(font).setTextAlignment(TextAlignment.RIGHT);
+    }
+    
+    private String format(BigDecimal amount) {
+        return amount != null ? amount.setScale(2, RoundingMode.HALF_UP).toPlainString() : "-";
+    }
+}
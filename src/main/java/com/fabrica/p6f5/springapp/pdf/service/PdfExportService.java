@@ -0,0 +1,231 @@
+package com.fabrica.p6f5.springapp.pdf.service;
+
+import com.fabrica.p6f5.springapp.config.BackgroundExecutors;
+import com.fabrica.p6f5.springapp.exception.BusinessException;
+import com.fabrica.p6f5.springapp.invoice.model.Invoice;
+import com.fabrica.p6f5.springapp.invoice.repository.InvoiceRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * PDF Export Service following Single Responsibility Principle.
+ * Streams the PDFs of many invoices as one ZIP archive. Issued invoices are read slice by
+ * slice in id order from a keyset position, rendered (or taken from the PDF store) by a
+ * bounded pool, and each entry is written to the response as soon as its PDF is ready.
+ * At most export-window PDFs are in flight per export, so memory stays constant whatever
+ * the number of invoices selected.
+ */
+@Service
+public class PdfExportService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PdfExportService.class);
+    
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+    
+    @Autowired
+    private PdfService pdfService;
+    
+    @Autowired
+    private PdfTemplateRegistry templateRegistry;
+    
+    @Autowired
+    private BackgroundExecutors backgroundExecutors;
+    
+    @Value("${pdf.export.concurrency:4}")
+    private int exportConcurrency;
+    
+    @Value("${pdf.export.window:8}")
+    private int exportWindow;
+    
+    @Value("${pdf.export.slice-size:100}")
+    private int sliceSize;
+    
+    private ThreadPoolExecutor exportExecutor;
+    
+    @PostConstruct
+    void init() {
+        exportExecutor = backgroundExecutors.newBoundedExecutor("pdf-export", exportConcurrency, exportConcurrency * 16);
+        // Under load the exporting thread renders itself instead of failing the archive
+        exportExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+    
+    @PreDestroy
+    void shutdown() {
+        exportExecutor.shutdownNow();
+    }
+    
+    /**
+     * Check export criteria before the response is committed
+     * 
+     * @param clientName client filter, optional
+     * @param from first invoice date, optional
+     * @param to last invoice date, optional
+     * @param templateName the template to render with
+     */
+    public void validate(String clientName, LocalDate from, LocalDate to, String templateName) {
+        boolean hasClient = clientName != null && !clientName.isBlank();
+        if (!hasClient && (from == null || to == null)) {
+            throw new BusinessException("Export requires a client name, a date range (from and to), or both");
+        }
+        if ((from == null) != (to == null)) {
+            throw new BusinessException("Both from and to are required for a date range");
+        }
+        if (from != null && from.isAfter(to)) {
+            throw new BusinessException("Export date range is invalid: from is after to");
+        }
+        templateRegistry.get(templateName);
+    }
+    
+    /**
+     * Write a ZIP with the PDF of every ISSUED invoice matching the criteria.
+     * Invoices that fail to render are listed in an errors.txt entry instead of aborting the archive.
+     * 
+     * @param clientName client filter, optional
+     * @param from first invoice date, optional
+     * @param to last invoice date, optional
+     * @param templateName the template to render with
+     * @param out the response stream
+     * @throws IOException if the archive cannot be written
+     */
+    public void exportZip(String clientName, LocalDate from, LocalDate to, String templateName,
+                          OutputStream out) throws IOException {
+        CompletionService<ExportEntry> completion = new ExecutorCompletionService<>(exportExecutor);
+        List<String> errors = new ArrayList<>();
+        int inFlight = 0;
+        int exported = 0;
+        
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            // PDFs are already compressed; favour throughput
+            zip.setLevel(Deflater.BEST_SPEED);
+            
+            String client = clientName != null && !clientName.isBlank() ? clientName : null;
+            long afterId = 0;
+            List<Invoice> slice;
+            do {
+                slice = invoiceRepository.findIssuedForExportAfter(afterId, client, from, to, PageRequest.of(0, sliceSize));
+                for (Invoice invoice : slice) {
+                    if (inFlight == exportWindow) {
+                        inFlight--;
+                        exported += writeNext(completion, zip, errors);
+                    }
+                    Long invoiceId = invoice.getId();
+                    String entryName = entryName(invoice);
+                    completion.submit(() -> renderForExport(invoiceId, entryName, templateName));
+                    inFlight++;
+                }
+                if (!slice.isEmpty()) {
+                    afterId = slice.get(slice.size() - 1).getId();
+                }
+            } while (slice.size() == sliceSize);
+            
+            while (inFlight > 0) {
+                inFlight--;
+                exported += writeNext(completion, zip, errors);
+            }
+            
+            if (!errors.isEmpty()) {
+                zip.putNextEntry(new ZipEntry("errors.txt"));
+                zip.write(String.join("\n", errors).getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        } finally {
+            // Only left over when the archive failed; close the files the workers opened
+            discard(completion, inFlight);
+        }
+        logger.info("Exported {} invoice PDFs ({} failed)", exported, errors.size());
+    }
+    
+    /**
+     * Render (or look up) the PDF and open it in the worker, so a file evicted from the store
+     * before it is copied fails this entry alone instead of the archive
+     */
+    private ExportEntry renderForExport(Long invoiceId, String entryName, String templateName) throws IOException {
+        try {
+            return new ExportEntry(entryName, Files.newInputStream(pdfService.getOrRenderPdf(invoiceId, templateName).file()));
+        } catch (IOException | RuntimeException e) {
+            throw new IOException(entryName + ": " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Wait for the next finished PDF and copy it into the archive
+     * 
+     * @return 1 if an entry was written, 0 if the PDF failed
+     */
+    private int writeNext(CompletionService<ExportEntry> completion, ZipOutputStream zip,
+                          List<String> errors) throws IOException {
+        Future<ExportEntry> done;
+        try {
+            done = completion.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        }
+        try {
+            ExportEntry entry = done.get();
+            try (InputStream pdf = entry.pdf()) {
+                zip.putNextEntry(new ZipEntry(entry.name()));
+                pdf.transferTo(zip);
+                zip.closeEntry();
+            }
+            return 1;
+        } catch (ExecutionException e) {
+            errors.add(e.getCause().getMessage());
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        }
+    }
+    
+    /**
+     * Wait for the PDFs still in flight after a failed archive and close their files
+     */
+    private void discard(CompletionService<ExportEntry> completion, int inFlight) {
+        for (int i = 0; i < inFlight; i++) {
+            try {
+                completion.take().get().pdf().close();
+            } catch (ExecutionException | IOException e) {
+                // Nothing was opened, or it is being discarded anyway
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    /**
+     * An opened PDF and its name inside the archive
+     */
+    private record ExportEntry(String name, InputStream pdf) {
+    }
+    
+    private String entryName(Invoice invoice) {
+        String number = invoice.getInvoiceNumber() != null ? invoice.getInvoiceNumber() : "invoice-" + invoice.getId();
+        return number.replaceAll("[^A-Za-z0-9._-]", "_") + ".pdf";
+    }
+}
@@ -0,0 +1,243 @@
+package com.fabrica.p6f5.springapp.pdf.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed store for rendered PDFs.
+ * An ISSUED invoice never changes, so its PDF is fully determined by the invoice id,
+ * its version and the template used; the SHA-256 of those is the file name. Files are
+ * kept under pdf.storage.path and the least recently used ones are deleted once the
+ * store grows beyond pdf.storage.max-size-mb.
+ */
+@Component
+public class PdfFileStore {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PdfFileStore.class);
+    
+    private static final String EXTENSION = ".pdf";
+    
+    private static final String ENTRY_NAME = "[0-9a-f]{64}\\.pdf";
+    
+    /**
+     * Writes the content of a new entry
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+        void write(OutputStream out) throws IOException;
+    }
+    
+    private final Path root;
+    private final long maxBytes;
+    
+    /** Entry sizes in access order, eldest first; guarded by lock */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    private long totalBytes;
+    
+    public PdfFileStore(@Value("${pdf.storage.path:./data/pdfs}") String storagePath,
+                        @Value("${pdf.storage.max-size-mb:1024}") long maxSizeMb) {
+        this.root = Paths.get(storagePath).toAbsolutePath();
+        this.maxBytes = maxSizeMb * 1024 * 1024;
+    }
+    
+    /**
+     * Rebuild the index from disk, oldest files first, and drop leftovers of interrupted writes
+     */
+    @PostConstruct
+    void loadIndex() throws IOException {
+        Files.createDirectories(root);
+        try (Stream<Path> files = Files.walk(root)) {
+            List<Path> stored = files.filter(Files::isRegularFile).toList();
+            stored.stream()
+                    .filter(file -> file.getFileName().toString().endsWith(".tmp"))
+                    .forEach(this::deleteQuietly);
+            stored.stream()
+                    .filter(file -> file.getFileName().toString().matches(ENTRY_NAME))
+                    .sorted(Comparator.comparing(this::lastModified))
+                    .forEach(file -> {
+                        long size = file.toFile().length();
+                        entries.put(keyOf(file), size);
+                        totalBytes += size;
+                    });
+        }
+        logger.info("PDF store at {} holds {} files ({} bytes)", root, entries.size(), totalBytes);
+        evict(null);
+    }
+    
+    /**
+     * Compute the content key of a rendered invoice
+     * 
+     * @param invoiceId the invoice ID
+     * @param version the invoice version
+     * @param templateHash hash of the template the PDF is rendered with
+     * @return hex SHA-256 of "invoiceId:version:templateHash"
+     */
+    public String key(Long invoiceId, Integer version, String templateHash) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest((invoiceId + ":" + version + ":" + templateHash).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+    
+    /**
+     * Find a stored entry and mark it as recently used
+     * 
+     * @param key the content key
+     * @return the file, if present
+     */
+    public Optional<Path> find(String key) {
+        lock.lock();
+        try {
+            if (entries.get(key) == null) {
+                return Optional.empty();
+            }
+        } finally {
+            lock.unlock();
+        }
+        Path file = pathOf(key);
+        if (!Files.exists(file)) {
+            forget(key);
+            return Optional.empty();
+        }
+        return Optional.of(file);
+    }
+    
+    /**
+     * Store an entry unless it already exists. Content is written to a temporary file
+     * and moved into place, so readers never see a partial PDF.
+     * 
+     * @param key the content key
+     * @param writer produces the content
+     * @return the stored file
+     * @throws IOException if the content cannot be written
+     */
+    public Path store(String key, ContentWriter writer) throws IOException {
+        Optional<Path> existing = find(key);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        Path target = pathOf(key);
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), "render-", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                writer.write(out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            deleteQuietly(temp);
+        }
+        long size = Files.size(target);
+        lock.lock();
+        try {
+            Long previous = entries.put(key, size);
+            totalBytes += size - (previous != null ? previous : 0);
+        } finally {
+            lock.unlock();
+        }
+        evict(key);
+        return target;
+    }
+    
+    /**
+     * Total size of the indexed entries, in bytes
+     */
+    long totalBytes() {
+        lock.lock();
+        try {
+            return totalBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Delete least recently used entries until the store fits its size limit
+     * 
+     * @param keep key that must not be evicted, or null
+     */
+    private void evict(String keep) {
+        lock.lock();
+        try {
+            Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Long> entry = eldest.next();
+                if (entry.getKey().equals(keep)) {
+                    continue;
+                }
+                deleteQuietly(pathOf(entry.getKey()));
+                totalBytes -= entry.getValue();
+                eldest.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void forget(String key) {
+        lock.lock();
+        try {
+            Long size = entries.remove(key);
+            if (size != null) {
+                totalBytes -= size;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Entries are spread over 256 sub-directories named after the first key byte
+     */
+    private Path pathOf(String key) {
+        return root.resolve(key.substring(0, 2)).resolve(key + EXTENSION);
+    }
+    
+    private String keyOf(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, name.length() - EXTENSION.length());
+    }
+    
+    private FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+    
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -1,20 +1,44 @@
 package com.fabrica.p6f5.springapp.pdf.service;
 
+import com.fabrica.p6f5.springapp.config.BackgroundExecutors;
 import com.fabrica.p6f5.springapp.exception.BusinessException;
 import com.fabrica.p6f5.springapp.exception.ResourceNotFoundException;
+import com.fabrica.p6f5.springapp.invoice.dto.InvoiceResponse;
 import com.fabrica.p6f5.springapp.invoice.model.Invoice;
 import com.fabrica.p6f5.springapp.invoice.repository.InvoiceRepository;
+import com.fabrica.p6f5.springapp.invoice.service.InvoiceService;
+import com.fabrica.p6f5.springapp.pdf.dto.PdfJobResponse;
 import com.fabrica.p6f5.springapp.pdf.model.PdfLog;
 import com.fabrica.p6f5.springapp.pdf.repository.PdfLogRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.transaction.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * PDF Service following Single Responsibility Principle.
- * Handles PDF generation for invoices.
+ * Handles PDF generation for invoices as asynchronous jobs: a request records a
+ * PENDING pdf_logs row and returns its id, and a bounded worker pool renders the
+ * document into the {@link PdfFileStore} and flips the log to SUCCESS or FAILED.
+ * Rendered PDFs are reused for as long as the invoice version and template do not change.
  */
 @Service
 public class PdfService {
@@ -27,12 +51,64 @@ public class PdfService {
     @Autowired
     private PdfLogRepository pdfLogRepository;
     
+    @Autowired
+    private InvoiceService invoiceService;
+    
+    @Autowired
+    private InvoicePdfRenderer renderer;
+    
+    @Autowired
+    private PdfTemplateRegistry templateRegistry;
+    
+    @Autowired
+    private PdfFileStore pdfFileStore;
+    
+    @Autowired
+    private BackgroundExecutors backgroundExecutors;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Value("${pdf.render.concurrency:4}")
+    private int renderConcurrency;
+    
+    @Value("${pdf.render.queue-capacity:500}")
+    private int renderQueueCapacity;
+    
+    private ThreadPoolExecutor renderExecutor;
+    
+    private TransactionTemplate transactionTemplate;
+    
+    @PostConstruct
+    void init() {
+        renderExecutor = backgroundExecutors.newBoundedExecutor("pdf-render", renderConcurrency, renderQueueCapacity);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+    
     /**
-     * Generate PDF for an invoice
+     * Let running renders finish; queued jobs stay PENDING and are resubmitted on the next start
+     */
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        int queued = renderExecutor.getQueue().size();
+        renderExecutor.getQueue().clear();
+        renderExecutor.shutdown();
+        renderExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        logger.info("PDF render pool stopped, {} queued jobs left PENDING", queued);
+    }
+    
+    /**
+     * Request PDF generation for an invoice.
+     * The job is handed to the render pool once the PENDING log is committed.
+     *
+     * @param invoiceId the invoice ID
+     * @param generatedBy the requesting user ID
+     * @param templateName the template to render with
+     * @return the PENDING job
      */
     @Transactional
-    public String generateInvoicePDF(Long invoiceId, Long generatedBy) {
-        logger.info("Generating PDF for invoice id: {}", invoiceId);
+    public PdfJobResponse requestInvoicePdf(Long invoiceId, Long generatedBy, String templateName) {
+        logger.info("Requesting PDF for invoice id: {}", invoiceId);
         
         Invoice invoice = invoiceRepository.findById(invoiceId)
             .orElseThrow(() -> new ResourceNotFoundException("Invoice not found with id: " + invoiceId));
@@ -42,53 +118,150 @@ public class PdfService {
             throw new BusinessException("PDF can only be generated for ISSUED invoices. Current status: " + invoice.getStatus());
         }
         
+        String template = templateRegistry.get(templateName).name();
+        
+        if (renderExecutor.getQueue().remainingCapacity() == 0) {
+            throw new BusinessException("PDF generation queue is full, please retry later");
+        }
+        
+        // Create PDF log entry
+        PdfLog pdfLog = new PdfLog();
+        pdfLog.setInvoiceId(invoiceId);
+        pdfLog.setStatus(PdfLog.GenerationStatus.PENDING);
+        pdfLog.setTemplateType(template);
+        pdfLog.setGeneratedBy(generatedBy);
+        pdfLog = pdfLogRepository.save(pdfLog);
+        
+        Long jobId = pdfLog.getId();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(jobId);
+                }
+            });
+        } else {
+            submit(jobId);
+        }
+        
+        return PdfJobResponse.fromEntity(pdfLog);
+    }
+    
+    /**
+     * Get the state of a PDF job
+     *
+     * @param invoiceId the invoice the job belongs to
+     * @param jobId the job ID
+     * @return the job
+     */
+    public PdfJobResponse getJob(Long invoiceId, Long jobId) {
+        PdfLog pdfLog = pdfLogRepository.findById(jobId)
+            .filter(log -> log.getInvoiceId().equals(invoiceId))
+            .orElseThrow(() -> new ResourceNotFoundException("PDF job not found with id: " + jobId));
+        return PdfJobResponse.fromEntity(pdfLog);
+    }
+    
+    /**
+     * Get the stored PDF of an issued invoice, rendering it into the store on the first request
+     * 
+     * @param invoiceId the invoice ID
+     * @param templateName the template to render with
+     * @return the stored PDF and its content key
+     */
+    public StoredPdf getOrRenderPdf(Long invoiceId, String templateName) throws IOException {
+        Invoice invoice = invoiceRepository.findById(invoiceId)
+            .orElseThrow(() -> new ResourceNotFoundException("Invoice not found with id: " + invoiceId));
+        if (invoice.getStatus() != Invoice.InvoiceStatus.ISSUED) {
+            throw new BusinessException("PDF can only be generated for ISSUED invoices. Current status: " + invoice.getStatus());
+        }
+        
+        // Resolved once, so the key and the rendered file always come from the same template
+        PdfTemplate template = templateRegistry.get(templateName);
+        String key = pdfFileStore.key(invoiceId, invoice.getVersion(), template.hash());
+        Optional<Path> cached = pdfFileStore.find(key);
+        if (cached.isPresent()) {
+            return new StoredPdf(key, cached.get());
+        }
+        InvoiceResponse response = invoiceService.getInvoiceById(invoiceId);
+        Path file = pdfFileStore.store(key, out -> renderer.render(response, template, out));
+        logger.info("PDF rendered for invoice id: {} into {}", invoiceId, file);
+        return new StoredPdf(key, file);
+    }
+    
+    /**
+     * A PDF in the store: its content key (usable as ETag) and its file
+     */
+    public record StoredPdf(String key, Path file) {
+    }
+    
+    /**
+     * Resubmit jobs left PENDING by a previous run
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePendingJobs() {
+        List<PdfLog> pending = pdfLogRepository.findByStatusOrderByGeneratedAtDesc(PdfLog.GenerationStatus.PENDING);
+        if (!pending.isEmpty()) {
+            logger.info("Resubmitting {} pending PDF jobs", pending.size());
+            pending.forEach(pdfLog -> submit(pdfLog.getId()));
+        }
+    }
+    
+    private void submit(Long jobId) {
         try {
-            // Create PDF log entry
-            PdfLog pdfLog = new PdfLog();
-            pdfLog.setInvoiceId(invoiceId);
-            pdfLog.setStatus(PdfLog.GenerationStatus.PENDING);
-            pdfLog.setGeneratedBy(generatedBy);
-            pdfLog = pdfLogRepository.save(pdfLog);
-            
-            // TODO: Implement actual PDF generation using iText7
-            // For now, we'll generate a mock URL
-            String pdfUrl = generateMockPdfUrl(invoice);
-            
-            // Update PDF log with success
-            pdfLog.setStatus(PdfLog.GenerationStatus.SUCCESS);
-            pdfLog.setPdfUrl(pdfUrl);
-            pdfLog.setTemplateType("STANDARD");
-            pdfLogRepository.save(pdfLog);
-            
-            // Update invoice with PDF URL
-            invoice.setPdfUrl(pdfUrl);
-            invoiceRepository.save(invoice);
-            
-            logger.info("PDF generated successfully for invoice id: {}", invoiceId);
-            
-            return pdfUrl;
+            renderExecutor.execute(() -> render(jobId));
+        } catch (RejectedExecutionException e) {
+            logger.warn("PDF job {} rejected by the render pool", jobId);
+            markFailed(jobId, "PDF generation queue is full");
+        }
+    }
+    
+    /**
+     * Worker: render the invoice, store the file and record the outcome
+     */
+    private void render(Long jobId) {
+        PdfLog pdfLog = pdfLogRepository.findById(jobId).orElse(null);
+        if (pdfLog == null || pdfLog.getStatus() != PdfLog.GenerationStatus.PENDING) {
+            return;
+        }
+        Long invoiceId = pdfLog.getInvoiceId();
+        try {
+            String template = pdfLog.getTemplateType() != null ? pdfLog.getTemplateType() : InvoicePdfRenderer.TEMPLATE;
+            getOrRenderPdf(invoiceId, template);
+            String pdfUrl = downloadUrl(invoiceId, template);
             
+            transactionTemplate.executeWithoutResult(status -> {
+                PdfLog log = pdfLogRepository.findById(jobId).orElseThrow();
+                log.setStatus(PdfLog.GenerationStatus.SUCCESS);
+                log.setPdfUrl(pdfUrl);
+                pdfLogRepository.save(log);
+                
+                // Update invoice with PDF URL
+                invoiceRepository.updatePdfUrl(invoiceId, pdfUrl);
+            });
+            logger.info("PDF generated successfully for invoice id: {} (job {})", invoiceId, jobId);
         } catch (Exception e) {
-            logger.error("Error generating PDF for invoice id: {}", invoiceId, e);
-            
-            // Log failure
-            PdfLog pdfLog = new PdfLog();
-            pdfLog.setInvoiceId(invoiceId);
-            pdfLog.setStatus(PdfLog.GenerationStatus.FAILED);
-            pdfLog.setErrorMessage(e.getMessage());
-            pdfLog.setGeneratedBy(generatedBy);
-            pdfLogRepository.save(pdfLog);
-            
-            throw new BusinessException("Failed to generate PDF: " + e.getMessage());
+            logger.error("Error generating PDF for invoice id: {} (job {})", invoiceId, jobId, e);
+            markFailed(jobId, e.getMessage());
         }
     }
     
     /**
-     * Generate a mock PDF URL for demonstration purposes
+     * Public download URL of an invoice PDF; stored instead of the file, whose path is server-local
      */
-    private String generateMockPdfUrl(Invoice invoice) {
-        // In a real implementation, this would upload the PDF to S3 or similar storage
-        return "https://example.com/pdfs/invoice-" + invoice.getId() + ".pdf";
+    static String downloadUrl(Long invoiceId, String template) {
+        String url = "/api/v1/invoices/" + invoiceId + "/pdf";
+        return InvoicePdfRenderer.TEMPLATE.equals(template) ? url : url + "?template=" + template;
+    }
+    
+    private void markFailed(Long jobId, String errorMessage) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> pdfLogRepository.findById(jobId).ifPresent(log -> {
+                log.setStatus(PdfLog.GenerationStatus.FAILED);
+                log.setErrorMessage(errorMessage);
+                pdfLogRepository.save(log);
+            }));
+        } catch (Exception e) {
+            logger.error("Could not mark PDF job {} as failed: {}", jobId, e.getMessage());
+        }
     }
 }
-
@@ -0,0 +1,49 @@
+package com.fabrica.p6f5.springapp.pdf.service;
+
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.PdfEncodings;
+import com.itextpdf.io.image.ImageData;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+
+/**
+ * A named, precompiled invoice layout.
+ * Font programs and the logo image are parsed once and shared by every render; they are
+ * immutable once loaded. Document-bound objects (PdfFont, Image) must be created per
+ * document through {@link #regularFont()} and {@link #boldFont()}.
+ *
+ * @param name template name, as stored in pdf_logs.template_type
+ * @param hash identifies this exact layout and its resources; part of the PDF store key
+ * @param fontSize body font size
+ * @param titleFontSize title font size
+ * @param margin page margin in points
+ * @param showClientDetails whether address and email are printed
+ * @param regular shared regular font program
+ * @param bold shared bold font program
+ * @param logo shared logo image, or null
+ */
+public record PdfTemplate(
+        String name,
+        String hash,
+        float fontSize,
+        float titleFontSize,
+        float margin,
+        boolean showClientDetails,
+        FontProgram regular,
+        FontProgram bold,
+        ImageData logo) {
+    
+    /**
+     * Regular font bound to a new document
+     */
+    public PdfFont regularFont() {
+        return PdfFontFactory.createFont(regular, PdfEncodings.WINANSI);
+    }
+    
+    /**
+     * Bold font bound to a new document
+     */
+    public PdfFont boldFont() {
+        return PdfFontFactory.createFont(bold, PdfEncodings.WINANSI);
+    }
+}
@@ -0,0 +1,160 @@
+package com.fabrica.p6f5.springapp.pdf.service;
+
+import com.fabrica.p6f5.springapp.exception.BusinessException;
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.FontProgramFactory;
+import com.itextpdf.io.font.constants.StandardFonts;
+import com.itextpdf.io.image.ImageData;
+import com.itextpdf.io.image.ImageDataFactory;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Registry of invoice PDF templates.
+ * Loads fonts and the logo once and shares them across render threads. The templates are
+ * published as one immutable map behind a volatile reference, so a reload never exposes a
+ * half-built set. Reloads happen on demand or automatically when the logo file changes
+ * (checked at most every pdf.templates.reload-check-interval-ms).
+ */
+@Component
+public class PdfTemplateRegistry {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PdfTemplateRegistry.class);
+    
+    public static final String STANDARD = "STANDARD";
+    public static final String COMPACT = "COMPACT";
+    
+    /** Bump whenever a layout changes in code, so stored PDFs of the old layout are not served */
+    private static final String LAYOUT_REVISION = "2";
+    
+    private final String logoPath;
+    private final long reloadCheckIntervalMillis;
+    
+    private final ReentrantLock reloadLock = new ReentrantLock();
+    
+    private volatile Map<String, PdfTemplate> templates = Map.of();
+    private volatile long logoLastModified;
+    private volatile long nextReloadCheck;
+    
+    public PdfTemplateRegistry(@Value("${pdf.templates.logo-path:}") String logoPath,
+                               @Value("${pdf.templates.reload-check-interval-ms:5000}") long reloadCheckIntervalMillis) {
+        this.logoPath = logoPath;
+        this.reloadCheckIntervalMillis = reloadCheckIntervalMillis;
+    }
+    
+    @PostConstruct
+    void init() throws IOException {
+        reload();
+    }
+    
+    /**
+     * Get a template by name
+     * 
+     * @param name the template name, case-insensitive
+     * @return the template
+     * @throws BusinessException if no template has that name
+     */
+    public PdfTemplate get(String name) {
+        reloadIfChanged();
+        PdfTemplate template = templates.get(name.toUpperCase());
+        if (template == null) {
+            throw new BusinessException("Unknown PDF template: " + name + ". Available templates: " + templates.keySet());
+        }
+        return template;
+    }
+    
+    /**
+     * Names of the available templates
+     */
+    public Set<String> names() {
+        return templates.keySet();
+    }
+    
+    /**
+     * Load fonts and logo again and atomically replace every template
+     * 
+     * @throws IOException if a resource cannot be read
+     */
+    public void reload() throws IOException {
+        reloadLock.lock();
+        try {
+            load();
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+    
+    private void load() throws IOException {
+        FontProgram regular = FontProgramFactory.createFont(StandardFonts.HELVETICA);
+        FontProgram bold = FontProgramFactory.createFont(StandardFonts.HELVETICA_BOLD);
+        
+        ImageData logo = null;
+        String logoDigest = "none";
+        long lastModified = 0;
+        if (logoPath != null && !logoPath.isBlank() && Files.exists(Paths.get(logoPath))) {
+            Path logoFile = Paths.get(logoPath);
+            byte[] logoBytes = Files.readAllBytes(logoFile);
+            logo = ImageDataFactory.create(logoBytes);
+            logoDigest = sha256(logoBytes);
+            lastModified = Files.getLastModifiedTime(logoFile).toMillis();
+        }
+        
+        templates = Map.of(
+                STANDARD, template(STANDARD, 10f, 18f, 36f, true, regular, bold, logo, logoDigest),
+                COMPACT, template(COMPACT, 8f, 12f, 20f, false, regular, bold, null, "none"));
+        logoLastModified = lastModified;
+        nextReloadCheck = System.currentTimeMillis() + reloadCheckIntervalMillis;
+        logger.info("Loaded PDF templates {}", templates.keySet());
+    }
+    
+    private PdfTemplate template(String name, float fontSize, float titleFontSize, float margin,
+                                 boolean showClientDetails, FontProgram regular, FontProgram bold,
+                                 ImageData logo, String logoDigest) {
+        String hash = sha256((name + ":" + LAYOUT_REVISION + ":" + fontSize + ":" + titleFontSize + ":" + margin
+                + ":" + showClientDetails + ":" + logoDigest).getBytes(StandardCharsets.UTF_8));
+        return new PdfTemplate(name, hash, fontSize, titleFontSize, margin, showClientDetails, regular, bold, logo);
+    }
+    
+    /**
+     * Reload when the logo file was replaced since the last load
+     */
+    private void reloadIfChanged() {
+        long now = System.currentTimeMillis();
+        if (logoPath == null || logoPath.isBlank() || now < nextReloadCheck) {
+            return;
+        }
+        nextReloadCheck = now + reloadCheckIntervalMillis;
+        try {
+            Path logoFile = Paths.get(logoPath);
+            long lastModified = Files.exists(logoFile) ? Files.getLastModifiedTime(logoFile).toMillis() : 0;
+            if (lastModified != logoLastModified) {
+                reload();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not reload PDF templates, keeping the current ones: {}", e.getMessage());
+        }
+    }
+    
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
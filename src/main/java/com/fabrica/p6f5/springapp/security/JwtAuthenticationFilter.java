@@ -2,6 +2,7 @@ package com.fabrica.p6f5.springapp.security;
 
 import com.fabrica.p6f5.springapp.service.JwtService;
 import com.fabrica.p6f5.springapp.service.UserService;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -29,13 +30,15 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private UserService userService;
     
+    @Autowired
+    private PrincipalCache principalCache;
+    
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, 
                                     FilterChain filterChain) throws ServletException, IOException {
         
         final String authHeader = request.getHeader("Authorization");
         final String jwt;
-        final String username;
         
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
             filterChain.doFilter(request, response);
@@ -44,16 +47,23 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         
         jwt = authHeader.substring(7);
         try {
-            username = jwtService.extractUsername(jwt);
+            // Signature and expiration are verified once; the claims are reused below
+            final Claims claims = jwtService.parseVerifiedClaims(jwt);
+            final String username = claims.getSubject();
             
             if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                UserDetails userDetails = userService.loadUserByUsername(username);
+                final boolean trustClaims = principalCache.trustsClaims(claims);
+                UserDetails userDetails = trustClaims
+                        ? principalCache.principalFromClaims(claims)
+                        : userService.loadPrincipal(username);
                 
-                if (jwtService.isTokenValid(jwt, userDetails)) {
+                if (jwtService.isTokenValid(claims, userDetails)) {
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                             userDetails,
                             null,
-                            userDetails.getAuthorities()
+                            trustClaims
+                                    ? principalCache.authoritiesFromClaims(claims, userDetails.getAuthorities())
+                                    : userDetails.getAuthorities()
                     );
                     authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                     SecurityContextHolder.getContext().setAuthentication(authToken);
@@ -0,0 +1,192 @@
+package com.fabrica.p6f5.springapp.security;
+
+import com.fabrica.p6f5.springapp.entity.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Principal Cache following Single Responsibility Principle.
+ * Keeps recently authenticated users in memory so the JWT filter does not query
+ * the users table on every request. Bounded by size (W-TinyLFU eviction) and by a
+ * time-to-live, so changes made outside {@link com.fabrica.p6f5.springapp.service.UserService}
+ * are picked up after at most one TTL.
+ * Entries are immutable snapshots (id, username, email, roles, enabled flag), never the JPA
+ * entity: the password hash is not kept and every request gets its own detached principal.
+ */
+@Component
+public class PrincipalCache {
+    
+    /** Claim holding the user id, added to every token by JwtService */
+    public static final String USER_ID_CLAIM = "uid";
+    
+    /** Claim holding the granted authorities, added to every token by JwtService */
+    public static final String ROLES_CLAIM = "roles";
+    
+    private final Cache<String, CachedPrincipal> principals;
+    /** Logins each user id is cached under, so invalidating a user does not scan the cache */
+    private final ConcurrentMap<Long, Set<String>> loginsById = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final boolean trustTokenClaims;
+    
+    public PrincipalCache(
+            MeterRegistry meterRegistry,
+            @Value("${security.principal-cache.maximum-size:10000}") long maximumSize,
+            @Value("${security.principal-cache.ttl:5m}") Duration ttl,
+            @Value("${security.principal-cache.trust-token-claims:false}") boolean trustTokenClaims) {
+        this.ttl = ttl;
+        this.trustTokenClaims = trustTokenClaims;
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .evictionListener((String login, CachedPrincipal principal, RemovalCause cause) -> {
+                    if (principal != null) {
+                        forgetLogin(principal.id(), login);
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, principals, "principals");
+    }
+    
+    /**
+     * Get the principal for a login (username or email), loading and caching it on a miss.
+     * 
+     * @param login the username or email
+     * @param loader loads the user, returning null when it does not exist
+     * @return the principal, or null when the loader found nothing (misses are not cached)
+     */
+    public CachedPrincipal get(String login, Function<String, User> loader) {
+        return principals.get(login, key -> {
+            User user = loader.apply(key);
+            if (user == null) {
+                return null;
+            }
+            CachedPrincipal principal = CachedPrincipal.of(user);
+            loginsById.computeIfAbsent(principal.id(), id -> ConcurrentHashMap.newKeySet()).add(key);
+            return principal;
+        });
+    }
+    
+    /**
+     * Remove every cached entry of a user, under its current username, email and any
+     * earlier login it was cached under.
+     * 
+     * @param user the user that changed
+     */
+    public void invalidate(User user) {
+        principals.invalidate(user.getUsername());
+        principals.invalidate(user.getEmail());
+        if (user.getId() != null) {
+            invalidate(user.getId());
+        }
+    }
+    
+    /**
+     * Remove every cached entry of a user id.
+     * 
+     * @param userId the user ID
+     */
+    public void invalidate(Long userId) {
+        Set<String> logins = loginsById.remove(userId);
+        if (logins != null) {
+            principals.invalidateAll(logins);
+        }
+    }
+    
+    private void forgetLogin(Long userId, String login) {
+        loginsById.computeIfPresent(userId, (id, logins) -> {
+            logins.remove(login);
+            return logins.isEmpty() ? null : logins;
+        });
+    }
+    
+    /**
+     * Whether the principal may be built from the token alone: claim trust is enabled,
+     * the token carries a user id, and it was issued less than one TTL ago, so it is
+     * never staler than a cached entry would be.
+     * 
+     * @param claims verified token claims
+     * @return true if the database lookup can be skipped
+     */
+    public boolean trustsClaims(Claims claims) {
+        if (!trustTokenClaims || claims.get(USER_ID_CLAIM) == null || claims.getIssuedAt() == null) {
+            return false;
+        }
+        return claims.getIssuedAt().after(new Date(System.currentTimeMillis() - ttl.toMillis()));
+    }
+    
+    /**
+     * Build a principal from verified token claims.
+     * 
+     * @param claims verified token claims
+     * @return a detached user carrying the id and username from the token
+     */
+    public User principalFromClaims(Claims claims) {
+        User user = new User();
+        user.setId(((Number) claims.get(USER_ID_CLAIM)).longValue());
+        user.setUsername(claims.getSubject());
+        return user;
+    }
+    
+    /**
+     * Authorities carried by the token, falling back to the principal's own.
+     * 
+     * @param claims verified token claims
+     * @param fallback authorities to use when the token has none
+     * @return the granted authorities
+     */
+    public Collection<? extends GrantedAuthority> authoritiesFromClaims(Claims claims,
+                                                                       Collection<? extends GrantedAuthority> fallback) {
+        Object roles = claims.get(ROLES_CLAIM);
+        if (!(roles instanceof List<?> roleList)) {
+            return fallback;
+        }
+        return roleList.stream()
+                .map(role -> new SimpleGrantedAuthority(String.valueOf(role)))
+                .toList();
+    }
+    
+    /**
+     * Immutable snapshot of an authenticated user, shared by every request that hits the cache
+     */
+    public record CachedPrincipal(Long id, String username, String email, List<String> roles, boolean enabled) {
+        
+        static CachedPrincipal of(User user) {
+            return new CachedPrincipal(user.getId(), user.getUsername(), user.getEmail(),
+                    user.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList(), user.isEnabled());
+        }
+        
+        /**
+         * A new detached user for one request, without the password hash
+         */
+        public User toUser() {
+            User user = new User();
+            user.setId(id);
+            user.setUsername(username);
+            user.setEmail(email);
+            user.setIsActive(enabled);
+            return user;
+        }
+        
+        public Collection<? extends GrantedAuthority> authorities() {
+            return roles.stream().map(SimpleGrantedAuthority::new).toList();
+        }
+    }
+}
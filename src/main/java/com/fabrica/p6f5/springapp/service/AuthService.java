@@ -4,6 +4,7 @@ import com.fabrica.p6f5.springapp.dto.AuthResponse;
 import com.fabrica.p6f5.springapp.dto.LoginRequest;
 import com.fabrica.p6f5.springapp.dto.RegisterRequest;
 import com.fabrica.p6f5.springapp.entity.User;
+import io.jsonwebtoken.Claims;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -101,8 +102,9 @@ public class AuthService {
      */
     public Optional<User> getCurrentUser() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        if (authentication != null && authentication.getPrincipal() instanceof User) {
-            return Optional.of((User) authentication.getPrincipal());
+        if (authentication != null && authentication.getPrincipal() instanceof User principal) {
+            // The principal is a cached snapshot carrying only the identity fields
+            return principal.getId() != null ? userService.findById(principal.getId()) : Optional.of(principal);
         }
         return Optional.empty();
     }
@@ -115,9 +117,9 @@ public class AuthService {
      */
     public boolean validateToken(String token) {
         try {
-            String username = jwtService.extractUsername(token);
-            UserDetails userDetails = userService.loadUserByUsername(username);
-            return jwtService.isTokenValid(token, userDetails);
+            Claims claims = jwtService.parseVerifiedClaims(token);
+            UserDetails userDetails = userService.loadPrincipal(claims.getSubject());
+            return jwtService.isTokenValid(claims, userDetails);
         } catch (Exception e) {
             return false;
         }
@@ -1,15 +1,28 @@
 package com.fabrica.p6f5.springapp.service;
 
+import com.fabrica.p6f5.springapp.entity.User;
+import com.fabrica.p6f5.springapp.security.PrincipalCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -28,6 +41,96 @@ public class JwtService {
     @Value("${jwt.expiration}")
     private long jwtExpiration;
     
+    private SecretKey signInKey;
+    
+    @Value("${jwt.token-cache.enabled:true}")
+    private boolean tokenCacheEnabled;
+    
+    @Value("${jwt.token-cache.maximum-size:10000}")
+    private long tokenCacheMaximumSize;
+    
+    private JwtParser jwtParser;
+    
+    /**
+     * Verified claims keyed by the SHA-256 of the token; each entry expires at the token's exp
+     */
+    private Cache<String, Claims> verifiedTokens;
+    
+    /**
+     * Decode the secret and build the signing key and parser once; both are immutable and thread-safe.
+     */
+    @PostConstruct
+    void init() {
+        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
+        signInKey = Keys.hmacShaKeyFor(keyBytes);
+        jwtParser = Jwts.parserBuilder()
+                .setSigningKey(signInKey)
+                .build();
+        if (tokenCacheEnabled) {
+            verifiedTokens = Caffeine.newBuilder()
+                    .maximumSize(tokenCacheMaximumSize)
+                    .expireAfter(new Expiry<String, Claims>() {
+                        @Override
+                        public long expireAfterCreate(String tokenHash, Claims claims, long currentTime) {
+                            return timeToExpiry(claims).toNanos();
+                        }
+                        
+                        @Override
+                        public long expireAfterUpdate(String tokenHash, Claims claims, long currentTime, long currentDuration) {
+                            return timeToExpiry(claims).toNanos();
+                        }
+                        
+                        @Override
+                        public long expireAfterRead(String tokenHash, Claims claims, long currentTime, long currentDuration) {
+                            return currentDuration;
+                        }
+                    })
+                    .build();
+        }
+    }
+    
+    /**
+     * Verify the token signature and expiration once and return its claims.
+     * The claims can then be passed to {@link #isTokenValid(Claims, UserDetails)}
+     * instead of parsing the token again.
+     * When jwt.token-cache.enabled is set, repeated tokens are served from the verified-token
+     * cache until their exp; the returned claims are shared and must not be modified.
+     * 
+     * @param token the JWT token
+     * @return the verified claims
+     * @throws io.jsonwebtoken.JwtException if the token is malformed, tampered with or expired
+     */
+    public Claims parseVerifiedClaims(String token) {
+        if (verifiedTokens == null) {
+            return jwtParser.parseClaimsJws(token).getBody();
+        }
+        String tokenHash = hashToken(token);
+        Claims cached = verifiedTokens.getIfPresent(tokenHash);
+        if (cached != null) {
+            // Caffeine evicts lazily, so an entry can be read shortly after its exp
+            if (!isTokenExpired(cached)) {
+                return cached;
+            }
+            verifiedTokens.invalidate(tokenHash);
+        }
+        Claims claims = jwtParser.parseClaimsJws(token).getBody();
+        if (claims.getExpiration() != null) {
+            verifiedTokens.put(tokenHash, claims);
+        }
+        return claims;
+    }
+    
+    /**
+     * Number of tokens currently held by the verified-token cache, after pending evictions.
+     */
+    long cachedTokenCount() {
+        if (verifiedTokens == null) {
+            return 0;
+        }
+        verifiedTokens.cleanUp();
+        return verifiedTokens.estimatedSize();
+    }
+    
     /**
      * Extract username from JWT token.
      * 
@@ -52,12 +155,21 @@ public class JwtService {
     
     /**
      * Generate JWT token for user.
+     * The token carries the user id and authorities so the principal can be built
+     * from it when security.principal-cache.trust-token-claims is enabled.
      * 
      * @param userDetails the user details
      * @return the JWT token
      */
     public String generateToken(UserDetails userDetails) {
-        return generateToken(new HashMap<>(), userDetails);
+        Map<String, Object> claims = new HashMap<>();
+        if (userDetails instanceof User user && user.getId() != null) {
+            claims.put(PrincipalCache.USER_ID_CLAIM, user.getId());
+        }
+        claims.put(PrincipalCache.ROLES_CLAIM, userDetails.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .toList());
+        return generateToken(claims, userDetails);
     }
     
     /**
@@ -85,7 +197,7 @@ public class JwtService {
                 .setSubject(userDetails.getUsername())
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSignInKey(), SignatureAlgorithm.HS256)
+                .signWith(signInKey, SignatureAlgorithm.HS256)
                 .compact();
     }
     
@@ -97,28 +209,28 @@ public class JwtService {
      * @return true if valid, false otherwise
      */
     public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername())) && !isTokenExpired(token);
+        return isTokenValid(parseVerifiedClaims(token), userDetails);
     }
     
     /**
-     * Check if token is expired.
+     * Check if already verified claims belong to the user and are not expired.
      * 
-     * @param token the JWT token
-     * @return true if expired, false otherwise
+     * @param claims claims returned by {@link #parseVerifiedClaims(String)}
+     * @param userDetails the user details
+     * @return true if valid, false otherwise
      */
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    public boolean isTokenValid(Claims claims, UserDetails userDetails) {
+        return userDetails.getUsername().equals(claims.getSubject()) && !isTokenExpired(claims);
     }
     
     /**
-     * Extract expiration date from token.
+     * Check if token is expired.
      * 
-     * @param token the JWT token
-     * @return the expiration date
+     * @param claims the token claims
+     * @return true if expired, false otherwise
      */
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    private boolean isTokenExpired(Claims claims) {
+        return claims.getExpiration().before(new Date());
     }
     
     /**
@@ -128,19 +240,32 @@ public class JwtService {
      * @return all claims
      */
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .setSigningKey(getSignInKey())
-                .parseClaimsJws(token)
-                .getBody();
+        return parseVerifiedClaims(token);
     }
     
     /**
-     * Get signing key for JWT.
+     * Time left until the token's exp, never negative.
      * 
-     * @return the signing key
+     * @param claims the token claims
+     * @return how long the verified claims may be cached
      */
-    private SecretKey getSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-        return Keys.hmacShaKeyFor(keyBytes);
+    private static Duration timeToExpiry(Claims claims) {
+        long millis = claims.getExpiration().getTime() - System.currentTimeMillis();
+        return Duration.ofMillis(Math.max(0, millis));
+    }
+    
+    /**
+     * SHA-256 of the token, so the cache never holds bearer tokens themselves.
+     * 
+     * @param token the JWT token
+     * @return the Base64 encoded digest
+     */
+    private static String hashToken(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
     }
 }
\ No newline at end of file
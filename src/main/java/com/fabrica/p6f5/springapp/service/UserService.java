@@ -2,6 +2,7 @@ package com.fabrica.p6f5.springapp.service;
 
 import com.fabrica.p6f5.springapp.entity.User;
 import com.fabrica.p6f5.springapp.repository.UserRepository;
+import com.fabrica.p6f5.springapp.security.PrincipalCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -21,15 +22,18 @@ public class UserService implements UserDetailsService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final PrincipalCache principalCache;
 
     @Autowired
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, PrincipalCache principalCache) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.principalCache = principalCache;
     }
 
     /**
      * Load user by username OR email for Spring Security.
+     * Used for password authentication, so it always reads the database.
      *
      * @param usernameOrEmail the username or email
      * @return UserDetails
@@ -42,6 +46,24 @@ public class UserService implements UserDetailsService {
                 .orElseThrow(() -> new UsernameNotFoundException("User not found: " + usernameOrEmail));
     }
 
+    /**
+     * Load the principal of an authenticated request (username or email).
+     * Served from the principal cache when possible; the returned user is a new detached
+     * instance without the password hash.
+     *
+     * @param usernameOrEmail the username or email
+     * @return the principal
+     * @throws UsernameNotFoundException if user not found
+     */
+    public User loadPrincipal(String usernameOrEmail) throws UsernameNotFoundException {
+        PrincipalCache.CachedPrincipal principal = principalCache.get(usernameOrEmail,
+                login -> userRepository.findByUsernameOrEmail(login, login).orElse(null));
+        if (principal == null) {
+            throw new UsernameNotFoundException("User not found: " + usernameOrEmail);
+        }
+        return principal.toUser();
+    }
+
     /**
      * Find user by username or email.
      *
@@ -61,7 +83,9 @@ public class UserService implements UserDetailsService {
     public User save(User user) {
         // Encode password before saving
         user.setPassword(passwordEncoder.encode(user.getPassword()));
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        principalCache.invalidate(savedUser);
+        return savedUser;
     }
 
     /**
@@ -110,5 +134,15 @@ public class UserService implements UserDetailsService {
      */
     public void deleteById(Long id) {
         userRepository.deleteById(id);
+        principalCache.invalidate(id);
+    }
+
+    /**
+     * Drop any cached principal of a user so the next request reloads it.
+     *
+     * @param id the user ID
+     */
+    public void invalidateCachedPrincipal(Long id) {
+        principalCache.invalidate(id);
     }
 }
\ No newline at end of file
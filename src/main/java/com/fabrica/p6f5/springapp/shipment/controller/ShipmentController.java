@@ -1,16 +1,27 @@
 package com.fabrica.p6f5.springapp.shipment.controller;
 
 import com.fabrica.p6f5.springapp.dto.ApiResponse;
+import com.fabrica.p6f5.springapp.dto.CursorPage;
+import com.fabrica.p6f5.springapp.entity.User;
+import com.fabrica.p6f5.springapp.exception.BusinessException;
+import com.fabrica.p6f5.springapp.shipment.dto.ShipmentImportResult;
 import com.fabrica.p6f5.springapp.shipment.model.Shipment;
-import com.fabrica.p6f5.springapp.shipment.repository.ShipmentRepository;
+import com.fabrica.p6f5.springapp.shipment.service.ShipmentImportService;
+import com.fabrica.p6f5.springapp.shipment.service.ShipmentService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import java.io.IOException;
+import java.time.LocalDateTime;
 
 /**
  * Shipment Controller following Single Responsibility Principle.
@@ -21,17 +32,34 @@ import java.util.List;
 @Tag(name = "Shipment API", description = "API for managing shipments")
 public class ShipmentController {
     
+    private static final Logger logger = LoggerFactory.getLogger(ShipmentController.class);
+    
+    private static final String CSV = "text/csv";
+    
+    private static final String NDJSON = "application/x-ndjson";
+    
     @Autowired
-    private ShipmentRepository shipmentRepository;
+    private ShipmentService shipmentService;
+    
+    @Autowired
+    private ShipmentImportService shipmentImportService;
     
     /**
-     * Get all shipments
+     * Get shipments (keyset paginated)
      */
     @GetMapping
-    @Operation(summary = "Get all shipments", description = "Retrieves all shipments")
-    public ResponseEntity<ApiResponse<List<Shipment>>> getAllShipments() {
-        List<Shipment> shipments = shipmentRepository.findAll();
-        ApiResponse<List<Shipment>> apiResponse = new ApiResponse<>(
+    @Operation(summary = "Get shipments", description = "Retrieves shipments newest first using cursor pagination, " +
+            "optionally filtered by status, client and creation range. Pass the returned nextCursor to fetch the following page.")
+    public ResponseEntity<ApiResponse<CursorPage<Shipment>>> getAllShipments(
+            @Parameter(description = "Shipment status") @RequestParam(required = false) Shipment.ShipmentStatus status,
+            @Parameter(description = "Client name") @RequestParam(required = false) String clientName,
+            @Parameter(description = "Created at or after (ISO date-time)") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdFrom,
+            @Parameter(description = "Created before (ISO date-time)") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdTo,
+            @Parameter(description = "Linked to an invoice") @RequestParam(required = false) Boolean invoiced,
+            @Parameter(description = "Opaque cursor returned by the previous page") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Page size") @RequestParam(required = false) Integer size) {
+        CursorPage<Shipment> shipments = shipmentService.getShipments(status, clientName, createdFrom, createdTo, invoiced, cursor, size);
+        ApiResponse<CursorPage<Shipment>> apiResponse = new ApiResponse<>(
             true,
             "Shipments retrieved successfully",
             shipments
@@ -40,15 +68,22 @@ public class ShipmentController {
     }
     
     /**
-     * Get shipments by status
+     * Get shipments by status (keyset paginated)
      */
     @GetMapping("/status/{status}")
-    @Operation(summary = "Get shipments by status", description = "Retrieves shipments filtered by status")
-    public ResponseEntity<ApiResponse<List<Shipment>>> getShipmentsByStatus(
-            @Parameter(description = "Shipment status") @PathVariable String status) {
-        Shipment.ShipmentStatus shipmentStatus = Shipment.ShipmentStatus.valueOf(status.toUpperCase());
-        List<Shipment> shipments = shipmentRepository.findByStatusOrderByCreatedAtDesc(shipmentStatus);
-        ApiResponse<List<Shipment>> apiResponse = new ApiResponse<>(
+    @Operation(summary = "Get shipments by status", description = "Retrieves shipments filtered by status, newest first using cursor pagination")
+    public ResponseEntity<ApiResponse<CursorPage<Shipment>>> getShipmentsByStatus(
+            @Parameter(description = "Shipment status") @PathVariable String status,
+            @Parameter(description = "Opaque cursor returned by the previous page") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Page size") @RequestParam(required = false) Integer size) {
+        Shipment.ShipmentStatus shipmentStatus;
+        try {
+            shipmentStatus = Shipment.ShipmentStatus.valueOf(status.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException("Unknown shipment status: " + status);
+        }
+        CursorPage<Shipment> shipments = shipmentService.getShipments(shipmentStatus, null, null, null, null, cursor, size);
+        ApiResponse<CursorPage<Shipment>> apiResponse = new ApiResponse<>(
             true,
             "Shipments retrieved successfully",
             shipments
@@ -57,18 +92,75 @@ public class ShipmentController {
     }
     
     /**
-     * Get unlinked shipments
+     * Get unlinked shipments (keyset paginated)
      */
     @GetMapping("/unlinked")
-    @Operation(summary = "Get unlinked shipments", description = "Retrieves shipments not yet linked to any invoice")
-    public ResponseEntity<ApiResponse<List<Shipment>>> getUnlinkedShipments() {
-        List<Shipment> shipments = shipmentRepository.findUnlinkedShipments();
-        ApiResponse<List<Shipment>> apiResponse = new ApiResponse<>(
+    @Operation(summary = "Get unlinked shipments", description = "Retrieves shipments not yet linked to any invoice, " +
+            "newest first using cursor pagination")
+    public ResponseEntity<ApiResponse<CursorPage<Shipment>>> getUnlinkedShipments(
+            @Parameter(description = "Client name") @RequestParam(required = false) String clientName,
+            @Parameter(description = "Opaque cursor returned by the previous page") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Page size") @RequestParam(required = false) Integer size) {
+        CursorPage<Shipment> shipments = shipmentService.getShipments(null, clientName, null, null, false, cursor, size);
+        ApiResponse<CursorPage<Shipment>> apiResponse = new ApiResponse<>(
             true,
             "Unlinked shipments retrieved successfully",
             shipments
         );
         return ResponseEntity.ok(apiResponse);
     }
+    
+    /**
+     * Check whether a tracking number is already taken
+     */
+    @GetMapping("/tracking-numbers/exists")
+    @Operation(summary = "Check a tracking number", description = "Tells whether a shipment with this tracking number " +
+            "already exists, so intake can reject a duplicate before submitting it")
+    public ResponseEntity<ApiResponse<Boolean>> trackingNumberExists(
+            @Parameter(description = "Tracking number") @RequestParam String trackingNumber) {
+        boolean exists = shipmentService.trackingNumberExists(trackingNumber);
+        ApiResponse<Boolean> apiResponse = new ApiResponse<>(
+            true,
+            exists ? "Tracking number already exists" : "Tracking number is available",
+            exists
+        );
+        return ResponseEntity.ok(apiResponse);
+    }
+    
+    /**
+     * Import shipments from a CSV manifest
+     */
+    @PostMapping(value = "/import", consumes = CSV)
+    @Operation(summary = "Import shipments (CSV)", description = "Imports a CSV manifest with a header row naming the columns " +
+            "clientName, originAddress, destinationAddress, totalWeight, totalVolume, trackingNumber and optionally status. " +
+            "Invalid rows and known tracking numbers are skipped and reported.")
+    public ResponseEntity<ApiResponse<ShipmentImportResult>> importShipmentsCsv(
+            HttpServletRequest request,
+            @AuthenticationPrincipal User user) throws IOException {
+        return importShipments(request, ShipmentImportService.Format.CSV, user);
+    }
+    
+    /**
+     * Import shipments from an NDJSON manifest, one shipment per line
+     */
+    @PostMapping(value = "/import", consumes = NDJSON)
+    @Operation(summary = "Import shipments (NDJSON)", description = "Same as the CSV variant, with one shipment object per line")
+    public ResponseEntity<ApiResponse<ShipmentImportResult>> importShipmentsNdjson(
+            HttpServletRequest request,
+            @AuthenticationPrincipal User user) throws IOException {
+        return importShipments(request, ShipmentImportService.Format.NDJSON, user);
+    }
+    
+    private ResponseEntity<ApiResponse<ShipmentImportResult>> importShipments(
+            HttpServletRequest request, ShipmentImportService.Format format, User user) throws IOException {
+        logger.info("Importing {} shipment manifest by user: {}", format, user.getUsername());
+        ShipmentImportResult result = shipmentImportService.importShipments(request.getInputStream(), format, user.getId());
+        ApiResponse<ShipmentImportResult> apiResponse = new ApiResponse<>(
+            result.getFailed() == 0 && result.getDuplicates() == 0,
+            "Imported " + result.getImported() + " of " + result.getTotalRows() + " shipments"
+                + (result.isAborted() ? "; the import stopped at a database error" : ""),
+            result
+        );
+        return ResponseEntity.ok(apiResponse);
+    }
 }
-
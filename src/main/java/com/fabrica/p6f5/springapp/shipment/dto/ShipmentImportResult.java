@@ -0,0 +1,38 @@
+package com.fabrica.p6f5.springapp.shipment.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DTO for the outcome of a shipment import.
+ * Counters cover every row; the error list is capped and errorsTruncated tells whether rows were left out.
+ * aborted is set when a chunk could not be written and the rest of the upload was not read.
+ */
+@Data
+@NoArgsConstructor
+public class ShipmentImportResult {
+    
+    private long totalRows;
+    private long imported;
+    private long duplicates;
+    private long failed;
+    private List<RowError> errors = new ArrayList<>();
+    private boolean errorsTruncated;
+    private boolean aborted;
+    
+    /**
+     * A rejected row: the line it starts on in the upload and why it was rejected
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RowError {
+        private long line;
+        private String trackingNumber;
+        private String message;
+    }
+}
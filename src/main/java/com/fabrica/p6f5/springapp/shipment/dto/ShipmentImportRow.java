@@ -0,0 +1,48 @@
+package com.fabrica.p6f5.springapp.shipment.dto;
+
+import com.fabrica.p6f5.springapp.shipment.model.Shipment;
+import jakarta.validation.constraints.Digits;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * DTO for one shipment of an import manifest (an NDJSON line or a CSV record).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShipmentImportRow {
+    
+    @NotBlank(message = "Client name is required")
+    @Size(max = 255, message = "Client name must be at most 255 characters")
+    private String clientName;
+    
+    @NotBlank(message = "Origin address is required")
+    private String originAddress;
+    
+    @NotBlank(message = "Destination address is required")
+    private String destinationAddress;
+    
+    @NotNull(message = "Total weight is required")
+    @Positive(message = "Total weight must be positive")
+    @Digits(integer = 8, fraction = 2, message = "Total weight must have at most 8 integer digits and 2 decimals")
+    private BigDecimal totalWeight;
+    
+    @NotNull(message = "Total volume is required")
+    @Positive(message = "Total volume must be positive")
+    @Digits(integer = 8, fraction = 2, message = "Total volume must have at most 8 integer digits and 2 decimals")
+    private BigDecimal totalVolume;
+    
+    @NotBlank(message = "Tracking number is required")
+    @Size(max = 100, message = "Tracking number must be at most 100 characters")
+    private String trackingNumber;
+    
+    private Shipment.ShipmentStatus status;
+}
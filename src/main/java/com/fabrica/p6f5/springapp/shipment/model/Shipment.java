@@ -56,6 +56,12 @@ public class Shipment {
     @Column(name = "tracking_number", unique = true, length = 100)
     private String trackingNumber;
     
+    /**
+     * Whether the shipment is linked to an invoice; kept in sync by the invoice link and unlink paths
+     */
+    @Column(name = "invoiced", nullable = false)
+    private Boolean invoiced = false;
+    
     @Column(name = "created_by")
     private Long createdBy;
     
@@ -2,9 +2,13 @@ package com.fabrica.p6f5.springapp.shipment.repository;
 
 import com.fabrica.p6f5.springapp.shipment.model.Shipment;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,7 +17,7 @@ import java.util.Optional;
  * Defines data access operations for shipments.
  */
 @Repository
-public interface ShipmentRepository extends JpaRepository<Shipment, Long> {
+public interface ShipmentRepository extends JpaRepository<Shipment, Long>, JpaSpecificationExecutor<Shipment> {
     
     /**
      * Find a shipment by tracking number.
@@ -56,12 +60,27 @@ public interface ShipmentRepository extends JpaRepository<Shipment, Long> {
     List<Shipment> findByCreatedByOrderByCreatedAtDesc(Long userId);
     
     /**
-     * Find shipments not yet linked to any invoice.
+     * Set the invoiced flag of the given shipments with a single UPDATE of that column only,
+     * so a concurrent change to the rest of a shipment row is not overwritten.
+     * Pending link inserts are flushed first.
      * 
-     * @return list of unlinked shipments
+     * @param ids the shipment IDs that were just linked to an invoice
+     * @return number of updated rows
      */
-    @Query("SELECT s FROM Shipment s WHERE s.id NOT IN " +
-           "(SELECT DISTINCT is.shipment.id FROM com.fabrica.p6f5.springapp.invoice.model.InvoiceShipment is)")
-    List<Shipment> findUnlinkedShipments();
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Shipment s SET s.invoiced = true WHERE s.id IN :ids AND s.invoiced = false")
+    int markInvoiced(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * Clear the invoiced flag of the given shipments that no invoice links anymore.
+     * Pending link deletions are flushed first so the check sees them.
+     * 
+     * @param ids the shipment IDs whose link was just removed
+     * @return number of updated rows
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Shipment s SET s.invoiced = false WHERE s.id IN :ids AND NOT EXISTS " +
+           "(SELECT 1 FROM com.fabrica.p6f5.springapp.invoice.model.InvoiceShipment is WHERE is.shipment.id = s.id)")
+    int clearInvoicedIfUnlinked(@Param("ids") Collection<Long> ids);
 }
 
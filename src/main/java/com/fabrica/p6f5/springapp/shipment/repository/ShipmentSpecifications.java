@@ -0,0 +1,69 @@
+package com.fabrica.p6f5.springapp.shipment.repository;
+
+import com.fabrica.p6f5.springapp.dto.KeysetCursor;
+import com.fabrica.p6f5.springapp.shipment.model.Shipment;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+
+/**
+ * Composable shipment filters for {@link ShipmentRepository#findBy}.
+ * A null argument yields a null specification, which Spring Data ignores when combined.
+ */
+public final class ShipmentSpecifications {
+    
+    /**
+     * Keyset order; matches the (created_at DESC, shipment_id DESC) indexes
+     */
+    public static final Sort KEYSET_SORT = Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id"));
+    
+    private ShipmentSpecifications() {
+    }
+    
+    public static Specification<Shipment> hasStatus(Shipment.ShipmentStatus status) {
+        return status == null ? null : (root, query, cb) -> cb.equal(root.get("status"), status);
+    }
+    
+    public static Specification<Shipment> hasClientName(String clientName) {
+        return clientName == null || clientName.isBlank() ? null
+            : (root, query, cb) -> cb.equal(root.get("clientName"), clientName);
+    }
+    
+    /**
+     * Linked (true) or not yet linked (false) to an invoice; the unlinked case is served by a partial index
+     */
+    public static Specification<Shipment> isInvoiced(Boolean invoiced) {
+        return invoiced == null ? null : (root, query, cb) -> cb.equal(root.get("invoiced"), invoiced);
+    }
+    
+    /**
+     * Created at or after the given instant
+     */
+    public static Specification<Shipment> createdFrom(LocalDateTime from) {
+        return from == null ? null : (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("createdAt"), from);
+    }
+    
+    /**
+     * Created strictly before the given instant
+     */
+    public static Specification<Shipment> createdBefore(LocalDateTime to) {
+        return to == null ? null : (root, query, cb) -> cb.lessThan(root.get("createdAt"), to);
+    }
+    
+    /**
+     * Rows after a keyset position in {@link #KEYSET_SORT} order.
+     * The criteria API has no row-value comparison, so the redundant {@code created_at <= ?}
+     * bound is what lets the database start the index scan at the cursor.
+     */
+    public static Specification<Shipment> after(KeysetCursor cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.and(
+            cb.lessThanOrEqualTo(root.get("createdAt"), cursor.createdAt()),
+            cb.or(
+                cb.lessThan(root.get("createdAt"), cursor.createdAt()),
+                cb.and(cb.equal(root.get("createdAt"), cursor.createdAt()), cb.lessThan(root.get("id"), cursor.id()))));
+    }
+}
@@ -0,0 +1,114 @@
+package com.fabrica.p6f5.springapp.shipment.service;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental RFC 4180 record reader: quoted fields may contain commas, doubled quotes and line breaks.
+ * Only the current record is held in memory, and a single field is capped so that a stray quote
+ * cannot pull the rest of the upload into one value.
+ */
+class CsvRecordReader {
+    
+    private final PushbackReader reader;
+    
+    private final int maxFieldLength;
+    
+    private long line = 1;
+    
+    private long recordLine;
+    
+    CsvRecordReader(Reader reader, int maxFieldLength) {
+        this.reader = new PushbackReader(reader, 1);
+        this.maxFieldLength = maxFieldLength;
+    }
+    
+    /**
+     * Read the next record
+     *
+     * @return the fields of the record, or null at the end of the input
+     * @throws MalformedRecordException if a quoted field is not terminated or a field is too long
+     */
+    List<String> next() throws IOException {
+        recordLine = line;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean empty = true;
+        while (true) {
+            int c = reader.read();
+            if (c == -1) {
+                if (quoted) {
+                    throw new MalformedRecordException("Unterminated quoted field");
+                }
+                if (empty) {
+                    return null;
+                }
+                fields.add(field.toString());
+                return fields;
+            }
+            empty = false;
+            if (quoted) {
+                if (c == '"') {
+                    int n = reader.read();
+                    if (n == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        unread(n);
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r' || c == '\n') {
+                if (c == '\r') {
+                    int n = reader.read();
+                    if (n != '\n') {
+                        unread(n);
+                    }
+                }
+                line++;
+                fields.add(field.toString());
+                return fields;
+            } else {
+                field.append((char) c);
+            }
+            if (field.length() > maxFieldLength) {
+                throw new MalformedRecordException("Field longer than " + maxFieldLength + " characters");
+            }
+        }
+    }
+    
+    /**
+     * Line on which the record last returned by {@link #next()} starts (1-based)
+     */
+    long recordLine() {
+        return recordLine;
+    }
+    
+    private void unread(int c) throws IOException {
+        if (c != -1) {
+            reader.unread(c);
+        }
+    }
+    
+    /**
+     * The input is not valid CSV from this record on; reading cannot resume
+     */
+    static class MalformedRecordException extends IOException {
+        MalformedRecordException(String message) {
+            super(message);
+        }
+    }
+}
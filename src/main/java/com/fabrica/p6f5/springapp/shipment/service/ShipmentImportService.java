@@ -0,0 +1,503 @@
+package com.fabrica.p6f5.springapp.shipment.service;
+
+import com.fabrica.p6f5.springapp.exception.BusinessException;
+import com.fabrica.p6f5.springapp.shipment.dto.ShipmentImportResult;
+import com.fabrica.p6f5.springapp.shipment.dto.ShipmentImportRow;
+import com.fabrica.p6f5.springapp.shipment.model.Shipment;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.annotation.PostConstruct;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Shipment Import Service following Single Responsibility Principle.
+ * Imports CSV or NDJSON shipment manifests. The upload is parsed one row at a time and valid
+ * rows are written in chunks: each chunk checks its tracking numbers against the database with
+ * one query and inserts the new shipments with one multi-row INSERT ... ON CONFLICT DO NOTHING,
+ * in its own transaction. Heap use is bounded by the chunk size and the error report cap,
+ * whatever the size of the upload.
+ */
+@Service
+public class ShipmentImportService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ShipmentImportService.class);
+    
+    private static final String EXISTING_SQL = "SELECT tracking_number FROM shipments WHERE tracking_number = ANY(?)";
+    
+    private static final String INSERT_SQL =
+            "INSERT INTO shipments (client_name, origin_address, destination_address, total_weight, total_volume, " +
+            "shipment_status, tracking_number, created_by, created_at, updated_at) " +
+            "SELECT r.client_name, r.origin_address, r.destination_address, r.total_weight, r.total_volume, " +
+            "r.shipment_status, r.tracking_number, ?::bigint, ?, ? " +
+            "FROM unnest(?::text[], ?::text[], ?::text[], ?::numeric[], ?::numeric[], ?::text[], ?::text[]) " +
+            "AS r(client_name, origin_address, destination_address, total_weight, total_volume, shipment_status, tracking_number) " +
+            "ON CONFLICT (tracking_number) DO NOTHING RETURNING tracking_number";
+    
+    private static final List<String> REQUIRED_COLUMNS = List.of(
+        "clientName", "originAddress", "destinationAddress", "totalWeight", "totalVolume", "trackingNumber");
+    
+    private static final int MAX_FIELD_LENGTH = 10_000;
+    
+    /**
+     * Supported manifest formats
+     */
+    public enum Format {
+        CSV,
+        NDJSON
+    }
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private MappingJackson2HttpMessageConverter jsonConverter;
+    
+    @Autowired
+    private Validator validator;
+    
+    @Autowired
+    private TrackingNumberFilter trackingNumberFilter;
+    
+    @Value("${shipment.import.batch-size:1000}")
+    private int batchSize;
+    
+    @Value("${shipment.import.max-errors:1000}")
+    private int maxErrors;
+    
+    private ObjectReader rowReader;
+    
+    private TransactionTemplate chunkTransaction;
+    
+    @PostConstruct
+    void init() {
+        rowReader = jsonConverter.getObjectMapper().readerFor(ShipmentImportRow.class);
+        chunkTransaction = new TransactionTemplate(transactionManager);
+    }
+    
+    /**
+     * Import a shipment manifest.
+     * Rows that fail parsing or validation, and rows whose tracking number already exists, are
+     * reported and skipped. Chunks are committed as they are written: when a chunk fails to write,
+     * its rows are reported as failed, the rest of the upload is not read and the result still
+     * reports the chunks written before it.
+     * 
+     * @param input the manifest, UTF-8 encoded
+     * @param format the manifest format
+     * @param createdBy the importing user ID
+     * @return the import counters and the (capped) per-row error report
+     */
+    public ShipmentImportResult importShipments(InputStream input, Format format, Long createdBy) throws IOException {
+        Report report = new Report(maxErrors);
+        List<ParsedRow> chunk = new ArrayList<>(batchSize);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            RowSource source = format == Format.CSV ? csvSource(reader) : ndjsonSource(reader);
+            try {
+                ParsedRow parsed;
+                while ((parsed = source.next()) != null) {
+                    report.totalRows++;
+                    ShipmentImportRow row = parsed.row();
+                    if (parsed.error() != null) {
+                        report.reject(parsed.line(), null, parsed.error());
+                        continue;
+                    }
+                    row.setTrackingNumber(row.getTrackingNumber() != null ? row.getTrackingNumber().trim() : null);
+                    List<String> violations = validator.validate(row).stream()
+                        .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.toList());
+                    if (!violations.isEmpty()) {
+                        report.reject(parsed.line(), row.getTrackingNumber(), String.join("; ", violations));
+                        continue;
+                    }
+                    chunk.add(parsed);
+                    if (chunk.size() == batchSize) {
+                        boolean written = writeChunk(chunk, createdBy, report);
+                        chunk.clear();
+                        if (!written) {
+                            break;
+                        }
+                    }
+                }
+            } catch (CsvRecordReader.MalformedRecordException e) {
+                report.totalRows++;
+                report.reject(source.line(), null, e.getMessage() + "; the rest of the upload was not read");
+            }
+            if (!chunk.isEmpty()) {
+                writeChunk(chunk, createdBy, report);
+            }
+        }
+        logger.info("Imported {} of {} shipments ({} duplicates, {} failed)",
+            report.imported, report.totalRows, report.duplicates, report.failed);
+        return report.toResult();
+    }
+    
+    /**
+     * Write one chunk of valid rows: drop tracking numbers repeated within the chunk or already
+     * stored, then insert the rest. Rows lost to a concurrent insert of the same tracking number
+     * are caught by ON CONFLICT and reported as duplicates too.
+     * When the chunk fails to write, its transaction is rolled back and its rows are reported as failed.
+     * 
+     * @return false when the chunk could not be written and the import should stop
+     */
+    private boolean writeChunk(List<ParsedRow> chunk, Long createdBy, Report report) {
+        Map<String, ParsedRow> byTrackingNumber = new LinkedHashMap<>();
+        for (ParsedRow parsed : chunk) {
+            if (byTrackingNumber.putIfAbsent(parsed.row().getTrackingNumber(), parsed) != null) {
+                report.duplicate(parsed, "Tracking number appears earlier in the upload");
+            }
+        }
+        
+        Set<String> inserted;
+        try {
+            inserted = chunkTransaction.execute(status -> {
+                Set<String> existing = findExisting(byTrackingNumber.keySet());
+                List<ParsedRow> candidates = byTrackingNumber.values().stream()
+                    .filter(parsed -> !existing.contains(parsed.row().getTrackingNumber()))
+                    .collect(Collectors.toList());
+                return insert(candidates, createdBy);
+            });
+        } catch (DataAccessException e) {
+            logger.error("Shipment import chunk of {} rows failed: {}", byTrackingNumber.size(), e.getMessage());
+            report.abort(byTrackingNumber.values(), e.getMostSpecificCause().getMessage());
+            return false;
+        }
+        // Counted only after the commit, so a rolled back chunk is reported as failed alone
+        for (ParsedRow parsed : byTrackingNumber.values()) {
+            if (!inserted.contains(parsed.row().getTrackingNumber())) {
+                report.duplicate(parsed, "Tracking number already exists");
+            }
+        }
+        report.imported += inserted.size();
+        trackingNumberFilter.addAll(inserted);
+        return true;
+    }
+    
+    /**
+     * The subset of the tracking numbers already stored, in one query.
+     * Only the numbers the in-memory filter cannot rule out are sent to the database.
+     * This is a pre-check only: the filter misses numbers inserted by other instances or outside
+     * the import, and those are caught by the unique constraint (ON CONFLICT) in {@link #insert}.
+     */
+    private Set<String> findExisting(Collection<String> trackingNumbers) {
+        String[] values = trackingNumbers.stream()
+            .filter(trackingNumberFilter::mightExist)
+            .toArray(String[]::new);
+        if (values.length == 0) {
+            return Set.of();
+        }
+        Set<String> existing = new HashSet<>(jdbcTemplate.query(EXISTING_SQL,
+            ps -> ps.setArray(1, ps.getConnection().createArrayOf("text", values)),
+            (rs, rowNum) -> rs.getString(1)));
+        for (int i = existing.size(); i < values.length; i++) {
+            trackingNumberFilter.recordFalsePositive();
+        }
+        return existing;
+    }
+    
+    /**
+     * Insert the rows as one statement, with one array parameter per column
+     * 
+     * @return the tracking numbers actually inserted
+     */
+    private Set<String> insert(List<ParsedRow> rows, Long createdBy) {
+        if (rows.isEmpty()) {
+            return Set.of();
+        }
+        int size = rows.size();
+        String[] clientNames = new String[size];
+        String[] origins = new String[size];
+        String[] destinations = new String[size];
+        BigDecimal[] weights = new BigDecimal[size];
+        BigDecimal[] volumes = new BigDecimal[size];
+        String[] statuses = new String[size];
+        String[] trackingNumbers = new String[size];
+        for (int i = 0; i < size; i++) {
+            ShipmentImportRow row = rows.get(i).row();
+            clientNames[i] = row.getClientName();
+            origins[i] = row.getOriginAddress();
+            destinations[i] = row.getDestinationAddress();
+            weights[i] = row.getTotalWeight();
+            volumes[i] = row.getTotalVolume();
+            statuses[i] = (row.getStatus() != null ? row.getStatus() : Shipment.ShipmentStatus.PENDING).name();
+            trackingNumbers[i] = row.getTrackingNumber();
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        return new HashSet<>(jdbcTemplate.query(INSERT_SQL, ps -> {
+            if (createdBy != null) {
+                ps.setLong(1, createdBy);
+            } else {
+                ps.setNull(1, Types.BIGINT);
+            }
+            ps.setTimestamp(2, now);
+            ps.setTimestamp(3, now);
+            ps.setArray(4, ps.getConnection().createArrayOf("text", clientNames));
+            ps.setArray(5, ps.getConnection().createArrayOf("text", origins));
+            ps.setArray(6, ps.getConnection().createArrayOf("text", destinations));
+            ps.setArray(7, ps.getConnection().createArrayOf("numeric", weights));
+            ps.setArray(8, ps.getConnection().createArrayOf("numeric", volumes));
+            ps.setArray(9, ps.getConnection().createArrayOf("text", statuses));
+            ps.setArray(10, ps.getConnection().createArrayOf("text", trackingNumbers));
+        }, (rs, rowNum) -> rs.getString(1)));
+    }
+    
+    /**
+     * One row per NDJSON line; blank lines are skipped
+     */
+    private RowSource ndjsonSource(BufferedReader reader) {
+        return new RowSource() {
+            private long line;
+            
+            @Override
+            public ParsedRow next() throws IOException {
+                String text;
+                while ((text = reader.readLine()) != null) {
+                    line++;
+                    if (text.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        ShipmentImportRow row = rowReader.readValue(text);
+                        // A bare null literal binds to no row at all
+                        return row != null
+                            ? new ParsedRow(line, row, null)
+                            : new ParsedRow(line, null, "Invalid JSON: expected a shipment object");
+                    } catch (JsonProcessingException e) {
+                        return new ParsedRow(line, null, "Invalid JSON: " + e.getOriginalMessage());
+                    }
+                }
+                return null;
+            }
+            
+            @Override
+            public long line() {
+                return line;
+            }
+        };
+    }
+    
+    /**
+     * One row per CSV record after a header naming the columns; blank records are skipped.
+     * Column names are matched ignoring case and underscores, so trackingNumber and tracking_number both work.
+     */
+    private RowSource csvSource(BufferedReader reader) throws IOException {
+        CsvRecordReader records = new CsvRecordReader(reader, MAX_FIELD_LENGTH);
+        List<String> header;
+        try {
+            header = records.next();
+        } catch (CsvRecordReader.MalformedRecordException e) {
+            throw new BusinessException("Invalid CSV header: " + e.getMessage());
+        }
+        if (header == null) {
+            throw new BusinessException("The CSV upload is empty");
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            // A UTF-8 byte order mark ends up in front of the first column name
+            columns.put(normalizeColumn(header.get(i).replace("\uFEFF", "")), i);
+        }
+        List<String> missing = REQUIRED_COLUMNS.stream()
+            .filter(column -> !columns.containsKey(normalizeColumn(column)))
+            .collect(Collectors.toList());
+        if (!missing.isEmpty()) {
+            throw new BusinessException("The CSV header is missing columns: " + missing);
+        }
+        
+        return new RowSource() {
+            @Override
+            public ParsedRow next() throws IOException {
+                List<String> fields;
+                while ((fields = records.next()) != null) {
+                    if (fields.size() == 1 && fields.get(0).isBlank()) {
+                        continue;
+                    }
+                    long line = records.recordLine();
+                    if (fields.size() != header.size()) {
+                        return new ParsedRow(line, null,
+                            "Expected " + header.size() + " fields but found " + fields.size());
+                    }
+                    try {
+                        ShipmentImportRow row = new ShipmentImportRow(
+                            text(fields, columns, "clientName"),
+                            text(fields, columns, "originAddress"),
+                            text(fields, columns, "destinationAddress"),
+                            decimal(fields, columns, "totalWeight"),
+                            decimal(fields, columns, "totalVolume"),
+                            text(fields, columns, "trackingNumber"),
+                            status(fields, columns));
+                        return new ParsedRow(line, row, null);
+                    } catch (IllegalArgumentException e) {
+                        return new ParsedRow(line, null, e.getMessage());
+                    }
+                }
+                return null;
+            }
+            
+            @Override
+            public long line() {
+                return records.recordLine();
+            }
+        };
+    }
+    
+    private static String normalizeColumn(String name) {
+        return name.trim().replace("_", "").toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Value of a column, null when the column is absent or the field is empty
+     */
+    private static String text(List<String> fields, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(normalizeColumn(column));
+        if (index == null || fields.get(index).isEmpty()) {
+            return null;
+        }
+        return fields.get(index);
+    }
+    
+    private static BigDecimal decimal(List<String> fields, Map<String, Integer> columns, String column) {
+        String value = text(fields, columns, column);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + column + ": " + value);
+        }
+    }
+    
+    private static Shipment.ShipmentStatus status(List<String> fields, Map<String, Integer> columns) {
+        String value = text(fields, columns, "status");
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Shipment.ShipmentStatus.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown status: " + value);
+        }
+    }
+    
+    /**
+     * Pulls rows from the upload one at a time
+     */
+    private interface RowSource {
+        
+        /**
+         * @return the next row, or null at the end of the upload
+         */
+        ParsedRow next() throws IOException;
+        
+        /**
+         * @return the line the source has read up to
+         */
+        long line();
+    }
+    
+    /**
+     * A row of the upload with its line; either the row or the parse error is set
+     */
+    private record ParsedRow(long line, ShipmentImportRow row, String error) {
+    }
+    
+    /**
+     * Running counters and the capped error list of one import
+     */
+    private static class Report {
+        
+        private final int maxErrors;
+        
+        private final List<ShipmentImportResult.RowError> errors = new ArrayList<>();
+        
+        private long totalRows;
+        
+        private long imported;
+        
+        private long duplicates;
+        
+        private long failed;
+        
+        private boolean errorsTruncated;
+        
+        private boolean aborted;
+        
+        Report(int maxErrors) {
+            this.maxErrors = maxErrors;
+        }
+        
+        void reject(long line, String trackingNumber, String message) {
+            failed++;
+            addError(line, trackingNumber, message);
+        }
+        
+        void duplicate(ParsedRow parsed, String message) {
+            duplicates++;
+            addError(parsed.line(), parsed.row().getTrackingNumber(), message);
+        }
+        
+        /**
+         * Fail the rows of a chunk that could not be written, with one error entry for the chunk
+         */
+        void abort(Collection<ParsedRow> rows, String cause) {
+            aborted = true;
+            failed += rows.size();
+            long first = rows.stream().mapToLong(ParsedRow::line).min().orElse(0);
+            long last = rows.stream().mapToLong(ParsedRow::line).max().orElse(0);
+            addError(first, null, "Rows on lines " + first + "-" + last + " could not be written: " + cause
+                + "; the rest of the upload was not read");
+        }
+        
+        private void addError(long line, String trackingNumber, String message) {
+            if (errors.size() < maxErrors) {
+                errors.add(new ShipmentImportResult.RowError(line, trackingNumber, message));
+            } else {
+                errorsTruncated = true;
+            }
+        }
+        
+        ShipmentImportResult toResult() {
+            ShipmentImportResult result = new ShipmentImportResult();
+            result.setTotalRows(totalRows);
+            result.setImported(imported);
+            result.setDuplicates(duplicates);
+            result.setFailed(failed);
+            result.setErrors(errors);
+            result.setErrorsTruncated(errorsTruncated);
+            result.setAborted(aborted);
+            return result;
+        }
+    }
+}
@@ -1,8 +1,26 @@
 package com.fabrica.p6f5.springapp.shipment.service;
 
+import com.fabrica.p6f5.springapp.dto.CursorPage;
+import com.fabrica.p6f5.springapp.dto.KeysetCursor;
+import com.fabrica.p6f5.springapp.exception.BusinessException;
+import com.fabrica.p6f5.springapp.shipment.model.Shipment;
 import com.fabrica.p6f5.springapp.shipment.repository.ShipmentRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static com.fabrica.p6f5.springapp.shipment.repository.ShipmentSpecifications.KEYSET_SORT;
+import static com.fabrica.p6f5.springapp.shipment.repository.ShipmentSpecifications.after;
+import static com.fabrica.p6f5.springapp.shipment.repository.ShipmentSpecifications.createdBefore;
+import static com.fabrica.p6f5.springapp.shipment.repository.ShipmentSpecifications.createdFrom;
+import static com.fabrica.p6f5.springapp.shipment.repository.ShipmentSpecifications.hasClientName;
+import static com.fabrica.p6f5.springapp.shipment.repository.ShipmentSpecifications.hasStatus;
+import static com.fabrica.p6f5.springapp.shipment.repository.ShipmentSpecifications.isInvoiced;
 
 /**
  * Shipment Service following Single Responsibility Principle.
@@ -14,6 +32,83 @@ public class ShipmentService {
     @Autowired
     private ShipmentRepository shipmentRepository;
     
-    // Business logic methods can be added here as needed
+    @Autowired
+    private TrackingNumberFilter trackingNumberFilter;
+    
+    @Value("${shipment.pagination.default-size:20}")
+    private int defaultPageSize;
+    
+    @Value("${shipment.pagination.max-size:100}")
+    private int maxPageSize;
+    
+    /**
+     * Get a page of shipments, newest first, with optional combinable filters.
+     * Pages are read by keyset on (created_at, shipment_id), so each page is an index range scan.
+     * 
+     * @param status only shipments with this status, or null
+     * @param clientName only shipments of this client, or null
+     * @param createdFrom only shipments created at or after this instant, or null
+     * @param createdTo only shipments created before this instant, or null
+     * @param invoiced only shipments linked (true) or not linked (false) to an invoice, or null
+     * @param cursor the nextCursor of the previous page, or null for the first page
+     * @param size the page size, or null for the default
+     * @return the page
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<Shipment> getShipments(Shipment.ShipmentStatus status, String clientName,
+                                             LocalDateTime createdFrom, LocalDateTime createdTo,
+                                             Boolean invoiced, String cursor, Integer size) {
+        if (createdFrom != null && createdTo != null && !createdFrom.isBefore(createdTo)) {
+            throw new BusinessException("createdFrom must be before createdTo");
+        }
+        int pageSize = resolvePageSize(size);
+        KeysetCursor position = (cursor == null || cursor.isBlank()) ? null : KeysetCursor.decode(cursor);
+        
+        Specification<Shipment> spec = Specification.where(hasStatus(status))
+            .and(hasClientName(clientName))
+            .and(createdFrom(createdFrom))
+            .and(createdBefore(createdTo))
+            .and(isInvoiced(invoiced))
+            .and(after(position));
+        // Fetch one extra row to know whether another page exists without a count query
+        List<Shipment> rows = shipmentRepository.findBy(spec, query -> query.sortBy(KEYSET_SORT).limit(pageSize + 1).all());
+        return CursorPage.fromRows(rows, pageSize, shipment -> new KeysetCursor(shipment.getCreatedAt(), shipment.getId()));
+    }
+    
+    /**
+     * Check whether a tracking number is already taken, for intake clients that validate a number
+     * before submitting it. Numbers the in-memory filter knows to be new skip the database probe.
+     * This is a pre-check only: the filter misses numbers inserted by other instances since its
+     * warm-up, and those are still rejected by the unique constraint when the shipment is imported.
+     * 
+     * @param trackingNumber the tracking number
+     * @return true if a shipment with this tracking number exists
+     */
+    @Transactional(readOnly = true)
+    public boolean trackingNumberExists(String trackingNumber) {
+        if (trackingNumber == null || trackingNumber.isBlank()) {
+            throw new BusinessException("Tracking number is required");
+        }
+        if (!trackingNumberFilter.mightExist(trackingNumber)) {
+            return false;
+        }
+        boolean exists = shipmentRepository.existsByTrackingNumber(trackingNumber);
+        if (!exists) {
+            trackingNumberFilter.recordFalsePositive();
+        }
+        return exists;
+    }
+    
+    /**
+     * Clamp the requested page size to the configured bounds
+     */
+    private int resolvePageSize(Integer size) {
+        if (size == null) {
+            return defaultPageSize;
+        }
+        if (size < 1) {
+            throw new BusinessException("Page size must be at least 1");
+        }
+        return Math.min(size, maxPageSize);
+    }
 }
-
@@ -0,0 +1,134 @@
+package com.fabrica.p6f5.springapp.shipment.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Bloom filter of tracking numbers.
+ * Sized from the expected number of insertions and the target false-positive rate; the k bit
+ * positions of a value come from two 64-bit hashes (Kirsch-Mitzenmacher double hashing), and bits
+ * are set with compare-and-set so lookups and insertions can run concurrently without locking.
+ * A negative answer is exact; a positive answer may be a false positive.
+ */
+public class TrackingNumberBloomFilter {
+    
+    private static final double LN2 = Math.log(2);
+    
+    private final AtomicLongArray words;
+    
+    private final long bitCount;
+    
+    private final int hashCount;
+    
+    private final AtomicLong bitsSet = new AtomicLong();
+    
+    /**
+     * @param expectedInsertions number of values the filter is sized for
+     * @param falsePositiveRate target false-positive rate once that many values are in, between 0 and 1
+     */
+    public TrackingNumberBloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions < 1) {
+            throw new IllegalArgumentException("Expected insertions must be at least 1");
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("False-positive rate must be between 0 and 1");
+        }
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (LN2 * LN2));
+        long wordCount = Math.min((bits + 63) / 64, Integer.MAX_VALUE - 8);
+        this.words = new AtomicLongArray((int) wordCount);
+        this.bitCount = wordCount * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * LN2));
+    }
+    
+    /**
+     * Add a value
+     * 
+     * @return true if a bit changed, i.e. the value was certainly not in the filter before
+     */
+    public boolean put(String value) {
+        long h1 = hash(value);
+        long h2 = fmix64(h1 ^ 0x9E3779B97F4A7C15L);
+        boolean changed = false;
+        for (int i = 0; i < hashCount; i++) {
+            changed |= setBit(index(h1 + i * h2));
+        }
+        return changed;
+    }
+    
+    /**
+     * @return false if the value was certainly never added, true if it may have been
+     */
+    public boolean mightContain(String value) {
+        long h1 = hash(value);
+        long h2 = fmix64(h1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashCount; i++) {
+            long index = index(h1 + i * h2);
+            if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * False-positive rate at the current fill: the chance that k random bits are all set
+     */
+    public double expectedFalsePositiveRate() {
+        return Math.pow((double) bitsSet.get() / bitCount, hashCount);
+    }
+    
+    /**
+     * Size of the bit array in bytes
+     */
+    public long memoryBytes() {
+        return bitCount / 8;
+    }
+    
+    public long bitCount() {
+        return bitCount;
+    }
+    
+    public int hashCount() {
+        return hashCount;
+    }
+    
+    private long index(long combinedHash) {
+        return (combinedHash & Long.MAX_VALUE) % bitCount;
+    }
+    
+    private boolean setBit(long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long current;
+        do {
+            current = words.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(word, current, current | mask));
+        bitsSet.incrementAndGet();
+        return true;
+    }
+    
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units, finished with the MurmurHash3 mixer
+     * so that similar tracking numbers spread over the whole range
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return fmix64(hash);
+    }
+    
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
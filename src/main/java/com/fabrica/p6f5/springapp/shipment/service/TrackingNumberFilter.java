@@ -0,0 +1,158 @@
+package com.fabrica.p6f5.springapp.shipment.service;
+
+import com.fabrica.p6f5.springapp.config.BackgroundExecutors;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracking Number Filter following Single Responsibility Principle.
+ * Answers "is this tracking number possibly taken?" from memory, so intake can skip the
+ * database probe for numbers that are certainly new. The filter is warmed in the background
+ * at startup by streaming every stored tracking number, and updated as shipments are inserted;
+ * until the warm-up completes (or when it is disabled or the warm-up failed) every number is
+ * reported as possibly taken, so callers always fall through to the database.
+ * <p>
+ * Only inserts made by this instance are added after the warm-up. The unique constraint on
+ * tracking_number stays the authority: a number inserted by another instance can still be
+ * reported as new here, and the insert then loses on the constraint.
+ */
+@Component
+public class TrackingNumberFilter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(TrackingNumberFilter.class);
+    
+    private static final String SCAN_SQL = "SELECT tracking_number FROM shipments WHERE tracking_number IS NOT NULL";
+    
+    private final TrackingNumberBloomFilter bloomFilter;
+    
+    private final boolean enabled;
+    
+    private final DataSource dataSource;
+    
+    private final PlatformTransactionManager transactionManager;
+    
+    private final BackgroundExecutors backgroundExecutors;
+    
+    private final int fetchSize;
+    
+    private final Counter falsePositives;
+    
+    private final AtomicLong probesSkipped = new AtomicLong();
+    
+    private volatile boolean ready;
+    
+    public TrackingNumberFilter(
+            MeterRegistry meterRegistry,
+            DataSource dataSource,
+            PlatformTransactionManager transactionManager,
+            BackgroundExecutors backgroundExecutors,
+            @Value("${shipment.tracking-filter.enabled:true}") boolean enabled,
+            @Value("${shipment.tracking-filter.expected-insertions:5000000}") long expectedInsertions,
+            @Value("${shipment.tracking-filter.false-positive-rate:0.01}") double falsePositiveRate,
+            @Value("${shipment.tracking-filter.warmup-fetch-size:5000}") int fetchSize) {
+        this.enabled = enabled;
+        this.dataSource = dataSource;
+        this.transactionManager = transactionManager;
+        this.backgroundExecutors = backgroundExecutors;
+        this.fetchSize = fetchSize;
+        this.bloomFilter = new TrackingNumberBloomFilter(enabled ? expectedInsertions : 1, falsePositiveRate);
+        
+        Gauge.builder("shipment.tracking.filter.false.positive.rate", bloomFilter, TrackingNumberBloomFilter::expectedFalsePositiveRate)
+                .description("Expected false-positive rate of the tracking number filter at its current fill")
+                .register(meterRegistry);
+        Gauge.builder("shipment.tracking.filter.memory", bloomFilter, TrackingNumberBloomFilter::memoryBytes)
+                .description("Size of the tracking number filter bit array")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("shipment.tracking.filter.ready", this, filter -> filter.ready ? 1 : 0)
+                .description("Whether the tracking number filter is warm and answering")
+                .register(meterRegistry);
+        Gauge.builder("shipment.tracking.filter.probes.skipped", probesSkipped, AtomicLong::get)
+                .description("Tracking number checks answered without a database probe")
+                .register(meterRegistry);
+        this.falsePositives = Counter.builder("shipment.tracking.filter.false.positives")
+                .description("Tracking numbers reported as possibly taken that the database did not have")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Whether the tracking number may already exist. False means it certainly does not
+     * (as far as this instance knows), so the database probe can be skipped.
+     * 
+     * @param trackingNumber the tracking number
+     * @return true if the database must be checked
+     */
+    public boolean mightExist(String trackingNumber) {
+        if (!ready || bloomFilter.mightContain(trackingNumber)) {
+            return true;
+        }
+        probesSkipped.incrementAndGet();
+        return false;
+    }
+    
+    /**
+     * Record stored tracking numbers. Also applied during the warm-up, so inserts made while
+     * the scan runs are not lost.
+     * 
+     * @param trackingNumbers the inserted tracking numbers
+     */
+    public void addAll(Iterable<String> trackingNumbers) {
+        if (enabled) {
+            trackingNumbers.forEach(bloomFilter::put);
+        }
+    }
+    
+    /**
+     * Record that a number reported as possibly taken turned out to be new
+     */
+    public void recordFalsePositive() {
+        if (ready) {
+            falsePositives.increment();
+        }
+    }
+    
+    /**
+     * Start the warm-up scan without holding up startup
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startWarmUp() {
+        if (enabled) {
+            backgroundExecutors.newThreadFactory("tracking-filter-warmup").newThread(this::warmUp).start();
+        }
+    }
+    
+    private void warmUp() {
+        long start = System.nanoTime();
+        JdbcTemplate cursorJdbcTemplate = new JdbcTemplate(dataSource);
+        cursorJdbcTemplate.setFetchSize(fetchSize);
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        AtomicLong scanned = new AtomicLong();
+        try {
+            // PostgreSQL only streams with a fetch size inside a transaction
+            readOnlyTransaction.executeWithoutResult(status -> cursorJdbcTemplate.query(SCAN_SQL, rs -> {
+                bloomFilter.put(rs.getString(1));
+                scanned.incrementAndGet();
+            }));
+            ready = true;
+            logger.info("Tracking number filter warmed with {} numbers in {} ms: {} bytes, {} hash functions, " +
+                    "expected false-positive rate {}", scanned.get(), (System.nanoTime() - start) / 1_000_000,
+                    bloomFilter.memoryBytes(), bloomFilter.hashCount(), bloomFilter.expectedFalsePositiveRate());
+        } catch (Exception e) {
+            logger.warn("Tracking number filter warm-up failed, every check will go to the database: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,4 @@
+-- Migration V14: Keyset pagination index for invoices
+-- Supports GET /api/v1/invoices ordered by (created_at, invoice_id) descending
+
+CREATE INDEX IF NOT EXISTS idx_invoice_created_id ON invoices(created_at DESC, invoice_id DESC);
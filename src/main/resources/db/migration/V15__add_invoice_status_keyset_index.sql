@@ -0,0 +1,4 @@
+-- Migration V15: Keyset pagination index for invoice summaries filtered by status
+-- Supports GET /api/v1/invoices/status/{status}/summary
+
+CREATE INDEX IF NOT EXISTS idx_invoice_status_created_id ON invoices(invoice_status, created_at DESC, invoice_id DESC);
@@ -0,0 +1,12 @@
+-- Migration V16: Pooled id sequences for invoice, audit and PDF tables
+-- Hibernate reserves blocks of 50 ids per sequence call (allocationSize = 50), which
+-- lets it batch INSERT statements. IDENTITY generation disabled JDBC insert batching.
+-- The BIGSERIAL sequences are reused so plain SQL inserts relying on the column
+-- default keep drawing from the same sequence and can never collide with Hibernate ids.
+
+ALTER SEQUENCE invoices_invoice_id_seq INCREMENT BY 50;
+ALTER SEQUENCE invoice_items_item_id_seq INCREMENT BY 50;
+ALTER SEQUENCE invoice_shipments_invoice_shipment_id_seq INCREMENT BY 50;
+ALTER SEQUENCE audit_logs_audit_log_id_seq INCREMENT BY 50;
+ALTER SEQUENCE invoice_history_history_id_seq INCREMENT BY 50;
+ALTER SEQUENCE pdf_logs_pdf_log_id_seq INCREMENT BY 50;
@@ -0,0 +1,14 @@
+-- Migration V17: Counter rows for invoice numbers and fiscal folios
+-- One row per (series, year). Application instances reserve blocks of numbers by
+-- incrementing next_value and hand them out from memory.
+
+CREATE TABLE IF NOT EXISTS invoice_number_series (
+    series VARCHAR(50) NOT NULL,
+    series_year INTEGER NOT NULL,
+    next_value BIGINT NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT pk_invoice_number_series PRIMARY KEY (series, series_year),
+    CONSTRAINT chk_series_next_value CHECK (next_value > 0)
+);
+
+COMMENT ON TABLE invoice_number_series IS 'Next free number per invoice/fiscal folio series and year';
@@ -0,0 +1,11 @@
+-- Migration V18: Store audit and history changes as JSON Patch (RFC 6902) deltas
+-- audit_logs rows for updates keep only data_patch instead of full old/new copies.
+-- invoice_history stores a full invoice_data keyframe every few versions and a
+-- data_patch against the previous version otherwise.
+
+ALTER TABLE audit_logs ADD COLUMN IF NOT EXISTS data_patch JSONB;
+
+ALTER TABLE invoice_history ADD COLUMN IF NOT EXISTS data_patch JSONB;
+ALTER TABLE invoice_history ALTER COLUMN invoice_data DROP NOT NULL;
+ALTER TABLE invoice_history ADD CONSTRAINT chk_history_data
+    CHECK (invoice_data IS NOT NULL OR data_patch IS NOT NULL);
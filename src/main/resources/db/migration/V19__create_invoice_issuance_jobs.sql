@@ -0,0 +1,34 @@
+-- Migration V19: Bulk draft issuance jobs
+-- A job issues every draft matching its filter in chunks, one transaction per chunk.
+-- last_invoice_id is the keyset cursor: it is advanced in the same transaction that
+-- issues the chunk, so a job resumed after a crash continues with the next chunk.
+
+CREATE TABLE IF NOT EXISTS invoice_issuance_jobs (
+    job_id BIGSERIAL PRIMARY KEY,
+    job_status VARCHAR(50) NOT NULL,
+    client_name VARCHAR(255),
+    invoice_date_from DATE,
+    invoice_date_to DATE,
+    chunk_size INTEGER NOT NULL,
+    last_invoice_id BIGINT NOT NULL DEFAULT 0,
+    issued_count BIGINT NOT NULL DEFAULT 0,
+    skipped_count BIGINT NOT NULL DEFAULT 0,
+    error_message TEXT,
+    requested_by BIGINT,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    finished_at TIMESTAMP,
+    CONSTRAINT fk_issuance_job_user FOREIGN KEY (requested_by) REFERENCES users(user_id) ON DELETE SET NULL,
+    CONSTRAINT chk_issuance_job_status CHECK (job_status IN ('RUNNING', 'COMPLETED', 'FAILED', 'CANCELLED')),
+    CONSTRAINT chk_issuance_job_chunk_size CHECK (chunk_size > 0)
+);
+
+ALTER SEQUENCE invoice_issuance_jobs_job_id_seq INCREMENT BY 50;
+
+CREATE INDEX IF NOT EXISTS idx_issuance_job_status ON invoice_issuance_jobs(job_status);
+
+-- Keyset scan over drafts by id, used by the issuance chunks
+CREATE INDEX IF NOT EXISTS idx_invoice_draft_id ON invoices(invoice_id) WHERE invoice_status = 'DRAFT';
+
+COMMENT ON TABLE invoice_issuance_jobs IS 'Bulk draft issuance jobs and their progress';
+COMMENT ON COLUMN invoice_issuance_jobs.last_invoice_id IS 'Highest invoice id already processed (keyset cursor)';
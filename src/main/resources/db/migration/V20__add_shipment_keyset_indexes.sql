@@ -0,0 +1,11 @@
+-- Migration V20: Keyset pagination indexes for shipments
+-- Support GET /api/v1/shipments ordered by (created_at, shipment_id) descending, alone or
+-- filtered by status or client. The creation range filter narrows the same index range.
+
+CREATE INDEX IF NOT EXISTS idx_shipment_created_id ON shipments(created_at DESC, shipment_id DESC);
+CREATE INDEX IF NOT EXISTS idx_shipment_status_created_id ON shipments(shipment_status, created_at DESC, shipment_id DESC);
+CREATE INDEX IF NOT EXISTS idx_shipment_client_created_id ON shipments(client_name, created_at DESC, shipment_id DESC);
+
+-- Covered by the composite indexes above
+DROP INDEX IF EXISTS idx_shipment_created;
+DROP INDEX IF EXISTS idx_shipment_status;
@@ -0,0 +1,13 @@
+-- Migration V21: Denormalized invoiced flag for the unlinked shipment picker
+-- GET /api/v1/shipments/unlinked used NOT IN over the whole invoice_shipments table on every call.
+-- The flag is maintained by the invoice link and unlink paths, and a partial index holds only
+-- the unlinked shipments in keyset order, so each page is a short index range scan that does not
+-- grow with the number of invoiced shipments.
+
+ALTER TABLE shipments ADD COLUMN IF NOT EXISTS invoiced BOOLEAN NOT NULL DEFAULT FALSE;
+
+UPDATE shipments s SET invoiced = TRUE
+WHERE EXISTS (SELECT 1 FROM invoice_shipments l WHERE l.shipment_id = s.shipment_id);
+
+CREATE INDEX IF NOT EXISTS idx_shipment_unlinked_created_id ON shipments(created_at DESC, shipment_id DESC)
+    WHERE invoiced = FALSE;
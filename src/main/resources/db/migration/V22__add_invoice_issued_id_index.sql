@@ -0,0 +1,4 @@
+-- Migration V22: Keyset scan over issued invoices by id
+-- Supports GET /api/v1/invoices/pdf-export
+
+CREATE INDEX IF NOT EXISTS idx_invoice_issued_id ON invoices(invoice_id) WHERE invoice_status = 'ISSUED';
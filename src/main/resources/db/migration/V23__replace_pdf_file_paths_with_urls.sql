@@ -0,0 +1,11 @@
+-- Migration V23: Replace server-side PDF store paths with download URLs
+-- PDF jobs used to record the absolute path of the stored file (<64 hex chars>.pdf)
+
+UPDATE invoices
+SET pdf_url = '/api/v1/invoices/' || invoice_id || '/pdf'
+WHERE pdf_url ~ '[0-9a-f]{64}\.pdf$';
+
+UPDATE pdf_logs
+SET pdf_url = '/api/v1/invoices/' || invoice_id || '/pdf'
+    || CASE WHEN template_type IS NULL OR template_type = 'STANDARD' THEN '' ELSE '?template=' || template_type END
+WHERE pdf_url ~ '[0-9a-f]{64}\.pdf$';
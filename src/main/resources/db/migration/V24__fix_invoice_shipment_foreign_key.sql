@@ -0,0 +1,8 @@
+-- Migration V24: Point invoice_shipments.shipment_id at shipments
+-- V13 declared fk_inv_ship_shipment against invoices(invoice_id), so a link was only accepted
+-- when an invoice happened to share the shipment's id.
+
+ALTER TABLE invoice_shipments DROP CONSTRAINT IF EXISTS fk_inv_ship_shipment;
+
+ALTER TABLE invoice_shipments
+    ADD CONSTRAINT fk_inv_ship_shipment FOREIGN KEY (shipment_id) REFERENCES shipments(shipment_id) ON DELETE RESTRICT;
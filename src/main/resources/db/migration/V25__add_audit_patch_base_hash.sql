@@ -0,0 +1,6 @@
+-- Migration V25: Fingerprint the state each audit delta was computed against
+-- getAuditLogs rebuilds old/new data by replaying patches over the previous row. Writes that
+-- produce no audit row (e.g. the PDF URL update) break that chain, so each delta records the
+-- SHA-256 of its base state and is only replayed over a state with the same fingerprint.
+
+ALTER TABLE audit_logs ADD COLUMN IF NOT EXISTS base_hash VARCHAR(64);
@@ -0,0 +1,194 @@
+package com.fabrica.p6f5.springapp.audit.service;
+
+import com.fabrica.p6f5.springapp.audit.model.AuditLog;
+import com.fabrica.p6f5.springapp.audit.model.InvoiceHistory;
+import com.fabrica.p6f5.springapp.audit.repository.AuditLogRepository;
+import com.fabrica.p6f5.springapp.audit.repository.InvoiceHistoryRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Covers delta encoding of audit events and the replay that rebuilds full documents
+ * from audit rows and invoice history versions, against mocked repositories.
+ */
+class AuditServiceTests {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private AuditLogRepository auditLogRepository;
+
+	private InvoiceHistoryRepository invoiceHistoryRepository;
+
+	private AuditService auditService;
+
+	private final List<AuditLog> savedLogs = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() {
+		auditLogRepository = mock(AuditLogRepository.class);
+		invoiceHistoryRepository = mock(InvoiceHistoryRepository.class);
+		when(auditLogRepository.save(any(AuditLog.class))).thenAnswer(invocation -> {
+			AuditLog log = invocation.getArgument(0);
+			log.setId((long) savedLogs.size() + 1);
+			log.setCreatedAt(LocalDateTime.of(2024, 1, 1, 0, 0).plusSeconds(savedLogs.size()));
+			savedLogs.add(log);
+			return log;
+		});
+
+		AuditWriteBehindQueue queue = mock(AuditWriteBehindQueue.class);
+		auditService = new AuditService(invoiceHistoryRepository, auditLogRepository, mapper, queue,
+				mock(PlatformTransactionManager.class));
+		ReflectionTestUtils.setField(auditService, "deltaEnabled", true);
+		ReflectionTestUtils.setField(auditService, "keyframeInterval", 3);
+	}
+
+	@Test
+	void changedEventStoresOnlyThePatch() {
+		AuditLog log = auditService.logEvent("Invoice", 1L, AuditLog.AuditAction.UPDATE, 7L,
+				invoice("DRAFT", "100.00"), invoice("DRAFT", "150.00"), "Updated");
+
+		assertThat(log.getOldData()).isNull();
+		assertThat(log.getNewData()).isNull();
+		assertThat(log.getDataPatch()).contains("/total").contains("150.00");
+	}
+
+	@Test
+	void eventWithoutChangesKeepsTheNewData() {
+		Map<String, Object> invoice = invoice("ISSUED", "100.00");
+
+		AuditLog log = auditService.logEvent("Invoice", 1L, AuditLog.AuditAction.ISSUE, 7L,
+				invoice, invoice, "Issued");
+
+		assertThat(log.getDataPatch()).isNull();
+		assertThat(log.getNewData()).contains("ISSUED");
+	}
+
+	@Test
+	void auditLogsAreRebuiltByReplayingPatches() throws Exception {
+		auditService.logEvent("Invoice", 1L, AuditLog.AuditAction.CREATE, 7L,
+				null, invoice("DRAFT", "100.00"), "Created");
+		auditService.logEvent("Invoice", 1L, AuditLog.AuditAction.UPDATE, 7L,
+				invoice("DRAFT", "100.00"), invoice("DRAFT", "150.00"), "Updated");
+		auditService.logEvent("Invoice", 1L, AuditLog.AuditAction.ISSUE, 7L,
+				invoice("DRAFT", "150.00"), invoice("ISSUED", "150.00"), "Issued");
+		when(auditLogRepository.findByEntityTypeAndEntityIdOrderByCreatedAtDesc("Invoice", 1L))
+				.thenReturn(List.of(savedLogs.get(2), savedLogs.get(1), savedLogs.get(0)));
+
+		List<AuditLog> logs = auditService.getAuditLogs("Invoice", 1L);
+
+		assertThat(logs).extracting(AuditLog::getAction).containsExactly(
+				AuditLog.AuditAction.ISSUE, AuditLog.AuditAction.UPDATE, AuditLog.AuditAction.CREATE);
+		assertThat(json(logs.get(1).getOldData())).isEqualTo(mapper.valueToTree(invoice("DRAFT", "100.00")));
+		assertThat(json(logs.get(1).getNewData())).isEqualTo(mapper.valueToTree(invoice("DRAFT", "150.00")));
+		assertThat(json(logs.get(0).getOldData())).isEqualTo(mapper.valueToTree(invoice("DRAFT", "150.00")));
+		assertThat(json(logs.get(0).getNewData())).isEqualTo(mapper.valueToTree(invoice("ISSUED", "150.00")));
+		// Stored rows are not modified by the replay
+		assertThat(savedLogs.get(1).getOldData()).isNull();
+	}
+
+	@Test
+	void patchesAfterAnUnauditedChangeAreReturnedAlone() throws Exception {
+		auditService.logEvent("Invoice", 1L, AuditLog.AuditAction.CREATE, 7L,
+				null, invoice("DRAFT", "100.00"), "Created");
+		// The total changed to 120.00 without an audit row, so this patch's base is not the replayed state
+		auditService.logEvent("Invoice", 1L, AuditLog.AuditAction.UPDATE, 7L,
+				invoice("DRAFT", "120.00"), invoice("DRAFT", "150.00"), "Updated");
+		auditService.logEvent("Invoice", 1L, AuditLog.AuditAction.ISSUE, 7L,
+				invoice("DRAFT", "150.00"), invoice("ISSUED", "150.00"), "Issued");
+		when(auditLogRepository.findByEntityTypeAndEntityIdOrderByCreatedAtDesc("Invoice", 1L))
+				.thenReturn(List.of(savedLogs.get(2), savedLogs.get(1), savedLogs.get(0)));
+
+		List<AuditLog> logs = auditService.getAuditLogs("Invoice", 1L);
+
+		assertThat(logs.get(1).getOldData()).isNull();
+		assertThat(logs.get(1).getNewData()).isNull();
+		assertThat(logs.get(1).getDataPatch()).contains("150.00");
+		assertThat(logs.get(0).getOldData()).isNull();
+		assertThat(logs.get(0).getDataPatch()).contains("ISSUED");
+	}
+
+	@Test
+	void patchThatDoesNotApplyIsReturnedAlone() throws Exception {
+		auditService.logEvent("Invoice", 1L, AuditLog.AuditAction.CREATE, 7L,
+				null, invoice("DRAFT", "100.00"), "Created");
+		AuditLog broken = auditService.logEvent("Invoice", 1L, AuditLog.AuditAction.UPDATE, 7L,
+				invoice("DRAFT", "100.00"), invoice("DRAFT", "150.00"), "Updated");
+		broken.setDataPatch("[{\"op\":\"replace\",\"path\":\"/items/5/quantity\",\"value\":2}]");
+		when(auditLogRepository.findByEntityTypeAndEntityIdOrderByCreatedAtDesc("Invoice", 1L))
+				.thenReturn(List.of(savedLogs.get(1), savedLogs.get(0)));
+
+		List<AuditLog> logs = auditService.getAuditLogs("Invoice", 1L);
+
+		assertThat(logs.get(0).getOldData()).isNull();
+		assertThat(logs.get(0).getDataPatch()).contains("/items/5/quantity");
+		assertThat(json(logs.get(1).getNewData())).isEqualTo(mapper.valueToTree(invoice("DRAFT", "100.00")));
+	}
+
+	@Test
+	void invoiceVersionsAreRebuiltFromTheirKeyframe() throws Exception {
+		List<InvoiceHistory> versions = historyChain(
+				invoice("DRAFT", "100.00"), invoice("DRAFT", "120.00"), invoice("DRAFT", "130.00"),
+				invoice("DRAFT", "140.00"), invoice("ISSUED", "140.00"));
+		when(invoiceHistoryRepository.findByInvoiceIdAndVersionLessThanEqualOrderByVersionDesc(eq(1L), eq(5), any()))
+				.thenReturn(List.of(versions.get(4), versions.get(3)));
+
+		Map<Long, String> all = auditService.getInvoiceVersionData(versions);
+
+		assertThat(all).hasSize(5);
+		assertThat(json(all.get(2L))).isEqualTo(mapper.valueToTree(invoice("DRAFT", "120.00")));
+		assertThat(json(all.get(3L))).isEqualTo(mapper.valueToTree(invoice("DRAFT", "130.00")));
+		assertThat(json(all.get(5L))).isEqualTo(mapper.valueToTree(invoice("ISSUED", "140.00")));
+		assertThat(json(auditService.getInvoiceVersionData(versions.get(4))))
+				.isEqualTo(mapper.valueToTree(invoice("ISSUED", "140.00")));
+	}
+
+	/**
+	 * Build a history chain with a keyframe every three versions, like saveInvoiceHistory does
+	 */
+	private List<InvoiceHistory> historyChain(Map<?, ?>... states) {
+		List<InvoiceHistory> versions = new ArrayList<>();
+		for (int i = 0; i < states.length; i++) {
+			InvoiceHistory history = new InvoiceHistory();
+			history.setId((long) i + 1);
+			history.setInvoiceId(1L);
+			history.setVersion(i + 1);
+			JsonNode current = mapper.valueToTree(states[i]);
+			if (i % 3 == 0) {
+				history.setInvoiceData(current.toString());
+			} else {
+				history.setDataPatch(JsonPatchDiff.diff(mapper.valueToTree(states[i - 1]), current).toString());
+			}
+			versions.add(history);
+		}
+		return versions;
+	}
+
+	private Map<String, Object> invoice(String status, String total) {
+		Map<String, Object> invoice = new LinkedHashMap<>();
+		invoice.put("id", 1);
+		invoice.put("status", status);
+		invoice.put("total", total);
+		invoice.put("items", List.of(Map.of("description", "Freight", "quantity", 1)));
+		return invoice;
+	}
+
+	private JsonNode json(String value) throws Exception {
+		return mapper.readTree(value);
+	}
+}
@@ -0,0 +1,218 @@
+package com.fabrica.p6f5.springapp.audit.service;
+
+import com.fabrica.p6f5.springapp.audit.model.AuditLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Exercises the write-behind queue against a mocked JdbcTemplate: batching, ordering,
+ * id allocation, the overflow policies and the spill file round trip.
+ */
+class AuditWriteBehindQueueTests {
+
+	@TempDir
+	Path tempDir;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private final List<Object[]> insertedRows = new ArrayList<>();
+
+	private final List<Integer> batchSizes = new ArrayList<>();
+
+	private final CountDownLatch writerBlocked = new CountDownLatch(1);
+
+	@BeforeEach
+	void setUp() {
+		jdbcTemplate = mock(JdbcTemplate.class);
+		AtomicLong sequence = new AtomicLong(50);
+		when(jdbcTemplate.queryForObject(anyString(), eq(Long.class)))
+				.thenAnswer(invocation -> sequence.getAndAdd(50));
+		when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+			List<Object[]> rows = invocation.getArgument(1);
+			synchronized (insertedRows) {
+				insertedRows.addAll(rows);
+				batchSizes.add(rows.size());
+			}
+			return new int[rows.size()];
+		});
+	}
+
+	@Test
+	void flushesEveryEventInOrderOnShutdown() {
+		AuditWriteBehindQueue queue = newQueue(10_000, 100, AuditWriteBehindQueue.OverflowPolicy.BLOCK);
+		queue.start();
+
+		for (long i = 1; i <= 1_000; i++) {
+			queue.enqueue(event(i));
+		}
+		queue.stop();
+
+		assertThat(insertedRows).hasSize(1_000);
+		assertThat(insertedRows).extracting(row -> row[2]).containsExactlyElementsOf(
+				LongStream.rangeClosed(1, 1_000).boxed().toList());
+		assertThat(insertedRows).extracting(row -> row[0]).doesNotHaveDuplicates();
+		assertThat(batchSizes).allMatch(size -> size <= 100);
+		assertThat(queue.pendingEvents()).isZero();
+	}
+
+	@Test
+	void failPolicyRejectsEventsWhenFull() throws Exception {
+		AuditWriteBehindQueue queue = newQueue(1, 10, AuditWriteBehindQueue.OverflowPolicy.FAIL);
+		CountDownLatch release = pauseWriter();
+		queue.start();
+		queue.enqueue(event(1L));
+		assertThat(writerBlocked.await(5, TimeUnit.SECONDS)).isTrue();
+
+		queue.enqueue(event(2L));
+		assertThatThrownBy(() -> queue.enqueue(event(3L))).isInstanceOf(IllegalStateException.class);
+
+		release.countDown();
+		queue.stop();
+	}
+
+	@Test
+	void spilledEventsAreReplayedOnStart() throws Exception {
+		AuditWriteBehindQueue queue = newQueue(1, 10, AuditWriteBehindQueue.OverflowPolicy.SPILL);
+		when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+				.thenThrow(new DataAccessResourceFailureException("database down"));
+
+		queue.enqueue(event(1L));
+		queue.enqueue(event(2L));
+
+		Path spillFile = tempDir.resolve("audit-spill.ndjson");
+		assertThat(Files.readAllLines(spillFile)).hasSize(2);
+
+		setUp();
+		AuditWriteBehindQueue restarted = newQueue(1, 10, AuditWriteBehindQueue.OverflowPolicy.SPILL);
+		restarted.start();
+		restarted.stop();
+
+		assertThat(insertedRows).extracting(row -> row[2]).containsExactly(1L, 2L);
+		assertThat(Files.exists(spillFile)).isFalse();
+	}
+
+	@Test
+	void rejectedBatchIsRetriedRowByRowAndOnlyBadRowsAreDeadLettered() throws Exception {
+		AuditWriteBehindQueue queue = newQueue(10, 10, AuditWriteBehindQueue.OverflowPolicy.BLOCK);
+		when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+			List<Object[]> rows = invocation.getArgument(1);
+			if (rows.stream().anyMatch(row -> Long.valueOf(2L).equals(row[2]))) {
+				throw new DataIntegrityViolationException("bad row");
+			}
+			insertedRows.addAll(rows);
+			return new int[rows.size()];
+		});
+
+		queue.start();
+		for (long i = 1; i <= 5; i++) {
+			queue.enqueue(event(i));
+		}
+		queue.stop();
+
+		assertThat(insertedRows).extracting(row -> row[2]).containsExactly(1L, 3L, 4L, 5L);
+		Path deadLetterFile = tempDir.resolve("audit-dead-letter.ndjson");
+		assertThat(Files.readAllLines(deadLetterFile)).singleElement().asString()
+				.contains("bad row").contains("\"entityId\":2");
+		assertThat(tempDir.resolve("audit-spill.ndjson")).doesNotExist();
+
+		// Dead letters are not replayed on the next start
+		insertedRows.clear();
+		setUp();
+		AuditWriteBehindQueue restarted = newQueue(10, 10, AuditWriteBehindQueue.OverflowPolicy.BLOCK);
+		restarted.start();
+		restarted.stop();
+		assertThat(insertedRows).isEmpty();
+		assertThat(deadLetterFile).exists();
+	}
+
+	@Test
+	void eventsLoggedConcurrentlyWithStopAreNeverLeftInTheQueue() throws Exception {
+		AuditWriteBehindQueue queue = newQueue(10_000, 100, AuditWriteBehindQueue.OverflowPolicy.BLOCK);
+		queue.start();
+		AtomicLong entityIds = new AtomicLong();
+		List<Thread> producers = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			Thread producer = new Thread(() -> {
+				for (int i = 0; i < 2_000; i++) {
+					queue.enqueue(event(entityIds.incrementAndGet()));
+				}
+			});
+			producers.add(producer);
+			producer.start();
+		}
+
+		queue.stop();
+		for (Thread producer : producers) {
+			producer.join();
+		}
+
+		assertThat(queue.pendingEvents()).isZero();
+		assertThat(insertedRows).hasSize(8_000);
+	}
+
+	@Test
+	void disabledQueueDoesNotStartAWriter() {
+		AuditWriteBehindQueue queue = new AuditWriteBehindQueue(jdbcTemplate, false, 10, 10, 50,
+				AuditWriteBehindQueue.OverflowPolicy.BLOCK, tempDir.resolve("audit-spill.ndjson").toString(),
+				tempDir.resolve("audit-dead-letter.ndjson").toString());
+		queue.start();
+
+		assertThat(queue.isRunning()).isFalse();
+		verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+	}
+
+	private AuditWriteBehindQueue newQueue(int capacity, int batchSize, AuditWriteBehindQueue.OverflowPolicy policy) {
+		return new AuditWriteBehindQueue(jdbcTemplate, true, capacity, batchSize, 50, policy,
+				tempDir.resolve("audit-spill.ndjson").toString(), tempDir.resolve("audit-dead-letter.ndjson").toString());
+	}
+
+	/**
+	 * Makes inserts block until the returned latch is released, so the queue fills up behind the writer.
+	 * {@link #writerBlocked} opens once the writer is stuck in its first insert.
+	 */
+	private CountDownLatch pauseWriter() {
+		CountDownLatch release = new CountDownLatch(1);
+		when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+			writerBlocked.countDown();
+			release.await();
+			List<Object[]> rows = invocation.getArgument(1);
+			return new int[rows.size()];
+		});
+		return release;
+	}
+
+	private static AuditLog event(Long entityId) {
+		AuditLog auditLog = new AuditLog();
+		auditLog.setEntityType("Invoice");
+		auditLog.setEntityId(entityId);
+		auditLog.setAction(AuditLog.AuditAction.UPDATE);
+		auditLog.setChangedBy(1L);
+		auditLog.setNewData("{\"id\":" + entityId + "}");
+		auditLog.setCreatedAt(LocalDateTime.now());
+		return auditLog;
+	}
+}
@@ -0,0 +1,104 @@
+package com.fabrica.p6f5.springapp.audit.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Round-trips documents through diff and apply and pins the operations produced.
+ */
+class JsonPatchDiffTests {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	void equalDocumentsProduceAnEmptyPatch() throws Exception {
+		JsonNode document = json("{\"a\":1,\"items\":[{\"id\":1}]}");
+
+		assertThat(JsonPatchDiff.diff(document, document.deepCopy())).isEmpty();
+	}
+
+	@Test
+	void objectsAreDiffedFieldByField() throws Exception {
+		JsonNode source = json("{\"name\":\"old\",\"removed\":true,\"nested\":{\"x\":1,\"y\":2}}");
+		JsonNode target = json("{\"name\":\"new\",\"nested\":{\"x\":1,\"y\":3},\"added\":[1]}");
+
+		JsonNode patch = JsonPatchDiff.diff(source, target);
+
+		assertThat(patch).containsExactlyInAnyOrder(
+				json("{\"op\":\"replace\",\"path\":\"/name\",\"value\":\"new\"}"),
+				json("{\"op\":\"remove\",\"path\":\"/removed\"}"),
+				json("{\"op\":\"replace\",\"path\":\"/nested/y\",\"value\":3}"),
+				json("{\"op\":\"add\",\"path\":\"/added\",\"value\":[1]}"));
+		assertThat(JsonPatchDiff.apply(source, patch)).isEqualTo(target);
+	}
+
+	@Test
+	void arraysOfTheSameLengthAreDiffedElementByElement() throws Exception {
+		JsonNode source = json("{\"items\":[{\"qty\":1},{\"qty\":2}]}");
+		JsonNode target = json("{\"items\":[{\"qty\":1},{\"qty\":5}]}");
+
+		JsonNode patch = JsonPatchDiff.diff(source, target);
+
+		assertThat(patch).containsExactly(json("{\"op\":\"replace\",\"path\":\"/items/1/qty\",\"value\":5}"));
+		assertThat(JsonPatchDiff.apply(source, patch)).isEqualTo(target);
+	}
+
+	@Test
+	void arraysWhoseLengthChangedAreReplacedWhole() throws Exception {
+		JsonNode source = json("{\"items\":[1,2]}");
+		JsonNode target = json("{\"items\":[1,2,3]}");
+
+		JsonNode patch = JsonPatchDiff.diff(source, target);
+
+		assertThat(patch).containsExactly(json("{\"op\":\"replace\",\"path\":\"/items\",\"value\":[1,2,3]}"));
+		assertThat(JsonPatchDiff.apply(source, patch)).isEqualTo(target);
+	}
+
+	@Test
+	void keysWithPointerCharactersAreEscaped() throws Exception {
+		JsonNode source = json("{\"a/b\":1,\"c~d\":1}");
+		JsonNode target = json("{\"a/b\":2,\"c~d\":3}");
+
+		JsonNode patch = JsonPatchDiff.diff(source, target);
+
+		assertThat(patch).extracting(operation -> operation.get("path").asText())
+				.containsExactlyInAnyOrder("/a~1b", "/c~0d");
+		assertThat(JsonPatchDiff.apply(source, patch)).isEqualTo(target);
+	}
+
+	@Test
+	void applyLeavesTheSourceDocumentUntouched() throws Exception {
+		JsonNode source = json("{\"name\":\"old\"}");
+
+		JsonPatchDiff.apply(source, json("[{\"op\":\"replace\",\"path\":\"/name\",\"value\":\"new\"}]"));
+
+		assertThat(source).isEqualTo(json("{\"name\":\"old\"}"));
+	}
+
+	@Test
+	void applyRejectsPathsThatDoNotExist() throws Exception {
+		JsonNode patch = json("[{\"op\":\"replace\",\"path\":\"/missing/x\",\"value\":1}]");
+
+		assertThatThrownBy(() -> JsonPatchDiff.apply(json("{}"), patch))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void fingerprintIgnoresFieldOrderAndNumberFormatting() throws Exception {
+		JsonNode document = json("{\"total\":100.00,\"items\":[{\"qty\":1,\"name\":\"a\"}]}");
+		JsonNode reordered = json("{\"items\":[{\"name\":\"a\",\"qty\":1.0}],\"total\":100}");
+
+		assertThat(JsonPatchDiff.fingerprint(reordered)).isEqualTo(JsonPatchDiff.fingerprint(document));
+		assertThat(JsonPatchDiff.fingerprint(json("{\"total\":100.01,\"items\":[{\"qty\":1,\"name\":\"a\"}]}")))
+				.isNotEqualTo(JsonPatchDiff.fingerprint(document));
+		assertThat(JsonPatchDiff.fingerprint(json("{\"a\":\"1\"}"))).isNotEqualTo(JsonPatchDiff.fingerprint(json("{\"a\":1}")));
+	}
+
+	private JsonNode json(String value) throws Exception {
+		return mapper.readTree(value);
+	}
+}
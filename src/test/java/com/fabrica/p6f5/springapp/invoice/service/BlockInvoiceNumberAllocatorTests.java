@@ -0,0 +1,142 @@
+package com.fabrica.p6f5.springapp.invoice.service;
+
+import com.fabrica.p6f5.springapp.invoice.repository.InvoiceNumberSeriesRepository;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Contention test for the block allocator: several threads on two allocator
+ * instances (standing in for two application instances) share one counter row.
+ */
+class BlockInvoiceNumberAllocatorTests {
+
+	private static final Logger logger = LoggerFactory.getLogger(BlockInvoiceNumberAllocatorTests.class);
+
+	private static final Clock CLOCK = Clock.fixed(Instant.parse("2024-06-01T00:00:00Z"), ZoneOffset.UTC);
+
+	private static final int THREADS = 8;
+
+	private static final int NUMBERS_PER_THREAD = 20_000;
+
+	@Test
+	void numbersAreUniqueAcrossThreadsAndInstances() throws Exception {
+		InMemorySeriesRepository repository = new InMemorySeriesRepository();
+		List<BlockInvoiceNumberAllocator> instances = List.of(
+			new BlockInvoiceNumberAllocator(repository, "A", 100, false, CLOCK),
+			new BlockInvoiceNumberAllocator(repository, "A", 100, false, CLOCK));
+
+		Set<String> numbers = ConcurrentHashMap.newKeySet();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<Boolean>> results = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			BlockInvoiceNumberAllocator allocator = instances.get(t % instances.size());
+			results.add(executor.submit(() -> {
+				start.await();
+				long previous = 0;
+				boolean monotonic = true;
+				for (int i = 0; i < NUMBERS_PER_THREAD; i++) {
+					String number = allocator.nextInvoiceNumber();
+					long value = Long.parseLong(number.substring(number.lastIndexOf('-') + 1));
+					monotonic &= value > previous;
+					previous = value;
+					numbers.add(number);
+				}
+				return monotonic;
+			}));
+		}
+
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Future<Boolean> result : results) {
+			assertThat(result.get()).isTrue();
+		}
+		long elapsedNanos = System.nanoTime() - begin;
+		executor.shutdown();
+
+		int total = THREADS * NUMBERS_PER_THREAD;
+		logger.info("{} numbers on {} threads in {} ms ({} reservations, {} ns/number)", total, THREADS,
+			elapsedNanos / 1_000_000, repository.reservations.get(), elapsedNanos / total);
+		assertThat(numbers).hasSize(total);
+		assertThat(numbers).allMatch(number -> number.startsWith("INV-A-2024-"));
+		// One round trip per block instead of one per number
+		assertThat(repository.reservations.get()).isLessThanOrEqualTo(total / 100 + THREADS * 2);
+	}
+
+	@Test
+	void fiscalFoliosUseTheirOwnSeries() {
+		InMemorySeriesRepository repository = new InMemorySeriesRepository();
+		BlockInvoiceNumberAllocator allocator = new BlockInvoiceNumberAllocator(repository, "B", 10, false, CLOCK);
+
+		assertThat(allocator.nextInvoiceNumber()).isEqualTo("INV-B-2024-00000001");
+		assertThat(allocator.nextFiscalFolio()).isEqualTo("FISCAL-B-2024-00000001");
+		assertThat(allocator.nextFiscalFolio()).isEqualTo("FISCAL-B-2024-00000002");
+	}
+
+	@Test
+	void gapFreeFiscalFoliosAreReservedOneByOne() {
+		InMemorySeriesRepository repository = new InMemorySeriesRepository();
+		BlockInvoiceNumberAllocator allocator = new BlockInvoiceNumberAllocator(repository, "A", 100, true, CLOCK);
+
+		assertThat(allocator.nextFiscalFolio()).isEqualTo("FISCAL-A-2024-00000001");
+		assertThat(allocator.nextFiscalFolio()).isEqualTo("FISCAL-A-2024-00000002");
+		assertThat(repository.reservations.get()).isEqualTo(2);
+	}
+
+	@Test
+	void fiscalFolioRangesTakeOneReservation() {
+		InMemorySeriesRepository repository = new InMemorySeriesRepository();
+		BlockInvoiceNumberAllocator allocator = new BlockInvoiceNumberAllocator(repository, "A", 10, false, CLOCK);
+
+		assertThat(allocator.nextFiscalFolio()).isEqualTo("FISCAL-A-2024-00000001");
+		assertThat(allocator.nextFiscalFolios(3))
+			.containsExactly("FISCAL-A-2024-00000011", "FISCAL-A-2024-00000012", "FISCAL-A-2024-00000013");
+		assertThat(allocator.nextFiscalFolios(0)).isEmpty();
+		assertThat(repository.reservations.get()).isEqualTo(2);
+	}
+
+	/**
+	 * Stands in for the counter rows; the monitor plays the role of the row lock.
+	 */
+	private static class InMemorySeriesRepository extends InvoiceNumberSeriesRepository {
+
+		private final Map<String, Long> nextValues = new ConcurrentHashMap<>();
+
+		private final AtomicInteger reservations = new AtomicInteger();
+
+		InMemorySeriesRepository() {
+			super(null);
+		}
+
+		@Override
+		public synchronized long reserveRange(String series, int year, int count) {
+			reservations.incrementAndGet();
+			String key = series + ":" + year;
+			long first = nextValues.getOrDefault(key, 1L);
+			nextValues.put(key, first + count);
+			return first;
+		}
+
+		@Override
+		public long reserveRangeInCurrentTransaction(String series, int year, int count) {
+			return reserveRange(series, year, count);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.fabrica.p6f5.springapp.invoice.service;
+
+import com.fabrica.p6f5.springapp.exception.BusinessException;
+import com.fabrica.p6f5.springapp.invoice.dto.BatchInvoiceResult;
+import com.fabrica.p6f5.springapp.invoice.dto.CreateInvoiceRequest;
+import com.fabrica.p6f5.springapp.shipment.model.Shipment;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Covers batch creation of draft invoices: rejected invoices are reported per index
+ * without blocking the others, and a shipment can be linked by one invoice of a batch only.
+ */
+@SpringBootTest(properties = {
+		"audit.async.enabled=false",
+		"invoice.batch.max-size=5"
+})
+class InvoiceBatchCreateTests extends InvoiceServiceTestSupport {
+
+	@Test
+	void rejectedInvoicesDoNotBlockTheOthers() {
+		Shipment shipment = createShipment();
+		CreateInvoiceRequest missingClient = draftRequest();
+		missingClient.setClientName(" ");
+		CreateInvoiceRequest unknownShipment = draftRequest();
+		unknownShipment.setShipmentIds(List.of(Long.MAX_VALUE));
+		CreateInvoiceRequest linked = draftRequest();
+		linked.setShipmentIds(List.of(shipment.getId()));
+
+		List<BatchInvoiceResult> results = invoiceService.createDraftInvoices(
+				Arrays.asList(draftRequest(), missingClient, null, unknownShipment, linked), userId);
+
+		assertThat(results).extracting(BatchInvoiceResult::getIndex).containsExactly(0, 1, 2, 3, 4);
+		assertThat(results).extracting(BatchInvoiceResult::isSuccess).containsExactly(true, false, false, false, true);
+		assertThat(results.get(1).getErrors()).anyMatch(error -> error.contains("Client name is required"));
+		assertThat(results.get(2).getErrors()).containsExactly("Invoice request is required");
+		assertThat(results.get(3).getErrors()).containsExactly("Shipments not found with ids: [" + Long.MAX_VALUE + "]");
+		assertThat(results.get(0).getInvoiceId()).isNotNull();
+		assertThat(results.get(4).getInvoiceNumber()).isNotNull();
+		assertThat(invoiceCount()).isEqualTo(2);
+		assertThat(shipmentRepository.findById(shipment.getId()).orElseThrow().getInvoiced()).isTrue();
+	}
+
+	@Test
+	void shipmentClaimedEarlierInTheBatchOrAlreadyLinkedIsRejected() {
+		Shipment first = createShipment();
+		Shipment second = createShipment();
+		CreateInvoiceRequest linked = draftRequest();
+		linked.setShipmentIds(List.of(first.getId()));
+		invoiceService.createDraftInvoices(List.of(linked), userId);
+
+		CreateInvoiceRequest claiming = draftRequest();
+		claiming.setShipmentIds(List.of(second.getId()));
+		CreateInvoiceRequest claimedAgain = draftRequest();
+		claimedAgain.setShipmentIds(List.of(second.getId()));
+		CreateInvoiceRequest alreadyLinked = draftRequest();
+		alreadyLinked.setShipmentIds(List.of(first.getId()));
+
+		List<BatchInvoiceResult> results = invoiceService.createDraftInvoices(
+				List.of(claiming, claimedAgain, alreadyLinked), userId);
+
+		assertThat(results).extracting(BatchInvoiceResult::isSuccess).containsExactly(true, false, false);
+		assertThat(results.get(1).getErrors())
+				.containsExactly("Shipments linked by an earlier invoice of the batch: [" + second.getId() + "]");
+		assertThat(results.get(2).getErrors())
+				.containsExactly("Shipments already linked to an invoice: [" + first.getId() + "]");
+		assertThat(jdbcTemplate.queryForObject(
+				"SELECT COUNT(*) FROM invoice_shipments WHERE shipment_id = ?", Long.class, second.getId()))
+				.isEqualTo(1L);
+		assertThat(invoiceCount()).isEqualTo(2);
+	}
+
+	@Test
+	void shipmentListedTwiceInOneInvoiceIsRejectedWithoutFailingTheBatch() {
+		Shipment shipment = createShipment();
+		CreateInvoiceRequest repeated = draftRequest();
+		repeated.setShipmentIds(List.of(shipment.getId(), shipment.getId()));
+
+		List<BatchInvoiceResult> results = invoiceService.createDraftInvoices(List.of(repeated, draftRequest()), userId);
+
+		assertThat(results).extracting(BatchInvoiceResult::isSuccess).containsExactly(false, true);
+		assertThat(results.get(0).getErrors()).containsExactly("Shipments listed more than once: [" + shipment.getId() + "]");
+		assertThat(invoiceCount()).isEqualTo(1);
+		assertThat(shipmentRepository.findById(shipment.getId()).orElseThrow().getInvoiced()).isFalse();
+	}
+
+	@Test
+	void batchOverTheMaximumSizeIsRejected() {
+		List<CreateInvoiceRequest> requests = new ArrayList<>(Collections.nCopies(6, draftRequest()));
+
+		assertThatThrownBy(() -> invoiceService.createDraftInvoices(requests, userId))
+				.isInstanceOf(BusinessException.class)
+				.hasMessageContaining("at most 5");
+		assertThat(invoiceCount()).isZero();
+	}
+
+	private long invoiceCount() {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM invoices WHERE created_by = ?", Long.class, userId);
+	}
+}
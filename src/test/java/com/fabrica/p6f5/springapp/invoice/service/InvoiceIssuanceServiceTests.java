@@ -0,0 +1,127 @@
+package com.fabrica.p6f5.springapp.invoice.service;
+
+import com.fabrica.p6f5.springapp.audit.model.AuditLog;
+import com.fabrica.p6f5.springapp.invoice.dto.CreateIssuanceJobRequest;
+import com.fabrica.p6f5.springapp.invoice.dto.IssuanceJobResponse;
+import com.fabrica.p6f5.springapp.invoice.model.Invoice;
+import com.fabrica.p6f5.springapp.invoice.model.InvoiceIssuanceJob;
+import com.fabrica.p6f5.springapp.invoice.repository.InvoiceIssuanceJobRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs bulk issuance jobs end to end: chunking, the id cursor, resuming from the cursor
+ * and the audit rows written with each chunk.
+ */
+@SpringBootTest(properties = {
+		"spring.jpa.properties.hibernate.generate_statistics=true",
+		"audit.async.enabled=false"
+})
+class InvoiceIssuanceServiceTests extends InvoiceServiceTestSupport {
+
+	private static final int INVOICE_COUNT = 5;
+
+	@Autowired
+	private InvoiceIssuanceService issuanceService;
+
+	@Autowired
+	private InvoiceIssuanceJobRepository jobRepository;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private final List<Long> invoiceIds = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() {
+		for (int i = 0; i < INVOICE_COUNT; i++) {
+			invoiceIds.add(invoiceService.createDraftInvoice(draftRequest(), userId).getId());
+		}
+	}
+
+	@Test
+	void jobIssuesEveryDraftInChunksAndAdvancesTheCursor() throws Exception {
+		CreateIssuanceJobRequest request = new CreateIssuanceJobRequest();
+		request.setClientName(clientName);
+		request.setChunkSize(2);
+
+		IssuanceJobResponse job = awaitFinished(issuanceService.startJob(request, userId).getJobId());
+
+		assertThat(job.getStatus()).isEqualTo(InvoiceIssuanceJob.JobStatus.COMPLETED.name());
+		assertThat(job.getIssuedCount()).isEqualTo((long) INVOICE_COUNT);
+		assertThat(job.getSkippedCount()).isZero();
+		assertThat(job.getLastInvoiceId()).isEqualTo(invoiceIds.get(INVOICE_COUNT - 1));
+		assertThat(statusOf(invoiceIds)).containsOnly(Invoice.InvoiceStatus.ISSUED.name());
+		// One ISSUE row per invoice, each carrying the DRAFT -> ISSUED change
+		List<String> patches = jdbcTemplate.queryForList(
+				"SELECT data_patch::text FROM audit_logs WHERE changed_by = ? AND action = ?",
+				String.class, userId, AuditLog.AuditAction.ISSUE.name());
+		assertThat(patches).hasSize(INVOICE_COUNT);
+		assertThat(patches).allSatisfy(patch -> assertThat(patch).contains("/status").contains("ISSUED"));
+	}
+
+	@Test
+	void chunkLoadsItemsAndShipmentLinksWithoutPerInvoiceQueries() throws Exception {
+		CreateIssuanceJobRequest request = new CreateIssuanceJobRequest();
+		request.setClientName(clientName);
+		request.setChunkSize(INVOICE_COUNT);
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		IssuanceJobResponse job = awaitFinished(issuanceService.startJob(request, userId).getJobId());
+
+		assertThat(job.getIssuedCount()).isEqualTo((long) INVOICE_COUNT);
+		// Items and shipment links are fetched for the whole chunk before the snapshots are taken
+		assertThat(statistics.getCollectionFetchCount()).isZero();
+	}
+
+	@Test
+	void resumedJobContinuesFromItsCursor() throws Exception {
+		InvoiceIssuanceJob failed = new InvoiceIssuanceJob();
+		failed.setStatus(InvoiceIssuanceJob.JobStatus.FAILED);
+		failed.setClientName(clientName);
+		failed.setChunkSize(2);
+		failed.setLastInvoiceId(invoiceIds.get(1));
+		failed.setIssuedCount(2L);
+		failed.setErrorMessage("interrupted");
+		failed.setRequestedBy(userId);
+		Long jobId = jobRepository.save(failed).getId();
+
+		issuanceService.resumeJob(jobId);
+		IssuanceJobResponse job = awaitFinished(jobId);
+
+		assertThat(job.getStatus()).isEqualTo(InvoiceIssuanceJob.JobStatus.COMPLETED.name());
+		assertThat(job.getErrorMessage()).isNull();
+		assertThat(job.getIssuedCount()).isEqualTo((long) INVOICE_COUNT);
+		assertThat(statusOf(invoiceIds.subList(0, 2))).containsOnly(Invoice.InvoiceStatus.DRAFT.name());
+		assertThat(statusOf(invoiceIds.subList(2, INVOICE_COUNT))).containsOnly(Invoice.InvoiceStatus.ISSUED.name());
+	}
+
+	private IssuanceJobResponse awaitFinished(Long jobId) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		IssuanceJobResponse job = issuanceService.getJob(jobId);
+		while (InvoiceIssuanceJob.JobStatus.RUNNING.name().equals(job.getStatus())
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+			job = issuanceService.getJob(jobId);
+		}
+		return job;
+	}
+
+	private List<String> statusOf(List<Long> ids) {
+		return ids.stream()
+				.map(id -> jdbcTemplate.queryForObject(
+						"SELECT invoice_status FROM invoices WHERE invoice_id = ?", String.class, id))
+				.toList();
+	}
+}
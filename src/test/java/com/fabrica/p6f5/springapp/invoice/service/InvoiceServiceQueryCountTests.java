@@ -0,0 +1,131 @@
+package com.fabrica.p6f5.springapp.invoice.service;
+
+import com.fabrica.p6f5.springapp.invoice.dto.CreateInvoiceRequest;
+import com.fabrica.p6f5.springapp.invoice.dto.InvoiceResponse;
+import com.fabrica.p6f5.springapp.invoice.dto.UpdateInvoiceRequest;
+import com.fabrica.p6f5.springapp.invoice.model.Invoice;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Pins the number of SQL statements issued by the invoice read and write paths
+ * so lazy-loading regressions (N+1) and redundant re-reads are caught early.
+ */
+@SpringBootTest(properties = {
+		"spring.jpa.properties.hibernate.generate_statistics=true",
+		"audit.async.enabled=false"
+})
+class InvoiceServiceQueryCountTests extends InvoiceServiceTestSupport {
+
+	private static final Logger logger = LoggerFactory.getLogger(InvoiceServiceQueryCountTests.class);
+
+	private static final int INVOICE_COUNT = 5;
+
+	private static final int LARGE_INVOICE_LINES = 500;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private Statistics statistics;
+
+	@BeforeEach
+	void setUp() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+		for (int i = 0; i < INVOICE_COUNT; i++) {
+			invoiceService.createDraftInvoice(draftRequest(createShipment()), userId);
+		}
+		statistics.clear();
+	}
+
+	@Test
+	void listingInvoicesUsesBoundedNumberOfQueries() {
+		List<InvoiceResponse> invoices = invoiceService.getInvoicesByStatus(Invoice.InvoiceStatus.DRAFT);
+
+		assertThat(invoices.size()).isGreaterThanOrEqualTo(INVOICE_COUNT);
+		assertThat(invoices).allSatisfy(invoice -> assertThat(invoice.getItems()).isNotNull());
+		// invoices + items + shipment links, independent of the number of invoices
+		assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(3);
+		assertThat(statistics.getCollectionFetchCount()).isZero();
+	}
+
+	@Test
+	void keysetPageUsesBoundedNumberOfQueries() {
+		invoiceService.getAllInvoices(null, INVOICE_COUNT);
+
+		assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(3);
+		assertThat(statistics.getCollectionFetchCount()).isZero();
+	}
+
+	@Test
+	void createBuildsResponseWithoutReReadingTheInvoice() {
+		InvoiceResponse created = invoiceService.createDraftInvoice(draftRequest(createShipment()), userId);
+
+		assertThat(created.getItems()).hasSize(2);
+		// Only the shipment lookup; the response comes from the in-memory aggregate
+		assertThat(statistics.getQueryExecutionCount()).isLessThanOrEqualTo(1);
+		assertThat(statistics.getEntityFetchCount()).isZero();
+		assertThat(statistics.getCollectionFetchCount()).isZero();
+	}
+
+	@Test
+	void updateBuildsResponseWithoutReReadingTheInvoice() {
+		InvoiceResponse created = invoiceService.createDraftInvoice(draftRequest(createShipment()), userId);
+		statistics.clear();
+
+		UpdateInvoiceRequest request = new UpdateInvoiceRequest();
+		request.setClientName(created.getClientName());
+		request.setInvoiceDate(created.getInvoiceDate());
+		request.setDueDate(created.getDueDate());
+		request.setTaxAmount(BigDecimal.ONE);
+		request.setVersion(created.getVersion());
+		request.setItems(created.getItems().stream()
+			.map(item -> new UpdateInvoiceRequest.InvoiceItemRequest(item.getId(), item.getShipmentId(),
+				item.getDescription(), item.getQuantity(), item.getUnitPrice()))
+			.collect(Collectors.toList()));
+
+		InvoiceResponse updated = invoiceService.updateDraftInvoice(created.getId(), request, userId);
+
+		assertThat(updated.getItems()).hasSize(2);
+		assertThat(updated.getVersion()).isGreaterThan(created.getVersion());
+		// invoice by id + items + shipment links + shipment lookup + previous history versions,
+		// no re-read at the end and no lazy shipment loaded by the history and audit snapshots
+		assertThat(statistics.getEntityFetchCount()).isZero();
+		assertThat(statistics.getCollectionFetchCount()).isLessThanOrEqualTo(2);
+		assertThat(statistics.getQueryExecutionCount()).isLessThanOrEqualTo(2);
+	}
+
+	@Test
+	void largeInvoiceInsertsAreBatched() {
+		List<CreateInvoiceRequest.InvoiceItemRequest> items = new ArrayList<>();
+		for (int i = 0; i < LARGE_INVOICE_LINES; i++) {
+			items.add(new CreateInvoiceRequest.InvoiceItemRequest(null, "Parcel " + i, 1, BigDecimal.ONE));
+		}
+		CreateInvoiceRequest request = draftRequest(createShipment());
+		request.setItems(items);
+		statistics.clear();
+
+		long start = System.nanoTime();
+		invoiceService.createDraftInvoice(request, userId);
+		long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+		long statements = statistics.getPrepareStatementCount();
+		logger.info("{}-line invoice: {} statements, {} ms", LARGE_INVOICE_LINES, statements, elapsedMillis);
+		// One INSERT per row would need more than LARGE_INVOICE_LINES statements
+		assertThat(statements).isLessThan(LARGE_INVOICE_LINES / 10);
+	}
+}
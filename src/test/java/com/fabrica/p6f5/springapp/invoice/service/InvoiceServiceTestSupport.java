@@ -0,0 +1,98 @@
+package com.fabrica.p6f5.springapp.invoice.service;
+
+import com.fabrica.p6f5.springapp.entity.User;
+import com.fabrica.p6f5.springapp.invoice.dto.CreateInvoiceRequest;
+import com.fabrica.p6f5.springapp.repository.UserRepository;
+import com.fabrica.p6f5.springapp.shipment.model.Shipment;
+import com.fabrica.p6f5.springapp.shipment.repository.ShipmentRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Shared fixture for the database-backed invoice service tests.
+ * Each test gets its own user and client name; service calls commit on their own,
+ * so everything created by that user is removed after the test.
+ */
+abstract class InvoiceServiceTestSupport {
+
+	@Autowired
+	protected InvoiceService invoiceService;
+
+	@Autowired
+	protected UserRepository userRepository;
+
+	@Autowired
+	protected ShipmentRepository shipmentRepository;
+
+	@Autowired
+	protected JdbcTemplate jdbcTemplate;
+
+	protected Long userId;
+
+	protected String clientName;
+
+	@BeforeEach
+	void createTestUser() {
+		String suffix = UUID.randomUUID().toString().substring(0, 8);
+		User user = userRepository.save(new User("inv-" + suffix, "inv-" + suffix + "@test.local", "secret123"));
+		userId = user.getId();
+		clientName = "Test Client " + suffix;
+	}
+
+	@AfterEach
+	void deleteTestData() {
+		jdbcTemplate.update("DELETE FROM invoice_issuance_jobs WHERE requested_by = ?", userId);
+		jdbcTemplate.update("DELETE FROM audit_logs WHERE changed_by = ?", userId);
+		jdbcTemplate.update("DELETE FROM invoices WHERE created_by = ?", userId);
+		jdbcTemplate.update("DELETE FROM invoice_history WHERE created_by = ?", userId);
+		jdbcTemplate.update("DELETE FROM shipments WHERE created_by = ?", userId);
+		jdbcTemplate.update("DELETE FROM users WHERE user_id = ?", userId);
+	}
+
+	protected Shipment createShipment() {
+		Shipment shipment = new Shipment();
+		shipment.setClientName(clientName);
+		shipment.setOriginAddress("Origin");
+		shipment.setDestinationAddress("Destination");
+		shipment.setTotalWeight(BigDecimal.ONE);
+		shipment.setTotalVolume(BigDecimal.ONE);
+		shipment.setTrackingNumber("TEST-" + UUID.randomUUID());
+		shipment.setCreatedBy(userId);
+		return shipmentRepository.save(shipment);
+	}
+
+	/**
+	 * A draft with a single unlinked line.
+	 */
+	protected CreateInvoiceRequest draftRequest() {
+		List<CreateInvoiceRequest.InvoiceItemRequest> items = new ArrayList<>();
+		items.add(new CreateInvoiceRequest.InvoiceItemRequest(null, "Shipping service", 2, BigDecimal.TEN));
+
+		CreateInvoiceRequest request = new CreateInvoiceRequest();
+		request.setClientName(clientName);
+		request.setInvoiceDate(LocalDate.now());
+		request.setDueDate(LocalDate.now().plusDays(30));
+		request.setItems(items);
+		request.setTaxAmount(BigDecimal.ZERO);
+		return request;
+	}
+
+	/**
+	 * A draft billing the given shipment on its first line, plus an unlinked handling fee.
+	 */
+	protected CreateInvoiceRequest draftRequest(Shipment shipment) {
+		CreateInvoiceRequest request = draftRequest();
+		request.getItems().set(0,
+				new CreateInvoiceRequest.InvoiceItemRequest(shipment.getId(), "Shipping service", 2, BigDecimal.TEN));
+		request.getItems().add(new CreateInvoiceRequest.InvoiceItemRequest(null, "Handling fee", 1, BigDecimal.ONE));
+		return request;
+	}
+}
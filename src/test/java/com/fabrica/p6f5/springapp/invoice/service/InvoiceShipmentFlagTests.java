@@ -0,0 +1,97 @@
+package com.fabrica.p6f5.springapp.invoice.service;
+
+import com.fabrica.p6f5.springapp.invoice.dto.CreateInvoiceRequest;
+import com.fabrica.p6f5.springapp.invoice.dto.InvoiceResponse;
+import com.fabrica.p6f5.springapp.invoice.dto.UpdateInvoiceRequest;
+import com.fabrica.p6f5.springapp.shipment.model.Shipment;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the invoiced flag of a shipment follows its invoice links on create, update and unlink,
+ * and that setting it only writes that column.
+ */
+@SpringBootTest(properties = "audit.async.enabled=false")
+class InvoiceShipmentFlagTests extends InvoiceServiceTestSupport {
+
+	@Test
+	void createFlagsTheLinkedShipmentsOnly() {
+		Shipment linked = createShipment();
+		Shipment other = createShipment();
+
+		invoiceService.createDraftInvoice(linkedRequest(linked), userId);
+
+		assertThat(invoiced(linked)).isTrue();
+		assertThat(invoiced(other)).isFalse();
+	}
+
+	@Test
+	void batchCreateFlagsTheLinkedShipments() {
+		Shipment first = createShipment();
+		Shipment second = createShipment();
+
+		invoiceService.createDraftInvoices(List.of(linkedRequest(first), linkedRequest(second)), userId);
+
+		assertThat(invoiced(first)).isTrue();
+		assertThat(invoiced(second)).isTrue();
+	}
+
+	@Test
+	void updateFlagsAddedShipmentsAndClearsUnlinkedOnes() {
+		Shipment first = createShipment();
+		Shipment second = createShipment();
+		InvoiceResponse created = invoiceService.createDraftInvoice(linkedRequest(first), userId);
+
+		invoiceService.updateDraftInvoice(created.getId(), updateRequest(created, List.of(second.getId())), userId);
+
+		assertThat(invoiced(first)).isFalse();
+		assertThat(invoiced(second)).isTrue();
+	}
+
+	@Test
+	void linkingDoesNotRewriteTheShipmentRow() {
+		Shipment shipment = createShipment();
+		// A status change made outside the invoice service must survive the link
+		jdbcTemplate.update("UPDATE shipments SET shipment_status = 'IN_TRANSIT', updated_at = TIMESTAMP '2000-01-01 00:00'"
+				+ " WHERE shipment_id = ?", shipment.getId());
+
+		invoiceService.createDraftInvoice(linkedRequest(shipment), userId);
+
+		assertThat(invoiced(shipment)).isTrue();
+		assertThat(jdbcTemplate.queryForObject("SELECT shipment_status FROM shipments WHERE shipment_id = ?",
+				String.class, shipment.getId())).isEqualTo("IN_TRANSIT");
+		// @PreUpdate stamps updated_at whenever the entity itself is flushed
+		assertThat(jdbcTemplate.queryForObject("SELECT updated_at = TIMESTAMP '2000-01-01 00:00' FROM shipments"
+				+ " WHERE shipment_id = ?", Boolean.class, shipment.getId())).isTrue();
+	}
+
+	private CreateInvoiceRequest linkedRequest(Shipment shipment) {
+		CreateInvoiceRequest request = draftRequest();
+		request.setShipmentIds(List.of(shipment.getId()));
+		return request;
+	}
+
+	private UpdateInvoiceRequest updateRequest(InvoiceResponse invoice, List<Long> shipmentIds) {
+		UpdateInvoiceRequest request = new UpdateInvoiceRequest();
+		request.setClientName(invoice.getClientName());
+		request.setInvoiceDate(invoice.getInvoiceDate());
+		request.setDueDate(invoice.getDueDate());
+		request.setTaxAmount(invoice.getTaxAmount());
+		request.setVersion(invoice.getVersion());
+		request.setShipmentIds(shipmentIds);
+		request.setItems(invoice.getItems().stream()
+				.map(item -> new UpdateInvoiceRequest.InvoiceItemRequest(item.getId(), item.getShipmentId(),
+						item.getDescription(), item.getQuantity(), item.getUnitPrice()))
+				.collect(Collectors.toList()));
+		return request;
+	}
+
+	private boolean invoiced(Shipment shipment) {
+		return shipmentRepository.findById(shipment.getId()).orElseThrow().getInvoiced();
+	}
+}
@@ -0,0 +1,47 @@
+package com.fabrica.p6f5.springapp.pdf.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Pins the Range header parsing: null means unsatisfiable (416),
+ * an empty array means ignore the header and send the full file.
+ */
+class PdfDownloadServiceTests {
+
+	private static final long LENGTH = 1000;
+
+	@Test
+	void closedRangeIsReturnedAsIs() {
+		assertThat(PdfDownloadService.parseRange("bytes=0-99", LENGTH)).containsExactly(0, 99);
+		assertThat(PdfDownloadService.parseRange("bytes=500-500", LENGTH)).containsExactly(500, 500);
+	}
+
+	@Test
+	void openAndOversizedRangesEndAtTheLastByte() {
+		assertThat(PdfDownloadService.parseRange("bytes=900-", LENGTH)).containsExactly(900, 999);
+		assertThat(PdfDownloadService.parseRange("bytes=900-5000", LENGTH)).containsExactly(900, 999);
+	}
+
+	@Test
+	void suffixRangeSelectsTheLastBytes() {
+		assertThat(PdfDownloadService.parseRange("bytes=-100", LENGTH)).containsExactly(900, 999);
+		assertThat(PdfDownloadService.parseRange("bytes=-5000", LENGTH)).containsExactly(0, 999);
+	}
+
+	@Test
+	void rangesOutsideTheFileAreUnsatisfiable() {
+		assertThat(PdfDownloadService.parseRange("bytes=1000-", LENGTH)).isNull();
+		assertThat(PdfDownloadService.parseRange("bytes=500-400", LENGTH)).isNull();
+		assertThat(PdfDownloadService.parseRange("bytes=-0", LENGTH)).isNull();
+	}
+
+	@Test
+	void malformedOrMultipleRangesAreIgnored() {
+		assertThat(PdfDownloadService.parseRange("items=0-99", LENGTH)).isEmpty();
+		assertThat(PdfDownloadService.parseRange("bytes=0-9,20-29", LENGTH)).isEmpty();
+		assertThat(PdfDownloadService.parseRange("bytes=abc", LENGTH)).isEmpty();
+		assertThat(PdfDownloadService.parseRange("bytes=x-9", LENGTH)).isEmpty();
+	}
+}
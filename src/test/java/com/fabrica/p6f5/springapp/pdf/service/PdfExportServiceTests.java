@@ -0,0 +1,107 @@
+package com.fabrica.p6f5.springapp.pdf.service;
+
+import com.fabrica.p6f5.springapp.config.BackgroundExecutors;
+import com.fabrica.p6f5.springapp.invoice.model.Invoice;
+import com.fabrica.p6f5.springapp.invoice.repository.InvoiceRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Streams small archives against a mocked store: a PDF that is gone by the time it is
+ * copied ends up in errors.txt and the other entries are still written.
+ */
+class PdfExportServiceTests {
+
+	private static final String TEMPLATE = "default";
+
+	@TempDir
+	Path storeDir;
+
+	private InvoiceRepository invoiceRepository;
+
+	private PdfService pdfService;
+
+	private PdfExportService exportService;
+
+	@BeforeEach
+	void setUp() {
+		invoiceRepository = mock(InvoiceRepository.class);
+		pdfService = mock(PdfService.class);
+		exportService = new PdfExportService();
+		ReflectionTestUtils.setField(exportService, "invoiceRepository", invoiceRepository);
+		ReflectionTestUtils.setField(exportService, "pdfService", pdfService);
+		ReflectionTestUtils.setField(exportService, "backgroundExecutors", new BackgroundExecutors(false));
+		ReflectionTestUtils.setField(exportService, "exportConcurrency", 2);
+		ReflectionTestUtils.setField(exportService, "exportWindow", 2);
+		ReflectionTestUtils.setField(exportService, "sliceSize", 10);
+		exportService.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		exportService.shutdown();
+	}
+
+	@Test
+	void evictedPdfIsListedInErrorsAndTheArchiveCompletes() throws Exception {
+		when(invoiceRepository.findIssuedForExportAfter(eq(0L), any(), any(), any(), any()))
+				.thenReturn(List.of(invoice(1L), invoice(2L), invoice(3L)));
+		when(pdfService.getOrRenderPdf(anyLong(), eq(TEMPLATE))).thenAnswer(invocation -> {
+			Long id = invocation.getArgument(0);
+			Path file = storeDir.resolve(id + ".pdf");
+			if (id != 2L) {
+				Files.writeString(file, "pdf " + id);
+			}
+			// Invoice 2 stands for a file evicted between the lookup and the copy
+			return new PdfService.StoredPdf("key-" + id, file);
+		});
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		exportService.exportZip("Client", null, null, TEMPLATE, out);
+
+		Map<String, String> entries = unzip(out.toByteArray());
+		assertThat(entries).containsOnlyKeys("INV-1.pdf", "INV-3.pdf", "errors.txt");
+		assertThat(entries.get("INV-3.pdf")).isEqualTo("pdf 3");
+		assertThat(entries.get("errors.txt")).startsWith("INV-2.pdf: ");
+	}
+
+	private static Invoice invoice(Long id) {
+		Invoice invoice = new Invoice();
+		invoice.setId(id);
+		invoice.setInvoiceNumber("INV-" + id);
+		return invoice;
+	}
+
+	private static Map<String, String> unzip(byte[] archive) throws IOException {
+		Map<String, String> entries = new LinkedHashMap<>();
+		try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+			ZipEntry entry;
+			while ((entry = zip.getNextEntry()) != null) {
+				entries.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+			}
+		}
+		return entries;
+	}
+}
@@ -0,0 +1,103 @@
+package com.fabrica.p6f5.springapp.pdf.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Covers the size accounting and least recently used eviction of the PDF store
+ * with a 1 MB limit and 400 KB entries, so the third entry evicts one.
+ */
+class PdfFileStoreTests {
+
+	private static final int ENTRY_SIZE = 400 * 1024;
+
+	@TempDir
+	Path root;
+
+	private PdfFileStore store;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		store = new PdfFileStore(root.toString(), 1);
+		store.loadIndex();
+	}
+
+	@Test
+	void storingCountsEachEntryOnce() throws Exception {
+		AtomicInteger writes = new AtomicInteger();
+		String key = key(1);
+
+		Path first = store.store(key, out -> {
+			writes.incrementAndGet();
+			out.write(new byte[ENTRY_SIZE]);
+		});
+		Path second = store.store(key, out -> writes.incrementAndGet());
+
+		assertThat(second).isEqualTo(first);
+		assertThat(writes).hasValue(1);
+		assertThat(store.totalBytes()).isEqualTo(ENTRY_SIZE);
+	}
+
+	@Test
+	void leastRecentlyUsedEntryIsEvictedFirst() throws Exception {
+		Path a = put(1);
+		Path b = put(2);
+		// Reading a makes b the eldest entry
+		assertThat(store.find(key(1))).contains(a);
+
+		Path c = put(3);
+
+		assertThat(store.find(key(2))).isEmpty();
+		assertThat(b).doesNotExist();
+		assertThat(a).exists();
+		assertThat(c).exists();
+		assertThat(store.totalBytes()).isEqualTo(2L * ENTRY_SIZE);
+	}
+
+	@Test
+	void filesDeletedBehindTheStoreAreForgotten() throws Exception {
+		Path a = put(1);
+		put(2);
+
+		Files.delete(a);
+
+		assertThat(store.find(key(1))).isEmpty();
+		assertThat(store.totalBytes()).isEqualTo(ENTRY_SIZE);
+	}
+
+	@Test
+	void indexIsRebuiltFromDiskOldestFirst() throws Exception {
+		Path a = put(1);
+		Path b = put(2);
+		Files.setLastModifiedTime(a, FileTime.fromMillis(2_000_000));
+		Files.setLastModifiedTime(b, FileTime.fromMillis(1_000_000));
+		Path leftover = Files.createFile(a.getParent().resolve("render-1.tmp"));
+
+		PdfFileStore reopened = new PdfFileStore(root.toString(), 1);
+		reopened.loadIndex();
+		Path c = reopened.store(key(3), out -> out.write(new byte[ENTRY_SIZE]));
+
+		assertThat(leftover).doesNotExist();
+		// b has the older modification time, so it is the eldest entry
+		assertThat(b).doesNotExist();
+		assertThat(a).exists();
+		assertThat(c).exists();
+		assertThat(reopened.totalBytes()).isEqualTo(2L * ENTRY_SIZE);
+	}
+
+	private Path put(int id) throws Exception {
+		return store.store(key(id), out -> out.write(new byte[ENTRY_SIZE]));
+	}
+
+	private String key(int id) {
+		return store.key((long) id, 1, "template");
+	}
+}
@@ -0,0 +1,114 @@
+package com.fabrica.p6f5.springapp.service;
+
+import com.fabrica.p6f5.springapp.entity.User;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Covers the verified-token cache of JwtService: hits, expiry, size bound and tampered tokens.
+ */
+class JwtServiceTokenCacheTests {
+
+	private static final String SECRET = Base64.getEncoder()
+			.encodeToString("0123456789abcdef0123456789abcdef".getBytes());
+
+	@Test
+	void repeatedTokenIsServedFromCache() {
+		JwtService jwtService = newJwtService(60_000, 10);
+		String token = jwtService.generateToken(user(1L, "alice"));
+
+		Claims first = jwtService.parseVerifiedClaims(token);
+		Claims second = jwtService.parseVerifiedClaims(token);
+
+		assertThat(second).isSameAs(first);
+		assertThat(second.getSubject()).isEqualTo("alice");
+		assertThat(jwtService.cachedTokenCount()).isEqualTo(1);
+	}
+
+	@Test
+	void cachedTokenIsRejectedOnceExpired() throws InterruptedException {
+		JwtService jwtService = newJwtService(1_000, 10);
+		String token = jwtService.generateToken(user(1L, "alice"));
+		assertThat(jwtService.parseVerifiedClaims(token).getSubject()).isEqualTo("alice");
+
+		// exp has second precision, wait past it
+		Thread.sleep(2_100);
+
+		assertThatThrownBy(() -> jwtService.parseVerifiedClaims(token)).isInstanceOf(ExpiredJwtException.class);
+		assertThat(jwtService.cachedTokenCount()).isZero();
+	}
+
+	@Test
+	void cacheNeverExceedsMaximumSize() {
+		JwtService jwtService = newJwtService(60_000, 2);
+
+		for (long id = 1; id <= 20; id++) {
+			jwtService.parseVerifiedClaims(jwtService.generateToken(user(id, "user" + id)));
+		}
+
+		assertThat(jwtService.cachedTokenCount()).isLessThanOrEqualTo(2);
+	}
+
+	@Test
+	void tamperedTokenIsNotServedFromCache() {
+		JwtService jwtService = newJwtService(60_000, 10);
+		String token = jwtService.generateToken(user(1L, "alice"));
+		jwtService.parseVerifiedClaims(token);
+
+		String[] parts = token.split("\\.");
+		String forgedPayload = Base64.getUrlEncoder().withoutPadding().encodeToString(
+				new String(Base64.getUrlDecoder().decode(parts[1])).replace("alice", "admin").getBytes());
+		String forgedToken = parts[0] + "." + forgedPayload + "." + parts[2];
+		String flippedSignature = parts[0] + "." + parts[1] + "." + flipFirstChar(parts[2]);
+
+		assertThatThrownBy(() -> jwtService.parseVerifiedClaims(forgedToken)).isInstanceOf(JwtException.class);
+		assertThatThrownBy(() -> jwtService.parseVerifiedClaims(flippedSignature)).isInstanceOf(JwtException.class);
+		assertThat(jwtService.cachedTokenCount()).isEqualTo(1);
+	}
+
+	@Test
+	void disabledCacheVerifiesEveryTime() {
+		JwtService jwtService = newJwtService(60_000, 10, false);
+		String token = jwtService.generateToken(user(1L, "alice"));
+
+		Claims first = jwtService.parseVerifiedClaims(token);
+		Claims second = jwtService.parseVerifiedClaims(token);
+
+		assertThat(second).isNotSameAs(first).isEqualTo(first);
+		assertThat(jwtService.cachedTokenCount()).isZero();
+	}
+
+	private static JwtService newJwtService(long expirationMillis, long maximumSize) {
+		return newJwtService(expirationMillis, maximumSize, true);
+	}
+
+	private static JwtService newJwtService(long expirationMillis, long maximumSize, boolean cacheEnabled) {
+		JwtService jwtService = new JwtService();
+		ReflectionTestUtils.setField(jwtService, "secretKey", SECRET);
+		ReflectionTestUtils.setField(jwtService, "jwtExpiration", expirationMillis);
+		ReflectionTestUtils.setField(jwtService, "tokenCacheEnabled", cacheEnabled);
+		ReflectionTestUtils.setField(jwtService, "tokenCacheMaximumSize", maximumSize);
+		jwtService.init();
+		return jwtService;
+	}
+
+	private static User user(Long id, String username) {
+		User user = new User(username, username + "@example.com", "secret");
+		user.setId(id);
+		return user;
+	}
+
+	private static String flipFirstChar(String value) {
+		// The first character carries six full signature bits, unlike the padded last one
+		char first = value.charAt(0);
+		return (first == 'A' ? 'B' : 'A') + value.substring(1);
+	}
+}
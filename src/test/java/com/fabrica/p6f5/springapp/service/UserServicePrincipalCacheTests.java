@@ -0,0 +1,95 @@
+package com.fabrica.p6f5.springapp.service;
+
+import com.fabrica.p6f5.springapp.entity.User;
+import com.fabrica.p6f5.springapp.repository.UserRepository;
+import com.fabrica.p6f5.springapp.security.PrincipalCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Covers the principal cache behind UserService: snapshots instead of entities,
+ * and invalidation by save and delete under every login a user was cached under.
+ */
+class UserServicePrincipalCacheTests {
+
+	private UserRepository userRepository;
+
+	private UserService userService;
+
+	private User stored;
+
+	@BeforeEach
+	void setUp() {
+		userRepository = mock(UserRepository.class);
+		PrincipalCache principalCache = new PrincipalCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(5), false);
+		userService = new UserService(userRepository, NoOpPasswordEncoder.getInstance(), principalCache);
+
+		stored = new User("alice", "alice@test.local", "hash");
+		stored.setId(1L);
+		stored.setFullName("Alice");
+		when(userRepository.findByUsernameOrEmail(anyString(), anyString())).thenAnswer(invocation ->
+				invocation.getArgument(0).equals(stored.getUsername()) || invocation.getArgument(0).equals(stored.getEmail())
+						? Optional.of(stored) : Optional.empty());
+		when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+	}
+
+	@Test
+	void cachedPrincipalIsADetachedCopyWithoutThePassword() {
+		User first = userService.loadPrincipal("alice");
+		first.setUsername("mallory");
+		User second = userService.loadPrincipal("alice");
+
+		assertThat(second).isNotSameAs(first).isNotSameAs(stored);
+		assertThat(second.getUsername()).isEqualTo("alice");
+		assertThat(second.getId()).isEqualTo(1L);
+		assertThat(second.getPassword()).isNull();
+		assertThat(second.getAuthorities()).extracting(Object::toString).containsExactly("ROLE_USER");
+		verify(userRepository, times(1)).findByUsernameOrEmail("alice", "alice");
+	}
+
+	@Test
+	void saveInvalidatesEveryLoginOfTheUser() {
+		userService.loadPrincipal("alice");
+		userService.loadPrincipal("alice@test.local");
+
+		User renamed = new User("alice2", "alice2@test.local", "secret");
+		renamed.setId(1L);
+		userService.save(renamed);
+		userService.loadPrincipal("alice");
+		userService.loadPrincipal("alice@test.local");
+
+		verify(userRepository, times(2)).findByUsernameOrEmail("alice", "alice");
+		verify(userRepository, times(2)).findByUsernameOrEmail("alice@test.local", "alice@test.local");
+	}
+
+	@Test
+	void deleteInvalidatesTheCachedPrincipal() {
+		userService.loadPrincipal("alice@test.local");
+
+		userService.deleteById(1L);
+		userService.loadPrincipal("alice@test.local");
+
+		verify(userRepository, times(2)).findByUsernameOrEmail("alice@test.local", "alice@test.local");
+	}
+
+	@Test
+	void passwordLoginAlwaysReadsTheDatabase() {
+		userService.loadPrincipal("alice");
+
+		assertThat(userService.loadUserByUsername("alice").getPassword()).isEqualTo("hash");
+		verify(userRepository, times(2)).findByUsernameOrEmail("alice", "alice");
+	}
+}
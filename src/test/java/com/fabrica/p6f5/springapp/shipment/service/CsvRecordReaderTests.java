@@ -0,0 +1,44 @@
+package com.fabrica.p6f5.springapp.shipment.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CsvRecordReaderTests {
+
+	@Test
+	void quotedFieldsKeepCommasQuotesAndLineBreaks() throws Exception {
+		CsvRecordReader reader = new CsvRecordReader(new StringReader(
+			"a,b,c\r\n\"x, y\",\"say \"\"hi\"\"\",\"two\nlines\"\n\nlast,,\n"), 100);
+
+		assertThat(reader.next()).containsExactly("a", "b", "c");
+		assertThat(reader.next()).containsExactly("x, y", "say \"hi\"", "two\nlines");
+		assertThat(reader.recordLine()).isEqualTo(2);
+		assertThat(reader.next()).containsExactly("");
+		assertThat(reader.next()).containsExactly("last", "", "");
+		assertThat(reader.recordLine()).isEqualTo(5);
+		assertThat(reader.next()).isNull();
+	}
+
+	@Test
+	void lastRecordWithoutLineBreakIsRead() throws Exception {
+		CsvRecordReader reader = new CsvRecordReader(new StringReader("a,b"), 100);
+
+		assertThat(reader.next()).isEqualTo(List.of("a", "b"));
+		assertThat(reader.next()).isNull();
+	}
+
+	@Test
+	void strayQuoteIsRejectedInsteadOfBufferingTheRest() throws Exception {
+		CsvRecordReader reader = new CsvRecordReader(new StringReader("ok\n\"never closed\n" + "x".repeat(200)), 100);
+
+		assertThat(reader.next()).containsExactly("ok");
+		assertThatThrownBy(reader::next)
+			.isInstanceOf(CsvRecordReader.MalformedRecordException.class)
+			.hasMessageContaining("100");
+	}
+}
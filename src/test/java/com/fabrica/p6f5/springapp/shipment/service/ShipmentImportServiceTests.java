@@ -0,0 +1,116 @@
+package com.fabrica.p6f5.springapp.shipment.service;
+
+import com.fabrica.p6f5.springapp.shipment.dto.ShipmentImportResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Imports small manifests against the database in chunks of two rows.
+ * Every chunk commits on its own, so the imported shipments are removed after each test.
+ */
+@SpringBootTest(properties = "shipment.import.batch-size=2")
+class ShipmentImportServiceTests {
+
+	private static final String HEADER = "clientName,originAddress,destinationAddress,totalWeight,totalVolume,trackingNumber\n";
+
+	@Autowired
+	private ShipmentImportService importService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private final String prefix = "IMP-" + UUID.randomUUID().toString().substring(0, 8) + "-";
+
+	@AfterEach
+	void tearDown() {
+		jdbcTemplate.update("DELETE FROM shipments WHERE tracking_number LIKE ?", prefix + "%");
+	}
+
+	@Test
+	void invalidAndDuplicateRowsAreReportedAndTheRestImported() throws Exception {
+		String csv = HEADER
+				+ row("1", "12.50", "0.80")
+				+ row("2", "123456789.00", "0.80")
+				+ row("3", "12.50", "0.805")
+				+ row("1", "3.00", "1.00")
+				+ row("4", "99999999.99", "0.01");
+
+		ShipmentImportResult result = importService.importShipments(stream(csv), ShipmentImportService.Format.CSV, null);
+
+		assertThat(result.getTotalRows()).isEqualTo(5);
+		assertThat(result.getImported()).isEqualTo(2);
+		assertThat(result.getFailed()).isEqualTo(2);
+		assertThat(result.getDuplicates()).isEqualTo(1);
+		assertThat(result.isAborted()).isFalse();
+		assertThat(result.getErrors()).extracting(ShipmentImportResult.RowError::getLine).containsExactly(3L, 4L, 5L);
+		assertThat(result.getErrors().get(0).getMessage()).contains("totalWeight");
+		assertThat(result.getErrors().get(1).getMessage()).contains("totalVolume");
+		assertThat(storedTrackingNumbers()).containsExactlyInAnyOrder(prefix + "1", prefix + "4");
+	}
+
+	@Test
+	void failedChunkStopsTheImportAndKeepsTheChunksWrittenBeforeIt() throws Exception {
+		// PostgreSQL rejects NUL characters in text, so the second chunk fails to write
+		String ndjson = json("1", "Main St 1") + json("2", "Main St 2")
+				+ json("3", "Main St\\u00003") + json("4", "Main St 4")
+				+ json("5", "Main St 5");
+
+		ShipmentImportResult result = importService.importShipments(stream(ndjson), ShipmentImportService.Format.NDJSON, null);
+
+		assertThat(result.isAborted()).isTrue();
+		assertThat(result.getTotalRows()).isEqualTo(4);
+		assertThat(result.getImported()).isEqualTo(2);
+		assertThat(result.getFailed()).isEqualTo(2);
+		assertThat(result.getErrors()).singleElement().satisfies(error -> {
+			assertThat(error.getLine()).isEqualTo(3);
+			assertThat(error.getMessage()).contains("lines 3-4").contains("the rest of the upload was not read");
+		});
+		assertThat(storedTrackingNumbers()).containsExactlyInAnyOrder(prefix + "1", prefix + "2");
+	}
+
+	@Test
+	void nullLineIsReportedAsInvalidJson() throws Exception {
+		String ndjson = json("1", "Main St 1") + "null\n" + json("2", "Main St 2");
+
+		ShipmentImportResult result = importService.importShipments(stream(ndjson), ShipmentImportService.Format.NDJSON, null);
+
+		assertThat(result.isAborted()).isFalse();
+		assertThat(result.getTotalRows()).isEqualTo(3);
+		assertThat(result.getImported()).isEqualTo(2);
+		assertThat(result.getFailed()).isEqualTo(1);
+		assertThat(result.getErrors()).singleElement().satisfies(error -> {
+			assertThat(error.getLine()).isEqualTo(2);
+			assertThat(error.getMessage()).isEqualTo("Invalid JSON: expected a shipment object");
+		});
+		assertThat(storedTrackingNumbers()).containsExactlyInAnyOrder(prefix + "1", prefix + "2");
+	}
+
+	private String row(String trackingSuffix, String weight, String volume) {
+		return "Import Client,Warehouse 1,Main St 1," + weight + "," + volume + "," + prefix + trackingSuffix + "\n";
+	}
+
+	private String json(String trackingSuffix, String destination) {
+		return "{\"clientName\":\"Import Client\",\"originAddress\":\"Warehouse 1\",\"destinationAddress\":\""
+				+ destination + "\",\"totalWeight\":1.50,\"totalVolume\":0.20,\"trackingNumber\":\""
+				+ prefix + trackingSuffix + "\"}\n";
+	}
+
+	private List<String> storedTrackingNumbers() {
+		return jdbcTemplate.queryForList(
+				"SELECT tracking_number FROM shipments WHERE tracking_number LIKE ?", String.class, prefix + "%");
+	}
+
+	private static ByteArrayInputStream stream(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+}
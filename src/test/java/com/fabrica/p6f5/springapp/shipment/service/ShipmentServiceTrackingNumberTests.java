@@ -0,0 +1,60 @@
+package com.fabrica.p6f5.springapp.shipment.service;
+
+import com.fabrica.p6f5.springapp.shipment.repository.ShipmentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Covers the per-number tracking check: numbers the filter rules out skip the database,
+ * the others fall through to existsByTrackingNumber.
+ */
+class ShipmentServiceTrackingNumberTests {
+
+	private ShipmentRepository shipmentRepository;
+
+	private TrackingNumberFilter trackingNumberFilter;
+
+	private ShipmentService shipmentService;
+
+	@BeforeEach
+	void setUp() {
+		shipmentRepository = mock(ShipmentRepository.class);
+		trackingNumberFilter = mock(TrackingNumberFilter.class);
+		shipmentService = new ShipmentService();
+		ReflectionTestUtils.setField(shipmentService, "shipmentRepository", shipmentRepository);
+		ReflectionTestUtils.setField(shipmentService, "trackingNumberFilter", trackingNumberFilter);
+	}
+
+	@Test
+	void numberRuledOutByTheFilterSkipsTheDatabase() {
+		when(trackingNumberFilter.mightExist("TRK-1")).thenReturn(false);
+
+		assertThat(shipmentService.trackingNumberExists("TRK-1")).isFalse();
+		verify(shipmentRepository, never()).existsByTrackingNumber(anyString());
+	}
+
+	@Test
+	void possibleDuplicateIsCheckedInTheDatabase() {
+		when(trackingNumberFilter.mightExist("TRK-1")).thenReturn(true);
+		when(shipmentRepository.existsByTrackingNumber("TRK-1")).thenReturn(true);
+
+		assertThat(shipmentService.trackingNumberExists("TRK-1")).isTrue();
+		verify(trackingNumberFilter, never()).recordFalsePositive();
+	}
+
+	@Test
+	void possibleDuplicateThatTheDatabaseDoesNotHaveIsAFalsePositive() {
+		when(trackingNumberFilter.mightExist("TRK-1")).thenReturn(true);
+
+		assertThat(shipmentService.trackingNumberExists("TRK-1")).isFalse();
+		verify(trackingNumberFilter).recordFalsePositive();
+	}
+}
@@ -0,0 +1,50 @@
+package com.fabrica.p6f5.springapp.shipment.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TrackingNumberBloomFilterTests {
+
+	private static final int INSERTIONS = 100_000;
+
+	@Test
+	void addedNumbersAreAlwaysFoundAndFalsePositivesStayNearTarget() {
+		TrackingNumberBloomFilter filter = new TrackingNumberBloomFilter(INSERTIONS, 0.01);
+		for (int i = 0; i < INSERTIONS; i++) {
+			filter.put("TRK-" + i);
+		}
+
+		for (int i = 0; i < INSERTIONS; i++) {
+			assertThat(filter.mightContain("TRK-" + i)).isTrue();
+		}
+		int falsePositives = 0;
+		for (int i = INSERTIONS; i < 2 * INSERTIONS; i++) {
+			if (filter.mightContain("TRK-" + i)) {
+				falsePositives++;
+			}
+		}
+		double observed = (double) falsePositives / INSERTIONS;
+		assertThat(observed).isLessThan(0.02);
+		assertThat(filter.expectedFalsePositiveRate()).isBetween(0.005, 0.02);
+		// About 9.6 bits per number at 1%
+		assertThat(filter.memoryBytes()).isBetween(110_000L, 130_000L);
+	}
+
+	@Test
+	void putReportsWhetherTheNumberWasNew() {
+		TrackingNumberBloomFilter filter = new TrackingNumberBloomFilter(1_000, 0.01);
+
+		assertThat(filter.mightContain("TRK-1")).isFalse();
+		assertThat(filter.put("TRK-1")).isTrue();
+		assertThat(filter.put("TRK-1")).isFalse();
+		assertThat(filter.mightContain("TRK-1")).isTrue();
+	}
+
+	@Test
+	void rejectsInvalidSizing() {
+		assertThatThrownBy(() -> new TrackingNumberBloomFilter(0, 0.01)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new TrackingNumberBloomFilter(1_000, 1)).isInstanceOf(IllegalArgumentException.class);
+	}
+}